@@ -0,0 +1,113 @@
+package com.gw2auth.example.app.benchmark;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.gw2auth.example.app.configuration.ActiveSessionRefreshProperties;
+import com.gw2auth.example.app.configuration.BackgroundRefreshProperties;
+import com.gw2auth.example.app.service.AccessTokenInvalidatedEvent;
+import com.gw2auth.example.app.service.authinfo.AuthInfoCache;
+import com.gw2auth.example.app.service.authinfo.AuthInfoService;
+import com.gw2auth.example.app.service.refresh.ActiveSessionRefreshService;
+import com.gw2auth.example.app.service.refresh.RefreshEngine;
+import com.gw2auth.example.app.service.refresh.TokenRefreshCoordinator;
+import com.gw2auth.example.app.service.revocation.TokenRevocationPipeline;
+import com.gw2auth.example.app.service.store.InMemoryAuthorizedClientStore;
+import com.gw2auth.example.app.service.token.AccessTokenDecoder;
+import com.gw2auth.example.app.web.AuthInfoController;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.http.ResponseEntity;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.security.oauth2.client.OAuth2AuthorizedClient;
+import org.springframework.security.oauth2.client.RefreshTokenOAuth2AuthorizedClientProvider;
+import org.springframework.security.oauth2.client.authentication.OAuth2AuthenticationToken;
+import org.springframework.security.oauth2.client.registration.ClientRegistration;
+import org.springframework.security.oauth2.client.registration.InMemoryClientRegistrationRepository;
+import org.springframework.web.client.RestTemplate;
+import org.springframework.security.oauth2.core.user.DefaultOAuth2User;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@code GET /api/authinfo} for a valid access token, once served from the authinfo cache and once rebuilt from the JWT (including its signature verification).
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class AuthInfoBenchmark {
+
+    @Param({"1", "10", "50"})
+    public int gw2TokenCount;
+
+    private AuthInfoController authInfoController;
+    private AuthInfoCache authInfoCache;
+    private AccessTokenDecoder accessTokenDecoder;
+    private AccessTokenInvalidatedEvent invalidation;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        final ClientRegistration clientRegistration = SyntheticTokens.clientRegistration("http://localhost");
+        final InMemoryAuthorizedClientStore store = new InMemoryAuthorizedClientStore(new InMemoryClientRegistrationRepository(clientRegistration));
+        final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+        final DefaultOAuth2User user = new DefaultOAuth2User(List.of(new SimpleGrantedAuthority("USER")), Map.of("sub", "benchmark"), "sub");
+        final OAuth2AuthenticationToken token = new OAuth2AuthenticationToken(user, user.getAuthorities(), SyntheticTokens.REGISTRATION_ID);
+        final OAuth2AuthorizedClient client = SyntheticTokens.authorizedClient(clientRegistration, token.getName(), this.gw2TokenCount);
+        store.saveAuthorizedClient(client, token);
+
+        this.authInfoCache = new AuthInfoCache(10_000L, meterRegistry);
+        this.accessTokenDecoder = SyntheticTokens.accessTokenDecoder(meterRegistry);
+        this.invalidation = new AccessTokenInvalidatedEvent(client.getAccessToken().getTokenValue());
+
+        final ApplicationEventPublisher eventPublisher = (event) -> {
+            if (event instanceof AccessTokenInvalidatedEvent accessTokenInvalidatedEvent) {
+                this.authInfoCache.onAccessTokenInvalidated(accessTokenInvalidatedEvent);
+                this.accessTokenDecoder.onAccessTokenInvalidated(accessTokenInvalidatedEvent);
+            }
+        };
+
+        final ObjectMapper objectMapper = Jackson2ObjectMapperBuilder.json().build();
+        final TokenRefreshCoordinator tokenRefreshCoordinator = new TokenRefreshCoordinator(store, new RefreshTokenOAuth2AuthorizedClientProvider(), new TokenRevocationPipeline(new RestTemplate(), 1, 1, 1, Duration.ZERO, Duration.ZERO, meterRegistry), eventPublisher, meterRegistry);
+
+        final ActiveSessionRefreshService activeSessionRefreshService = new ActiveSessionRefreshService(
+                store,
+                tokenRefreshCoordinator,
+                new RefreshEngine(1, 1, 1, Duration.ZERO, Duration.ZERO, meterRegistry),
+                new ActiveSessionRefreshProperties(false, Duration.ofSeconds(30L), Duration.ofMinutes(10L), 100_000),
+                new BackgroundRefreshProperties(1, 1, Duration.ZERO, 100, Duration.ofSeconds(1L), Duration.ofMinutes(5L), 5, Duration.ofSeconds(10L), Duration.ofMinutes(5L)),
+                meterRegistry
+        );
+
+        final AuthInfoService authInfoService = new AuthInfoService(store, tokenRefreshCoordinator, activeSessionRefreshService, this.authInfoCache, this.accessTokenDecoder, objectMapper, eventPublisher, meterRegistry);
+        this.authInfoController = new AuthInfoController(authInfoService);
+
+        SecurityContextHolder.setStrategyName(SecurityContextHolder.MODE_GLOBAL);
+        SecurityContextHolder.getContext().setAuthentication(token);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        SecurityContextHolder.clearContext();
+        this.accessTokenDecoder.destroy();
+    }
+
+    @Benchmark
+    public ResponseEntity<byte[]> cached() {
+        return this.authInfoController.getAuthInfo();
+    }
+
+    @Benchmark
+    public ResponseEntity<byte[]> uncached() {
+        this.authInfoCache.onAccessTokenInvalidated(this.invalidation);
+        this.accessTokenDecoder.onAccessTokenInvalidated(this.invalidation);
+        return this.authInfoController.getAuthInfo();
+    }
+}
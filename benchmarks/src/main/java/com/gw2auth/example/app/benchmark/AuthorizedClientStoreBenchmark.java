@@ -0,0 +1,93 @@
+package com.gw2auth.example.app.benchmark;
+
+import com.gw2auth.example.app.service.store.AuthorizedClientStore;
+import com.gw2auth.example.app.service.store.FileAuthorizedClientStore;
+import com.gw2auth.example.app.service.store.InMemoryAuthorizedClientStore;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.security.authentication.TestingAuthenticationToken;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.oauth2.client.OAuth2AuthorizedClient;
+import org.springframework.security.oauth2.client.registration.ClientRegistration;
+import org.springframework.security.oauth2.client.registration.InMemoryClientRegistrationRepository;
+import org.springframework.util.FileSystemUtils;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Reads and writes of the authorized client stores, as performed by every authinfo request and every refresh.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class AuthorizedClientStoreBenchmark {
+
+    private static final int CLIENT_COUNT = 10_000;
+
+    @Param({"memory", "file"})
+    public String type;
+
+    private Path directory;
+    private AuthorizedClientStore store;
+    private OAuth2AuthorizedClient[] clients;
+    private Authentication[] principals;
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        final ClientRegistration clientRegistration = SyntheticTokens.clientRegistration("http://localhost");
+        final InMemoryClientRegistrationRepository clientRegistrationRepository = new InMemoryClientRegistrationRepository(clientRegistration);
+
+        this.directory = Files.createTempDirectory("authorized-client-store-benchmark");
+        this.store = switch (this.type) {
+            case "memory" -> new InMemoryAuthorizedClientStore(clientRegistrationRepository);
+            case "file" -> new FileAuthorizedClientStore(clientRegistrationRepository, this.directory.resolve("authorized-clients.log"), Duration.ofMinutes(5L), Duration.ZERO);
+            default -> throw new IllegalArgumentException(this.type);
+        };
+
+        this.clients = new OAuth2AuthorizedClient[CLIENT_COUNT];
+        this.principals = new Authentication[CLIENT_COUNT];
+
+        for (int i = 0; i < CLIENT_COUNT; i++) {
+            this.principals[i] = new TestingAuthenticationToken("principal-" + i, null);
+            this.clients[i] = SyntheticTokens.authorizedClient(clientRegistration, this.principals[i].getName(), 3);
+            this.store.saveAuthorizedClient(this.clients[i], this.principals[i]);
+            this.store.setBackgroundRefreshEnabled(SyntheticTokens.REGISTRATION_ID, this.principals[i].getName(), (i & 1) == 0);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        if (this.store instanceof DisposableBean disposableBean) {
+            disposableBean.destroy();
+        }
+
+        FileSystemUtils.deleteRecursively(this.directory);
+    }
+
+    @Benchmark
+    public OAuth2AuthorizedClient load() {
+        return this.store.loadAuthorizedClient(SyntheticTokens.REGISTRATION_ID, this.principals[nextIndex()].getName());
+    }
+
+    @Benchmark
+    public boolean isBackgroundRefreshEnabled() {
+        return this.store.isBackgroundRefreshEnabled(SyntheticTokens.REGISTRATION_ID, this.principals[nextIndex()].getName());
+    }
+
+    @Benchmark
+    public void save() {
+        final int index = nextIndex();
+        this.store.saveAuthorizedClient(this.clients[index], this.principals[index]);
+    }
+
+    private static int nextIndex() {
+        return ThreadLocalRandom.current().nextInt(CLIENT_COUNT);
+    }
+}
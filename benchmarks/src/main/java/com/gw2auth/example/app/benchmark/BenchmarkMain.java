@@ -0,0 +1,36 @@
+package com.gw2auth.example.app.benchmark;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Runs JMH with machine-readable results written to {@code target/jmh-result.json} unless the result options are given explicitly.
+ */
+public final class BenchmarkMain {
+
+    private static final Path DEFAULT_RESULT_FILE = Path.of("target", "jmh-result.json");
+
+    private BenchmarkMain() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        final List<String> jmhArgs = new ArrayList<>(Arrays.asList(args));
+
+        if (!jmhArgs.contains("-rf")) {
+            jmhArgs.add("-rf");
+            jmhArgs.add("json");
+        }
+
+        if (!jmhArgs.contains("-rff")) {
+            Files.createDirectories(DEFAULT_RESULT_FILE.getParent());
+
+            jmhArgs.add("-rff");
+            jmhArgs.add(DEFAULT_RESULT_FILE.toString());
+        }
+
+        org.openjdk.jmh.Main.main(jmhArgs.toArray(String[]::new));
+    }
+}
@@ -0,0 +1,89 @@
+package com.gw2auth.example.app.benchmark;
+
+import com.gw2auth.example.app.service.AccessTokenInvalidatedEvent;
+import com.gw2auth.example.app.service.token.AccessTokenDecoder;
+import com.gw2auth.example.app.service.authinfo.AuthInfo;
+import com.gw2auth.example.app.service.authinfo.AuthInfoClaimsReader;
+import com.nimbusds.jose.shaded.json.JSONObject;
+import com.nimbusds.jwt.JWTClaimsSet;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.security.oauth2.client.OAuth2AuthorizedClient;
+import org.springframework.security.oauth2.client.registration.ClientRegistration;
+
+import java.text.ParseException;
+import java.time.Instant;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Extracting the {@link AuthInfo} from a verified access token, through the full claim set versus streaming the payload.
+ * Both include the signature verification; {@link #streamingVerified()} measures the extraction of a token whose signature
+ * was already verified at login, which is what the first authinfo after the login does.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ClaimExtractionBenchmark {
+
+    @Param({"1", "10", "50", "200"})
+    public int gw2TokenCount;
+
+    private AccessTokenDecoder accessTokenDecoder;
+    private ClientRegistration clientRegistration;
+    private String accessTokenValue;
+    private Instant expiresAt;
+    private AccessTokenInvalidatedEvent invalidation;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        this.clientRegistration = SyntheticTokens.clientRegistration("http://localhost");
+
+        final OAuth2AuthorizedClient client = SyntheticTokens.authorizedClient(this.clientRegistration, "benchmark", this.gw2TokenCount);
+
+        this.accessTokenDecoder = SyntheticTokens.accessTokenDecoder(new SimpleMeterRegistry());
+        this.accessTokenValue = client.getAccessToken().getTokenValue();
+        this.expiresAt = client.getAccessToken().getExpiresAt();
+        this.invalidation = new AccessTokenInvalidatedEvent(this.accessTokenValue);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        this.accessTokenDecoder.destroy();
+    }
+
+    @Benchmark
+    public AuthInfo claimsSet() throws ParseException {
+        this.accessTokenDecoder.onAccessTokenInvalidated(this.invalidation);
+
+        final JWTClaimsSet claims = this.accessTokenDecoder.decode(this.clientRegistration, this.accessTokenValue);
+        final Set<String> gw2ApiPermissions = new LinkedHashSet<>(claims.getStringListClaim("gw2:permissions"));
+        final Map<String, AuthInfo.Gw2ApiToken> gw2ApiTokens = new LinkedHashMap<>();
+
+        for (Map.Entry<String, Object> entry : claims.getJSONObjectClaim("gw2:tokens").entrySet()) {
+            final JSONObject value = (JSONObject) entry.getValue();
+            gw2ApiTokens.put(entry.getKey(), new AuthInfo.Gw2ApiToken(value.getAsString("name"), value.getAsString("token"), value.getAsString("error")));
+        }
+
+        return new AuthInfo(claims.getSubject(), gw2ApiPermissions, gw2ApiTokens, this.expiresAt);
+    }
+
+    @Benchmark
+    public AuthInfo streaming() {
+        this.accessTokenDecoder.onAccessTokenInvalidated(this.invalidation);
+        return this.accessTokenDecoder.decode(this.clientRegistration, this.accessTokenValue, () -> new AuthInfoClaimsReader(this.expiresAt));
+    }
+
+    @Benchmark
+    public AuthInfo streamingVerified() {
+        // keeps the token marked as verified
+        this.accessTokenDecoder.decode(this.clientRegistration, this.accessTokenValue);
+        return this.accessTokenDecoder.decode(this.clientRegistration, this.accessTokenValue, () -> new AuthInfoClaimsReader(this.expiresAt));
+    }
+}
@@ -0,0 +1,46 @@
+package com.gw2auth.example.app.benchmark;
+
+import com.gw2auth.example.app.configuration.ScopeAwareClientRegistrationRepository;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.security.oauth2.client.registration.ClientRegistration;
+import org.springframework.security.oauth2.client.registration.InMemoryClientRegistrationRepository;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Client registration lookups as performed on every authorization request and callback.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ClientRegistrationLookupBenchmark {
+
+    private static final String AUTHORIZATION_REQUEST = "response_type=code&client_id=benchmark-client&state=Zm9vYmFyYmF6cXV4&redirect_uri=http%3A%2F%2Flocalhost%3A8080%2Flogin%2Foauth2%2Fcode%2Fgw2auth";
+
+    @Param({"callback", "configured-scopes", "additional-scopes"})
+    public String query;
+
+    private ScopeAwareClientRegistrationRepository repository;
+    private String queryString;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        final ClientRegistration clientRegistration = SyntheticTokens.clientRegistration("http://localhost");
+
+        this.repository = new ScopeAwareClientRegistrationRepository(new InMemoryClientRegistrationRepository(clientRegistration), 256L);
+        this.queryString = switch (this.query) {
+            case "callback" -> "code=" + SyntheticTokens.randomString(43) + "&state=Zm9vYmFyYmF6cXV4";
+            case "configured-scopes" -> AUTHORIZATION_REQUEST + "&scope=gw2%3Aaccount";
+            case "additional-scopes" -> AUTHORIZATION_REQUEST + "&scope=gw2%3Aaccount+gw2%3Atradingpost+gw2%3Awallet+gw2%3Aunlocks";
+            default -> throw new IllegalArgumentException(this.query);
+        };
+    }
+
+    @Benchmark
+    public ClientRegistration findByRegistrationId() {
+        return this.repository.findByRegistrationId(SyntheticTokens.REGISTRATION_ID, this.queryString);
+    }
+}
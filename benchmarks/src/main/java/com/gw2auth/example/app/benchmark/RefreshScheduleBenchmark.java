@@ -0,0 +1,73 @@
+package com.gw2auth.example.app.benchmark;
+
+import com.gw2auth.example.app.service.refresh.RefreshSchedule;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The background refresh schedule under the access patterns of the refresh dispatcher and the user facing enrollment endpoints.
+ * <p>
+ * The {@code contended} group runs many enrollment lookups against a single thread rescheduling clients,
+ * which is the situation where a global lock made user requests queue up behind the refresh loop.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Group)
+public class RefreshScheduleBenchmark {
+
+    @Param({"10000", "100000"})
+    public int size;
+
+    private RefreshSchedule schedule;
+    private String[] keys;
+    private long issuedAt;
+    private long dueAt;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        this.schedule = new RefreshSchedule();
+        this.keys = new String[this.size];
+        this.issuedAt = System.currentTimeMillis();
+        this.dueAt = System.currentTimeMillis() + TimeUnit.DAYS.toMillis(1L);
+
+        for (int i = 0; i < this.size; i++) {
+            this.keys[i] = "principal-" + i;
+            this.schedule.add(this.keys[i], SyntheticTokens.REGISTRATION_ID, this.issuedAt, nextDueAt());
+        }
+    }
+
+    @Benchmark
+    @Group("contended")
+    @GroupThreads(7)
+    public boolean contendedIsEnabled() {
+        return this.schedule.contains(nextKey());
+    }
+
+    @Benchmark
+    @Group("contended")
+    @GroupThreads(1)
+    public void contendedReschedule() {
+        this.schedule.reschedule(nextKey(), this.issuedAt, nextDueAt());
+    }
+
+    @Benchmark
+    @Group("cancellation")
+    public boolean disableAndEnable() {
+        final String key = nextKey();
+        this.schedule.remove(key);
+        return this.schedule.add(key, SyntheticTokens.REGISTRATION_ID, this.issuedAt, nextDueAt());
+    }
+
+    private String nextKey() {
+        return this.keys[ThreadLocalRandom.current().nextInt(this.keys.length)];
+    }
+
+    private long nextDueAt() {
+        return this.dueAt + ThreadLocalRandom.current().nextLong(TimeUnit.HOURS.toMillis(1L));
+    }
+}
@@ -0,0 +1,90 @@
+package com.gw2auth.example.app.benchmark;
+
+import com.gw2auth.example.app.service.refresh.RefreshSchedule;
+import org.springframework.security.oauth2.client.OAuth2AuthorizedClient;
+import org.springframework.security.oauth2.client.registration.ClientRegistration;
+import org.springframework.security.oauth2.core.OAuth2AccessToken;
+import org.springframework.security.oauth2.core.OAuth2RefreshToken;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.lang.ref.Reference;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.IntFunction;
+
+/**
+ * Retained heap of the background refresh schedule with {@code size} enrolled clients, compared to keeping the full clients queued.
+ * <p>
+ * Usage: {@code java -cp benchmarks.jar com.gw2auth.example.app.benchmark.RefreshScheduleFootprint [size] [gw2TokenCount]}
+ * <p>
+ * Signing a token per client would take minutes at this size, so every client gets its own copy of one signed token.
+ * The copies are as large as distinct tokens would be, which is what matters for the footprint.
+ */
+public final class RefreshScheduleFootprint {
+
+    private static final MemoryMXBean MEMORY = ManagementFactory.getMemoryMXBean();
+
+    private RefreshScheduleFootprint() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        final int size = args.length > 0 ? Integer.parseInt(args[0]) : 100_000;
+        final int gw2TokenCount = args.length > 1 ? Integer.parseInt(args[1]) : 3;
+
+        final ClientRegistration clientRegistration = SyntheticTokens.clientRegistration("http://localhost");
+        final OAuth2AuthorizedClient template = SyntheticTokens.authorizedClient(clientRegistration, "template", gw2TokenCount);
+        final OAuth2AccessToken templateAccessToken = template.getAccessToken();
+        final long dueAt = System.currentTimeMillis();
+
+        final IntFunction<OAuth2AuthorizedClient> clientFactory = (i) -> new OAuth2AuthorizedClient(
+                clientRegistration,
+                "principal-" + i,
+                new OAuth2AccessToken(
+                        templateAccessToken.getTokenType(),
+                        new String(templateAccessToken.getTokenValue().toCharArray()),
+                        templateAccessToken.getIssuedAt(),
+                        templateAccessToken.getExpiresAt(),
+                        new HashSet<>(templateAccessToken.getScopes())
+                ),
+                new OAuth2RefreshToken(SyntheticTokens.randomString(64), templateAccessToken.getIssuedAt())
+        );
+
+        System.out.printf("clients=%d gw2Tokens=%d accessTokenLength=%d%n", size, gw2TokenCount, templateAccessToken.getTokenValue().length());
+
+        long before = usedHeap();
+        final RefreshSchedule schedule = new RefreshSchedule();
+        for (int i = 0; i < size; i++) {
+            final OAuth2AuthorizedClient client = clientFactory.apply(i);
+            schedule.add(client.getPrincipalName(), client.getClientRegistration().getRegistrationId(), client.getAccessToken().getIssuedAt().toEpochMilli(), dueAt + i);
+        }
+
+        report("refresh schedule", usedHeap() - before, size);
+
+        // what the schedule used to retain: the full client per entry
+        before = usedHeap();
+        final Map<String, OAuth2AuthorizedClient> fullClients = new ConcurrentHashMap<>();
+        for (int i = 0; i < size; i++) {
+            final OAuth2AuthorizedClient client = clientFactory.apply(i);
+            fullClients.put(client.getPrincipalName(), client);
+        }
+
+        report("full clients", usedHeap() - before, size);
+        Reference.reachabilityFence(schedule);
+        Reference.reachabilityFence(fullClients);
+    }
+
+    private static void report(String name, long bytes, int size) {
+        System.out.printf("%-18s retained=%,d KiB perEntry=%,d B%n", name, bytes / 1024L, bytes / size);
+    }
+
+    private static long usedHeap() throws InterruptedException {
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+            Thread.sleep(100L);
+        }
+
+        return MEMORY.getHeapMemoryUsage().getUsed();
+    }
+}
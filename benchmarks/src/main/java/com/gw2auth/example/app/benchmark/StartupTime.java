@@ -0,0 +1,114 @@
+package com.gw2auth.example.app.benchmark;
+
+import com.gw2auth.example.app.loadtest.MockIssuer;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Time from launching the application until it answers its first request ({@code GET /api/authinfo}), with a {@link MockIssuer}
+ * as the issuer so that provider discovery at startup is part of the measurement.
+ * <p>
+ * Usage: {@code java -cp benchmarks.jar com.gw2auth.example.app.benchmark.StartupTime [runs] <command...>}, e.g.
+ * <ul>
+ *     <li>{@code java -jar target/oauth2-server-example-app.jar} (the current image)</li>
+ *     <li>{@code java -XX:SharedArchiveFile=target/startup/application.jsa -jar target/startup/application.jar --spring.profiles.include=startup}
+ *     (the image of {@code Dockerfile.startup}, built with {@code mvn package -Pstartup})</li>
+ * </ul>
+ * The issuer, client and port settings are appended to the command.
+ */
+public final class StartupTime {
+
+    private static final Duration TIMEOUT = Duration.ofMinutes(2L);
+
+    private StartupTime() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        final boolean hasRuns = args.length > 0 && args[0].chars().allMatch(Character::isDigit);
+        final int runs = hasRuns ? Integer.parseInt(args[0]) : 5;
+        final List<String> command = Arrays.asList(args).subList(hasRuns ? 1 : 0, args.length);
+
+        if (command.isEmpty()) {
+            System.err.println("usage: StartupTime [runs] <command...>");
+            System.exit(1);
+        }
+
+        final HttpClient httpClient = HttpClient.newBuilder()
+                .followRedirects(HttpClient.Redirect.NEVER)
+                .connectTimeout(Duration.ofSeconds(1L))
+                .build();
+
+        final long[] millis = new long[runs];
+
+        try (MockIssuer issuer = new MockIssuer(new MockIssuer.Options(0, 4, Duration.ofMinutes(1L), 3, Duration.ZERO, Duration.ZERO, 0.0))) {
+            for (int i = 0; i < runs; i++) {
+                millis[i] = measure(httpClient, issuer, command);
+                System.out.printf(Locale.ROOT, "run %d: first request after %d ms%n", i + 1, millis[i]);
+            }
+        }
+
+        Arrays.sort(millis);
+        System.out.printf(Locale.ROOT, "time to first request (ms): runs=%d min=%d median=%d max=%d%n", runs, millis[0], millis[runs / 2], millis[runs - 1]);
+    }
+
+    private static long measure(HttpClient httpClient, MockIssuer issuer, List<String> command) throws Exception {
+        final int port = freePort();
+        final List<String> processCommand = new ArrayList<>(command);
+        processCommand.add("--server.port=" + port);
+        processCommand.add("--management.server.port=0");
+        processCommand.add("--com.gw2auth.example.url=http://localhost:" + port);
+        processCommand.add("--logging.level.root=WARN");
+
+        final ProcessBuilder processBuilder = new ProcessBuilder(processCommand)
+                .redirectErrorStream(true)
+                .redirectOutput(ProcessBuilder.Redirect.DISCARD);
+
+        processBuilder.environment().put("GW2AUTH_URL", issuer.uri());
+        processBuilder.environment().put("GW2AUTH_CLIENT_ID", "benchmark-client");
+        processBuilder.environment().put("GW2AUTH_CLIENT_SECRET", "benchmark-secret");
+
+        final HttpRequest request = HttpRequest.newBuilder(URI.create("http://localhost:" + port + "/api/authinfo")).GET().build();
+        final long start = System.nanoTime();
+        final Process process = processBuilder.start();
+
+        try {
+            while (System.nanoTime() - start < TIMEOUT.toNanos()) {
+                if (!process.isAlive()) {
+                    throw new IllegalStateException("the application exited with " + process.exitValue());
+                }
+
+                try {
+                    // any response counts, the first request of an anonymous client is answered with 401
+                    httpClient.send(request, HttpResponse.BodyHandlers.discarding());
+                    return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+                } catch (IOException e) {
+                    Thread.sleep(5L);
+                }
+            }
+
+            throw new IllegalStateException("the application did not answer within " + TIMEOUT);
+        } finally {
+            process.destroy();
+            if (!process.waitFor(30L, TimeUnit.SECONDS)) {
+                process.destroyForcibly();
+            }
+        }
+    }
+
+    private static int freePort() throws IOException {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+}
@@ -0,0 +1,88 @@
+package com.gw2auth.example.app.benchmark;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Minimal local issuer answering the token and revocation endpoints, so that refresh paths can be measured without a network.
+ * Every token response carries a freshly signed access token with the configured number of {@code gw2:tokens} entries.
+ */
+public class StubIssuer implements AutoCloseable {
+
+    static {
+        // without TCP_NODELAY the stub's split header/body writes run into delayed ACKs and cap throughput at a few hundred requests/s
+        System.setProperty("sun.net.httpserver.nodelay", "true");
+    }
+
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final String uri;
+    private final int gw2TokenCount;
+
+    public StubIssuer(int gw2TokenCount) throws IOException {
+        this.server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 1024);
+        this.executor = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+        this.uri = "http://" + this.server.getAddress().getHostString() + ":" + this.server.getAddress().getPort();
+        this.gw2TokenCount = gw2TokenCount;
+
+        this.server.setExecutor(this.executor);
+        this.server.createContext("/oauth2/token", this::token);
+        this.server.createContext("/oauth2/revoke", this::revoke);
+        this.server.start();
+    }
+
+    public String uri() {
+        return this.uri;
+    }
+
+    private void token(HttpExchange exchange) throws IOException {
+        drain(exchange);
+
+        final Instant issuedAt = Instant.now();
+        final Duration expiresIn = Duration.ofMinutes(30L);
+        final String accessToken = SyntheticTokens.accessToken(this.uri, "benchmark", this.gw2TokenCount, issuedAt, issuedAt.plus(expiresIn));
+        final String body = "{\"access_token\":\"" + accessToken + "\",\"token_type\":\"Bearer\",\"expires_in\":" + expiresIn.toSeconds()
+                + ",\"refresh_token\":\"" + SyntheticTokens.randomString(64) + "\",\"scope\":\"gw2:account\"}";
+
+        respond(exchange, 200, body.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private void revoke(HttpExchange exchange) throws IOException {
+        drain(exchange);
+        respond(exchange, 200, new byte[0]);
+    }
+
+    private static void drain(HttpExchange exchange) throws IOException {
+        try (InputStream in = exchange.getRequestBody()) {
+            in.readAllBytes();
+        }
+    }
+
+    private static void respond(HttpExchange exchange, int status, byte[] body) throws IOException {
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        exchange.getResponseHeaders().set("Cache-Control", "no-store");
+        exchange.sendResponseHeaders(status, body.length == 0 ? -1 : body.length);
+
+        if (body.length > 0) {
+            exchange.getResponseBody().write(body);
+        }
+
+        exchange.close();
+    }
+
+    @Override
+    public void close() {
+        this.server.stop(0);
+        this.executor.shutdownNow();
+    }
+}
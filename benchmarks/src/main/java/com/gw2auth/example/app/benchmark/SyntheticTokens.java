@@ -0,0 +1,127 @@
+package com.gw2auth.example.app.benchmark;
+
+import com.gw2auth.example.app.service.token.AccessTokenDecoder;
+import com.nimbusds.jose.JOSEException;
+import com.nimbusds.jose.JWSAlgorithm;
+import com.nimbusds.jose.JWSHeader;
+import com.nimbusds.jose.crypto.RSASSASigner;
+import com.nimbusds.jose.jwk.JWKSet;
+import com.nimbusds.jose.jwk.RSAKey;
+import com.nimbusds.jose.jwk.gen.RSAKeyGenerator;
+import com.nimbusds.jwt.JWTClaimsSet;
+import com.nimbusds.jwt.SignedJWT;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.security.oauth2.client.OAuth2AuthorizedClient;
+import org.springframework.security.oauth2.client.registration.ClientRegistration;
+import org.springframework.security.oauth2.core.AuthorizationGrantType;
+import org.springframework.security.oauth2.core.OAuth2AccessToken;
+import org.springframework.security.oauth2.core.OAuth2RefreshToken;
+
+import java.security.SecureRandom;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.*;
+
+/**
+ * Builds signed access tokens shaped like the ones issued by GW2Auth, including a configurable number of {@code gw2:tokens} entries.
+ */
+public final class SyntheticTokens {
+
+    public static final String REGISTRATION_ID = "gw2auth";
+    public static final List<String> GW2_PERMISSIONS = List.of("account", "builds", "characters", "guilds", "inventories", "progression", "tradingpost", "unlocks", "wallet");
+
+    private static final RSAKey SIGNING_KEY;
+    private static final SecureRandom RANDOM = new SecureRandom();
+
+    static {
+        try {
+            SIGNING_KEY = new RSAKeyGenerator(2048).keyID("benchmark").generate();
+        } catch (JOSEException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    private SyntheticTokens() {
+    }
+
+    public static RSAKey signingKey() {
+        return SIGNING_KEY;
+    }
+
+    /**
+     * A decoder verifying against the signing key of these tokens, without fetching the JWK set.
+     */
+    public static AccessTokenDecoder accessTokenDecoder(MeterRegistry meterRegistry) {
+        final JWKSet jwkSet = new JWKSet(SIGNING_KEY.toPublicJWK());
+        return new AccessTokenDecoder((jwkSetUri) -> jwkSet, Duration.ofMinutes(5L), Duration.ofSeconds(30L), 10_000L, Duration.ofMinutes(1L), meterRegistry);
+    }
+
+    public static ClientRegistration clientRegistration(String issuerUri) {
+        return ClientRegistration.withRegistrationId(REGISTRATION_ID)
+                .clientId("benchmark-client")
+                .clientSecret("benchmark-secret")
+                .authorizationGrantType(AuthorizationGrantType.AUTHORIZATION_CODE)
+                .redirectUri("{baseUrl}/login/oauth2/code/{registrationId}")
+                .scope("gw2:account")
+                .authorizationUri(issuerUri + "/oauth2/authorize")
+                .tokenUri(issuerUri + "/oauth2/token")
+                .jwkSetUri(issuerUri + "/oauth2/jwks")
+                .issuerUri(issuerUri)
+                .userNameAttributeName("sub")
+                .build();
+    }
+
+    public static String accessToken(String issuerUri, String sub, int gw2TokenCount, Instant issuedAt, Instant expiresAt) {
+        final Map<String, Object> gw2Tokens = new LinkedHashMap<>();
+
+        for (int i = 0; i < gw2TokenCount; i++) {
+            final Map<String, Object> gw2Token = new LinkedHashMap<>();
+            gw2Token.put("name", "Benchmark Account " + i);
+            gw2Token.put("token", randomString(280));
+
+            gw2Tokens.put(UUID.randomUUID().toString(), gw2Token);
+        }
+
+        final JWTClaimsSet claims = new JWTClaimsSet.Builder()
+                .issuer(issuerUri)
+                .subject(sub)
+                .audience("benchmark-client")
+                .issueTime(Date.from(issuedAt))
+                .notBeforeTime(Date.from(issuedAt))
+                .expirationTime(Date.from(expiresAt))
+                .jwtID(UUID.randomUUID().toString())
+                .claim("scope", List.of("gw2:account"))
+                .claim("gw2:permissions", GW2_PERMISSIONS)
+                .claim("gw2:tokens", gw2Tokens)
+                .build();
+
+        final SignedJWT jwt = new SignedJWT(new JWSHeader.Builder(JWSAlgorithm.RS256).keyID(SIGNING_KEY.getKeyID()).build(), claims);
+        try {
+            jwt.sign(new RSASSASigner(SIGNING_KEY));
+        } catch (JOSEException e) {
+            throw new IllegalStateException(e);
+        }
+
+        return jwt.serialize();
+    }
+
+    public static OAuth2AuthorizedClient authorizedClient(ClientRegistration clientRegistration, String principalName, int gw2TokenCount) {
+        final Instant issuedAt = Instant.now();
+        final Instant expiresAt = issuedAt.plus(Duration.ofMinutes(30L));
+        final String issuerUri = clientRegistration.getProviderDetails().getIssuerUri();
+
+        return new OAuth2AuthorizedClient(
+                clientRegistration,
+                principalName,
+                new OAuth2AccessToken(OAuth2AccessToken.TokenType.BEARER, accessToken(issuerUri, principalName, gw2TokenCount, issuedAt, expiresAt), issuedAt, expiresAt),
+                new OAuth2RefreshToken(randomString(64), issuedAt)
+        );
+    }
+
+    public static String randomString(int length) {
+        final byte[] bytes = new byte[(length * 3 + 3) / 4];
+        RANDOM.nextBytes(bytes);
+
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(bytes).substring(0, length);
+    }
+}
@@ -0,0 +1,95 @@
+package com.gw2auth.example.app.benchmark;
+
+import com.gw2auth.example.app.configuration.OAuth2ClientConfiguration;
+import com.gw2auth.example.app.configuration.OutboundHttpProperties;
+import com.gw2auth.example.app.service.refresh.TokenRefreshCoordinator;
+import com.gw2auth.example.app.service.revocation.TokenRevocationPipeline;
+import com.gw2auth.example.app.service.store.InMemoryAuthorizedClientStore;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.boot.web.client.RestTemplateBuilder;
+import org.springframework.http.client.HttpComponentsClientHttpRequestFactory;
+import org.springframework.security.authentication.TestingAuthenticationToken;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.oauth2.client.OAuth2AuthorizedClient;
+import org.springframework.security.oauth2.client.registration.ClientRegistration;
+import org.springframework.security.oauth2.client.registration.InMemoryClientRegistrationRepository;
+import org.springframework.web.client.RestTemplate;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A full refresh through {@link TokenRefreshCoordinator} against a local {@link StubIssuer}, using the application's outbound HTTP client.
+ * Run with {@code -t} to measure refresh throughput under concurrency.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class TokenRefreshBenchmark {
+
+    @State(Scope.Benchmark)
+    public static class Issuer {
+
+        @Param({"10"})
+        public int gw2TokenCount;
+
+        private StubIssuer stubIssuer;
+        private CloseableHttpClient httpClient;
+        private ClientRegistration clientRegistration;
+        private InMemoryAuthorizedClientStore store;
+        private TokenRefreshCoordinator tokenRefreshCoordinator;
+        private final AtomicInteger principalCounter = new AtomicInteger();
+
+        @Setup(Level.Trial)
+        public void setup() throws Exception {
+            this.stubIssuer = new StubIssuer(this.gw2TokenCount);
+            this.clientRegistration = SyntheticTokens.clientRegistration(this.stubIssuer.uri());
+            this.store = new InMemoryAuthorizedClientStore(new InMemoryClientRegistrationRepository(this.clientRegistration));
+
+            final OAuth2ClientConfiguration configuration = new OAuth2ClientConfiguration();
+            final OutboundHttpProperties properties = new OutboundHttpProperties(64, 16, Duration.ofSeconds(2L), Duration.ofSeconds(10L), Duration.ofSeconds(2L), Duration.ofSeconds(30L));
+
+            this.httpClient = configuration.outboundHttpClient(properties);
+
+            final RestTemplateBuilder restTemplateBuilder = new RestTemplateBuilder().requestFactory(() -> new HttpComponentsClientHttpRequestFactory(this.httpClient));
+
+            this.tokenRefreshCoordinator = new TokenRefreshCoordinator(
+                    this.store,
+                    configuration.refreshTokenOAuth2AuthorizedClientProvider(restTemplateBuilder),
+                    // refreshes through this entry point never revoke
+                    new TokenRevocationPipeline(new RestTemplate(), 1, 1, 1, Duration.ZERO, Duration.ZERO, new SimpleMeterRegistry()),
+                    (event) -> {},
+                    new SimpleMeterRegistry()
+            );
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() throws Exception {
+            this.httpClient.close();
+            this.stubIssuer.close();
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Principal {
+
+        private Authentication authentication;
+
+        @Setup(Level.Trial)
+        public void setup(Issuer issuer) {
+            this.authentication = new TestingAuthenticationToken("principal-" + issuer.principalCounter.incrementAndGet(), null);
+            issuer.store.saveAuthorizedClient(SyntheticTokens.authorizedClient(issuer.clientRegistration, this.authentication.getName(), issuer.gw2TokenCount), this.authentication);
+        }
+    }
+
+    @Benchmark
+    public OAuth2AuthorizedClient refresh(Issuer issuer, Principal principal) {
+        final OAuth2AuthorizedClient client = issuer.store.loadAuthorizedClient(SyntheticTokens.REGISTRATION_ID, principal.authentication.getName());
+        return issuer.tokenRefreshCoordinator.refresh(client, principal.authentication);
+    }
+}
@@ -0,0 +1,58 @@
+package com.gw2auth.example.app.benchmark;
+
+import com.gw2auth.example.app.service.AccessTokenInvalidatedEvent;
+import com.gw2auth.example.app.service.Gw2AuthExampleUserService;
+import com.gw2auth.example.app.service.token.AccessTokenDecoder;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.security.oauth2.client.OAuth2AuthorizedClient;
+import org.springframework.security.oauth2.client.registration.ClientRegistration;
+import org.springframework.security.oauth2.client.userinfo.OAuth2UserRequest;
+import org.springframework.security.oauth2.core.user.OAuth2User;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Building the login principal from the access token received at the end of the authorization code flow.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class UserServiceBenchmark {
+
+    @Param({"1", "10", "50"})
+    public int gw2TokenCount;
+
+    private AccessTokenDecoder accessTokenDecoder;
+    private Gw2AuthExampleUserService userService;
+    private OAuth2UserRequest userRequest;
+    private AccessTokenInvalidatedEvent invalidation;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        final ClientRegistration clientRegistration = SyntheticTokens.clientRegistration("http://localhost");
+        final OAuth2AuthorizedClient client = SyntheticTokens.authorizedClient(clientRegistration, "benchmark", this.gw2TokenCount);
+
+        final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+        this.accessTokenDecoder = SyntheticTokens.accessTokenDecoder(meterRegistry);
+        this.userService = new Gw2AuthExampleUserService(this.accessTokenDecoder, meterRegistry);
+        this.userRequest = new OAuth2UserRequest(clientRegistration, client.getAccessToken());
+        this.invalidation = new AccessTokenInvalidatedEvent(client.getAccessToken().getTokenValue());
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        this.accessTokenDecoder.destroy();
+    }
+
+    @Benchmark
+    public OAuth2User loadUser() {
+        // every login brings a new token, so the verified claims are never cached yet
+        this.accessTokenDecoder.onAccessTokenInvalidated(this.invalidation);
+        return this.userService.loadUser(this.userRequest);
+    }
+}
@@ -0,0 +1,360 @@
+package com.gw2auth.example.app.loadtest;
+
+import com.gw2auth.example.app.Application;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.HdrHistogram.ConcurrentHistogram;
+import org.HdrHistogram.Histogram;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.convert.DurationStyle;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Drives the login → {@code /api/authinfo} → background refresh → revocation cycle of many simulated users
+ * against the application running in-process with a {@link MockIssuer} as its authorization server and a {@link StubGw2Api} as the GW2 API.
+ * <p>
+ * Options (all optional, {@code --name=value}):
+ * <ul>
+ *     <li>{@code users} (1000): number of simulated users logging in</li>
+ *     <li>{@code enrolled} (500): number of those users enrolling into background refresh</li>
+ *     <li>{@code concurrency} (64): number of concurrent simulated requests</li>
+ *     <li>{@code duration} (2m): length of the steady {@code /api/authinfo} phase</li>
+ *     <li>{@code token-lifetime} (60s): lifetime of access tokens minted by the mock issuer</li>
+ *     <li>{@code gw2-tokens} (3): number of {@code gw2:tokens} entries per access token</li>
+ *     <li>{@code issuer-latency} (0ms), {@code issuer-latency-jitter} (0ms): latency added to token and revocation requests</li>
+ *     <li>{@code issuer-failure-rate} (0.0): fraction of token and revocation requests answered with 503</li>
+ *     <li>{@code issuer-threads} (64): worker threads of the mock issuer</li>
+ *     <li>{@code gw2-api-ratio} (0.2): fraction of steady state requests going to the GW2 API proxy instead of {@code /api/authinfo};
+ *     half of them to a public endpoint, half to an account endpoint with the user's GW2 API token</li>
+ *     <li>{@code gw2-api-latency} (50ms): latency of the stub GW2 API</li>
+ *     <li>{@code gw2-api-batch} (false): request the account endpoints for all of the user's GW2 accounts at once through {@code /api/gw2/batch}</li>
+ *     <li>{@code probe-interval} (50ms): interval of a single probe alternating between the frontend ({@code /}, 404 without a frontend build) and {@code GET /api/background-refresh},
+ *     neither of which calls the issuer; its latency shows whether other traffic is stalled behind requests waiting for the issuer</li>
+ * </ul>
+ * All other arguments are passed to the application, e.g. {@code --com.gw2auth.example.background-refresh.workers=16}.
+ * <p>
+ * Exhaustion of the request thread pool by inline token refreshes against a slow issuer can be compared between the threading modes with e.g.
+ * {@code --enrolled=0 --token-lifetime=5s --issuer-latency=2s --concurrency=256 --server.tomcat.threads.max=32}
+ * and {@code --com.gw2auth.example.threading.mode=virtual} (Java 21 or later).
+ * <p>
+ * Refresh lag is measured by the issuer against the time the application schedules a background refresh.
+ * Users not enrolled into background refresh are refreshed on demand once their token expired and therefore show up with a lag of at least the clock skew,
+ * unless {@code --com.gw2auth.example.active-session-refresh.enabled=true} refreshes them ahead of expiry; {@code inline} counts the requests that had to refresh.
+ */
+public final class LoadTest {
+
+    private LoadTest() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        // the JDK HTTP server behind the mock issuer and the stub GW2 API closes keep-alive connections beyond 200 idle ones,
+        // which the application only notices as NoHttpResponseException once it holds more concurrent connections than that
+        if (System.getProperty("sun.net.httpserver.maxIdleConnections") == null) {
+            System.setProperty("sun.net.httpserver.maxIdleConnections", "4096");
+        }
+
+        final Map<String, String> options = new HashMap<>();
+        final List<String> applicationArgs = new ArrayList<>();
+
+        for (String arg : args) {
+            final int equals = arg.indexOf('=');
+            final String name = arg.startsWith("--") && equals != -1 ? arg.substring(2, equals) : null;
+
+            if (name != null && !name.contains(".")) {
+                options.put(name, arg.substring(equals + 1));
+            } else {
+                applicationArgs.add(arg);
+            }
+        }
+
+        final int users = Integer.parseInt(options.getOrDefault("users", "1000"));
+        final int enrolled = Math.min(users, Integer.parseInt(options.getOrDefault("enrolled", "500")));
+        final int concurrency = Integer.parseInt(options.getOrDefault("concurrency", "64"));
+        final Duration duration = DurationStyle.detectAndParse(options.getOrDefault("duration", "2m"));
+        final double gw2ApiRatio = Double.parseDouble(options.getOrDefault("gw2-api-ratio", "0.2"));
+        final boolean gw2ApiBatch = Boolean.parseBoolean(options.getOrDefault("gw2-api-batch", "false"));
+        final Duration probeInterval = DurationStyle.detectAndParse(options.getOrDefault("probe-interval", "50ms"));
+
+        final MockIssuer.Options issuerOptions = new MockIssuer.Options(
+                0,
+                Integer.parseInt(options.getOrDefault("issuer-threads", "64")),
+                DurationStyle.detectAndParse(options.getOrDefault("token-lifetime", "60s")),
+                Integer.parseInt(options.getOrDefault("gw2-tokens", "3")),
+                DurationStyle.detectAndParse(options.getOrDefault("issuer-latency", "0ms")),
+                DurationStyle.detectAndParse(options.getOrDefault("issuer-latency-jitter", "0ms")),
+                Double.parseDouble(options.getOrDefault("issuer-failure-rate", "0.0"))
+        );
+
+        try (MockIssuer issuer = new MockIssuer(issuerOptions); StubGw2Api gw2Api = new StubGw2Api(64, DurationStyle.detectAndParse(options.getOrDefault("gw2-api-latency", "50ms")))) {
+            final int port = freePort();
+            final ConfigurableApplicationContext application = startApplication(issuer, gw2Api, port, applicationArgs);
+
+            try {
+                run(URI.create("http://localhost:" + port), issuer, gw2Api, application.getBean(MeterRegistry.class), users, enrolled, concurrency, duration, gw2ApiRatio, gw2ApiBatch, probeInterval);
+            } finally {
+                application.close();
+            }
+        }
+
+        System.exit(0);
+    }
+
+    private static void run(URI appUri, MockIssuer issuer, StubGw2Api gw2Api, MeterRegistry meterRegistry, int userCount, int enrolled, int concurrency, Duration duration, double gw2ApiRatio, boolean gw2ApiBatch, Duration probeInterval) throws Exception {
+        final HttpClient httpClient = HttpClient.newBuilder()
+                .followRedirects(HttpClient.Redirect.NEVER)
+                .connectTimeout(Duration.ofSeconds(5L))
+                .executor(Executors.newFixedThreadPool(Math.max(4, concurrency / 4)))
+                .build();
+
+        final ExecutorService executor = Executors.newFixedThreadPool(concurrency);
+        final List<SimulatedUser> users = new ArrayList<>(userCount);
+
+        for (int i = 0; i < userCount; i++) {
+            users.add(new SimulatedUser(httpClient, appUri, "user-" + i));
+        }
+
+        try {
+            // region login
+            final Histogram loginLatency = new ConcurrentHistogram(3);
+            final LongAdder loginFailures = new LongAdder();
+            final List<SimulatedUser> loggedIn = new CopyOnWriteArrayList<>();
+
+            final long loginStart = System.nanoTime();
+            invokeAll(executor, users, (user) -> {
+                final long start = System.nanoTime();
+                if (user.login()) {
+                    loggedIn.add(user);
+                    loginLatency.recordValue(micros(start));
+                } else {
+                    loginFailures.increment();
+                }
+            });
+
+            report("login", loginLatency, loggedIn.size(), System.nanoTime() - loginStart);
+            System.out.printf(Locale.ROOT, "login failures: %d%n", loginFailures.sum());
+            // endregion
+
+            // region enrollment
+            final Histogram enrollLatency = new ConcurrentHistogram(3);
+            final LongAdder enrollFailures = new LongAdder();
+
+            final long enrollStart = System.nanoTime();
+            invokeAll(executor, loggedIn.subList(0, Math.min(enrolled, loggedIn.size())), (user) -> {
+                final long start = System.nanoTime();
+                if (user.enableBackgroundRefresh() == 200) {
+                    enrollLatency.recordValue(micros(start));
+                } else {
+                    enrollFailures.increment();
+                }
+            });
+
+            report("enroll", enrollLatency, enrollLatency.getTotalCount(), System.nanoTime() - enrollStart);
+            System.out.printf(Locale.ROOT, "enroll failures: %d%n", enrollFailures.sum());
+            // endregion
+
+            // region steady state
+            final Histogram authInfoLatency = new ConcurrentHistogram(3);
+            final ConcurrentMap<Integer, LongAdder> authInfoStatus = new ConcurrentHashMap<>();
+            final Histogram gw2ApiLatency = new ConcurrentHistogram(3);
+            final ConcurrentMap<Integer, LongAdder> gw2ApiStatus = new ConcurrentHashMap<>();
+            final long deadline = System.nanoTime() + duration.toNanos();
+            final List<Callable<Void>> workers = new ArrayList<>(concurrency);
+
+            for (int i = 0; i < concurrency; i++) {
+                workers.add(() -> {
+                    final ThreadLocalRandom random = ThreadLocalRandom.current();
+
+                    while (System.nanoTime() < deadline) {
+                        final SimulatedUser user = loggedIn.get(random.nextInt(loggedIn.size()));
+                        final long start = System.nanoTime();
+
+                        if (random.nextDouble() < gw2ApiRatio) {
+                            final int status;
+                            if (random.nextBoolean()) {
+                                status = user.gw2Api("v2/currencies?ids=all", false);
+                            } else if (gw2ApiBatch) {
+                                status = user.gw2ApiBatch(List.of("v2/account/wallet", "v2/account/materials"));
+                            } else {
+                                status = user.gw2Api("v2/account/wallet", true);
+                            }
+
+                            gw2ApiLatency.recordValue(micros(start));
+                            gw2ApiStatus.computeIfAbsent(status, (k) -> new LongAdder()).increment();
+                        } else {
+                            final int status = user.authInfo();
+
+                            authInfoLatency.recordValue(micros(start));
+                            authInfoStatus.computeIfAbsent(status, (k) -> new LongAdder()).increment();
+                        }
+                    }
+
+                    return null;
+                });
+            }
+
+            final Histogram probeLatency = new ConcurrentHistogram(3);
+            final ConcurrentMap<Integer, LongAdder> probeStatus = new ConcurrentHashMap<>();
+            final Thread probe = new Thread(() -> {
+                final ThreadLocalRandom random = ThreadLocalRandom.current();
+                boolean frontend = true;
+
+                try {
+                    while (System.nanoTime() < deadline) {
+                        final SimulatedUser user = loggedIn.get(random.nextInt(loggedIn.size()));
+                        final long start = System.nanoTime();
+                        int status;
+
+                        try {
+                            status = frontend ? user.page("/") : user.isBackgroundRefreshEnabled();
+                        } catch (IOException e) {
+                            status = -1;
+                        }
+
+                        probeLatency.recordValue(micros(start));
+                        probeStatus.computeIfAbsent(status, (k) -> new LongAdder()).increment();
+                        frontend = !frontend;
+
+                        Thread.sleep(probeInterval.toMillis());
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }, "load-test-probe");
+
+            final long steadyStart = System.nanoTime();
+            probe.start();
+
+            for (Future<Void> future : executor.invokeAll(workers)) {
+                future.get();
+            }
+
+            probe.join();
+
+            report("authinfo", authInfoLatency, authInfoLatency.getTotalCount(), System.nanoTime() - steadyStart);
+            System.out.printf(Locale.ROOT, "authinfo status counts: %s%n", new TreeMap<>(authInfoStatus));
+
+            if (gw2ApiLatency.getTotalCount() > 0L) {
+                report("gw2 api proxy", gw2ApiLatency, gw2ApiLatency.getTotalCount(), System.nanoTime() - steadyStart);
+                System.out.printf(Locale.ROOT, "gw2 api proxy status counts: %s%n", new TreeMap<>(gw2ApiStatus));
+            }
+
+            report("probe", probeLatency, probeLatency.getTotalCount(), System.nanoTime() - steadyStart);
+            System.out.printf(Locale.ROOT, "probe status counts: %s%n", new TreeMap<>(probeStatus));
+            // endregion
+
+            // region issuer and application
+            final MockIssuer.Stats stats = issuer.stats();
+            final Histogram refreshLag = stats.refreshLagMillis();
+
+            System.out.printf(Locale.ROOT, "issuer: authorization_code=%d refresh_token=%d rejected_refresh_tokens=%d revocations=%d injected_failures=%d%n",
+                    stats.authorizationCodeGrants(), stats.refreshTokenGrants(), stats.rejectedRefreshTokens(), stats.revocations(), stats.injectedFailures());
+            System.out.printf(Locale.ROOT, "refresh lag (ms, behind schedule): count=%d p50=%d p99=%d max=%d%n",
+                    refreshLag.getTotalCount(), refreshLag.getValueAtPercentile(50.0), refreshLag.getValueAtPercentile(99.0), refreshLag.getMaxValue());
+
+            System.out.printf(Locale.ROOT, "background refresh: queue=%.0f success=%.0f retry=%.0f removed=%.0f coalesced=%.0f%n",
+                    gauge(meterRegistry, "background.refresh.queue.size"),
+                    counter(meterRegistry, "background.refresh.completed", "success"),
+                    counter(meterRegistry, "background.refresh.completed", "retry"),
+                    counter(meterRegistry, "background.refresh.completed", "removed"),
+                    counter(meterRegistry, "token.refresh.coalesced", null));
+
+            System.out.printf(Locale.ROOT, "active session refresh: tracked=%.0f success=%.0f retry=%.0f failed=%.0f idle=%.0f inline=%.0f%n",
+                    gauge(meterRegistry, "active.session.refresh.tracked"),
+                    counter(meterRegistry, "active.session.refresh.completed", "success"),
+                    counter(meterRegistry, "active.session.refresh.completed", "retry"),
+                    counter(meterRegistry, "active.session.refresh.completed", "failed"),
+                    counter(meterRegistry, "active.session.refresh.completed", "idle"),
+                    counter(meterRegistry, "authinfo.refresh.inline", null));
+
+            System.out.printf(Locale.ROOT, "gw2 api: upstream_public=%d upstream_account=%d hit=%.0f coalesced=%.0f fetched=%.0f rate_limited=%.0f%n",
+                    gw2Api.publicRequests(),
+                    gw2Api.accountRequests(),
+                    counter(meterRegistry, "gw2api.proxy.requests", "hit"),
+                    counter(meterRegistry, "gw2api.proxy.requests", "coalesced"),
+                    counter(meterRegistry, "gw2api.proxy.requests", "fetched"),
+                    counter(meterRegistry, "gw2api.proxy.requests", "rate_limited"));
+            // endregion
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private static ConfigurableApplicationContext startApplication(MockIssuer issuer, StubGw2Api gw2Api, int port, List<String> applicationArgs) {
+        final Map<String, Object> properties = new LinkedHashMap<>();
+        properties.put("server.port", port);
+        properties.put("management.server.port", 0);
+        properties.put("com.gw2auth.example.url", "http://localhost:" + port);
+        properties.put("GW2AUTH_URL", issuer.uri());
+        properties.put("GW2AUTH_CLIENT_ID", "benchmark-client");
+        properties.put("GW2AUTH_CLIENT_SECRET", "benchmark-secret");
+        properties.put("GW2_API_URL", gw2Api.uri());
+        properties.put("logging.level.root", "WARN");
+        properties.put("spring.main.banner-mode", "off");
+
+        return new SpringApplicationBuilder(Application.class)
+                .properties(properties)
+                .run(applicationArgs.toArray(String[]::new));
+    }
+
+    private static void invokeAll(ExecutorService executor, List<SimulatedUser> users, UserTask task) throws InterruptedException, ExecutionException {
+        final List<Callable<Void>> callables = new ArrayList<>(users.size());
+        for (SimulatedUser user : users) {
+            callables.add(() -> {
+                task.run(user);
+                return null;
+            });
+        }
+
+        for (Future<Void> future : executor.invokeAll(callables)) {
+            future.get();
+        }
+    }
+
+    private static void report(String phase, Histogram latencyMicros, long operations, long elapsedNanos) {
+        final double seconds = elapsedNanos / 1e9;
+
+        System.out.printf(Locale.ROOT, "%s: operations=%d throughput=%.1f/s p50=%.2fms p99=%.2fms max=%.2fms%n",
+                phase,
+                operations,
+                operations / seconds,
+                latencyMicros.getValueAtPercentile(50.0) / 1000.0,
+                latencyMicros.getValueAtPercentile(99.0) / 1000.0,
+                latencyMicros.getMaxValue() / 1000.0);
+    }
+
+    private static double gauge(MeterRegistry meterRegistry, String name) {
+        final Gauge gauge = meterRegistry.find(name).gauge();
+        return gauge == null ? Double.NaN : gauge.value();
+    }
+
+    private static double counter(MeterRegistry meterRegistry, String name, String outcome) {
+        final Counter counter = (outcome == null ? meterRegistry.find(name) : meterRegistry.find(name).tag("outcome", outcome)).counter();
+        return counter == null ? Double.NaN : counter.count();
+    }
+
+    private static long micros(long startNanos) {
+        return TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - startNanos);
+    }
+
+    private static int freePort() throws IOException {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+
+    @FunctionalInterface
+    private interface UserTask {
+
+        void run(SimulatedUser user) throws Exception;
+    }
+}
@@ -0,0 +1,305 @@
+package com.gw2auth.example.app.loadtest;
+
+import com.gw2auth.example.app.benchmark.SyntheticTokens;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.HdrHistogram.ConcurrentHistogram;
+import org.HdrHistogram.Histogram;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Embedded stand-in for the GW2Auth authorization server.
+ * <p>
+ * Supports discovery, the authorization code flow (the subject is taken from the {@code mock_subject} query parameter),
+ * refresh token rotation (a refresh token is valid exactly once), revocation and the JWK set.
+ * Access tokens are signed JWTs carrying {@code gw2:permissions} and {@code gw2:tokens} claims.
+ * Latency and failures can be injected into the token and revocation endpoints.
+ */
+public class MockIssuer implements AutoCloseable {
+
+    static {
+        // without TCP_NODELAY split header/body writes run into delayed ACKs
+        System.setProperty("sun.net.httpserver.nodelay", "true");
+    }
+
+    private static final Duration CLOCK_SKEW = Duration.ofSeconds(5L);
+    private static final Duration MAX_TOKEN_AGE = Duration.ofMinutes(5L);
+
+    private final Options options;
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final String uri;
+
+    private final ConcurrentMap<String, String> authorizationCodes;
+    private final ConcurrentMap<String, IssuedToken> refreshTokens;
+
+    private final LongAdder authorizationCodeGrants;
+    private final LongAdder refreshTokenGrants;
+    private final LongAdder rejectedRefreshTokens;
+    private final LongAdder revocations;
+    private final LongAdder injectedFailures;
+    private final Histogram refreshLag;
+
+    public MockIssuer(Options options) throws IOException {
+        this.options = options;
+        this.server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), options.port()), 4096);
+        this.executor = Executors.newFixedThreadPool(options.threads());
+        this.uri = "http://" + this.server.getAddress().getHostString() + ":" + this.server.getAddress().getPort();
+
+        this.authorizationCodes = new ConcurrentHashMap<>();
+        this.refreshTokens = new ConcurrentHashMap<>();
+
+        this.authorizationCodeGrants = new LongAdder();
+        this.refreshTokenGrants = new LongAdder();
+        this.rejectedRefreshTokens = new LongAdder();
+        this.revocations = new LongAdder();
+        this.injectedFailures = new LongAdder();
+        this.refreshLag = new ConcurrentHistogram(3);
+
+        this.server.setExecutor(this.executor);
+        this.server.createContext("/.well-known/openid-configuration", this::discovery);
+        this.server.createContext("/.well-known/oauth-authorization-server", this::discovery);
+        this.server.createContext("/oauth2/authorize", this::authorize);
+        this.server.createContext("/oauth2/token", this::token);
+        this.server.createContext("/oauth2/revoke", this::revoke);
+        this.server.createContext("/oauth2/jwks", this::jwks);
+        this.server.start();
+    }
+
+    public String uri() {
+        return this.uri;
+    }
+
+    public Stats stats() {
+        return new Stats(
+                this.authorizationCodeGrants.sum(),
+                this.refreshTokenGrants.sum(),
+                this.rejectedRefreshTokens.sum(),
+                this.revocations.sum(),
+                this.injectedFailures.sum(),
+                this.refreshLag.copy()
+        );
+    }
+
+    private void discovery(HttpExchange exchange) throws IOException {
+        final String body = "{"
+                + "\"issuer\":\"" + this.uri + "\","
+                + "\"authorization_endpoint\":\"" + this.uri + "/oauth2/authorize\","
+                + "\"token_endpoint\":\"" + this.uri + "/oauth2/token\","
+                + "\"revocation_endpoint\":\"" + this.uri + "/oauth2/revoke\","
+                + "\"jwks_uri\":\"" + this.uri + "/oauth2/jwks\","
+                + "\"response_types_supported\":[\"code\"],"
+                + "\"grant_types_supported\":[\"authorization_code\",\"refresh_token\"],"
+                + "\"subject_types_supported\":[\"public\"],"
+                + "\"id_token_signing_alg_values_supported\":[\"RS256\"],"
+                + "\"token_endpoint_auth_methods_supported\":[\"client_secret_basic\",\"client_secret_post\"]"
+                + "}";
+
+        respond(exchange, 200, body);
+    }
+
+    private void jwks(HttpExchange exchange) throws IOException {
+        respond(exchange, 200, "{\"keys\":[" + SyntheticTokens.signingKey().toPublicJWK().toJSONString() + "]}");
+    }
+
+    private void authorize(HttpExchange exchange) throws IOException {
+        final Map<String, String> params = parseForm(exchange.getRequestURI().getRawQuery());
+        final String redirectUri = params.get("redirect_uri");
+
+        if (redirectUri == null) {
+            respond(exchange, 400, "{\"error\":\"invalid_request\"}");
+            return;
+        }
+
+        final String subject = params.getOrDefault("mock_subject", UUID.randomUUID().toString());
+        final String code = SyntheticTokens.randomString(32);
+        this.authorizationCodes.put(code, subject);
+
+        String location = redirectUri + (redirectUri.contains("?") ? "&" : "?") + "code=" + code;
+        if (params.containsKey("state")) {
+            location += "&state=" + URLEncoder.encode(params.get("state"), StandardCharsets.UTF_8);
+        }
+
+        exchange.getResponseHeaders().set("Location", location);
+        exchange.sendResponseHeaders(302, -1);
+        exchange.close();
+    }
+
+    private void token(HttpExchange exchange) throws IOException {
+        final Map<String, String> params = parseForm(readBody(exchange));
+
+        if (injectLatencyAndFailure(exchange)) {
+            return;
+        }
+
+        final String subject;
+        final String grantType = params.getOrDefault("grant_type", "");
+
+        switch (grantType) {
+            case "authorization_code" -> {
+                subject = this.authorizationCodes.remove(params.getOrDefault("code", ""));
+                if (subject == null) {
+                    respond(exchange, 400, "{\"error\":\"invalid_grant\"}");
+                    return;
+                }
+
+                this.authorizationCodeGrants.increment();
+            }
+            case "refresh_token" -> {
+                // rotation: every refresh token can be used exactly once
+                final IssuedToken previous = this.refreshTokens.remove(params.getOrDefault("refresh_token", ""));
+                if (previous == null) {
+                    this.rejectedRefreshTokens.increment();
+                    respond(exchange, 400, "{\"error\":\"invalid_grant\"}");
+                    return;
+                }
+
+                subject = previous.subject();
+                this.refreshTokenGrants.increment();
+                this.refreshLag.recordValue(refreshLagMillis(previous, Instant.now()));
+            }
+            default -> {
+                respond(exchange, 400, "{\"error\":\"unsupported_grant_type\"}");
+                return;
+            }
+        }
+
+        final Instant issuedAt = Instant.now();
+        final Instant expiresAt = issuedAt.plus(this.options.accessTokenLifetime());
+        final String accessToken = SyntheticTokens.accessToken(this.uri, subject, this.options.gw2TokenCount(), issuedAt, expiresAt);
+        final String refreshToken = SyntheticTokens.randomString(64);
+
+        this.refreshTokens.put(refreshToken, new IssuedToken(subject, issuedAt, expiresAt));
+
+        respond(exchange, 200, "{\"access_token\":\"" + accessToken + "\",\"token_type\":\"Bearer\",\"expires_in\":" + this.options.accessTokenLifetime().toSeconds()
+                + ",\"refresh_token\":\"" + refreshToken + "\",\"scope\":\"gw2:account\"}");
+    }
+
+    private void revoke(HttpExchange exchange) throws IOException {
+        final Map<String, String> params = parseForm(readBody(exchange));
+
+        if (injectLatencyAndFailure(exchange)) {
+            return;
+        }
+
+        this.refreshTokens.remove(params.getOrDefault("token", ""));
+        this.revocations.increment();
+
+        exchange.sendResponseHeaders(200, -1);
+        exchange.close();
+    }
+
+    /**
+     * How late the refresh happened relative to the time the application is expected to refresh the previous token.
+     */
+    private static long refreshLagMillis(IssuedToken previous, Instant now) {
+        final Instant dueAt = previous.expiresAt().minus(CLOCK_SKEW).isBefore(previous.issuedAt().plus(MAX_TOKEN_AGE))
+                ? previous.expiresAt().minus(CLOCK_SKEW)
+                : previous.issuedAt().plus(MAX_TOKEN_AGE);
+
+        return Math.max(0L, Duration.between(dueAt, now).toMillis());
+    }
+
+    private boolean injectLatencyAndFailure(HttpExchange exchange) throws IOException {
+        final ThreadLocalRandom random = ThreadLocalRandom.current();
+        final long latencyMillis = this.options.latency().toMillis() + (this.options.latencyJitter().isZero() ? 0L : random.nextLong(this.options.latencyJitter().toMillis() + 1L));
+
+        if (latencyMillis > 0L) {
+            try {
+                TimeUnit.MILLISECONDS.sleep(latencyMillis);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        if (this.options.failureRate() > 0.0 && random.nextDouble() < this.options.failureRate()) {
+            this.injectedFailures.increment();
+            respond(exchange, 503, "{\"error\":\"temporarily_unavailable\"}");
+            return true;
+        }
+
+        return false;
+    }
+
+    private static String readBody(HttpExchange exchange) throws IOException {
+        try (InputStream in = exchange.getRequestBody()) {
+            return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        }
+    }
+
+    private static void respond(HttpExchange exchange, int status, String body) throws IOException {
+        final byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        exchange.getResponseHeaders().set("Cache-Control", "no-store");
+        exchange.sendResponseHeaders(status, bytes.length);
+        exchange.getResponseBody().write(bytes);
+        exchange.close();
+    }
+
+    static Map<String, String> parseForm(String form) {
+        final Map<String, String> result = new HashMap<>();
+        if (form == null || form.isEmpty()) {
+            return result;
+        }
+
+        for (String pair : form.split("&")) {
+            final int equals = pair.indexOf('=');
+            if (equals == -1) {
+                result.put(URLDecoder.decode(pair, StandardCharsets.UTF_8), "");
+            } else {
+                result.put(URLDecoder.decode(pair.substring(0, equals), StandardCharsets.UTF_8), URLDecoder.decode(pair.substring(equals + 1), StandardCharsets.UTF_8));
+            }
+        }
+
+        return result;
+    }
+
+    @Override
+    public void close() {
+        this.server.stop(0);
+        this.executor.shutdownNow();
+    }
+
+    public record Options(int port,
+                          int threads,
+                          Duration accessTokenLifetime,
+                          int gw2TokenCount,
+                          Duration latency,
+                          Duration latencyJitter,
+                          double failureRate) {
+
+    }
+
+    public record Stats(long authorizationCodeGrants,
+                        long refreshTokenGrants,
+                        long rejectedRefreshTokens,
+                        long revocations,
+                        long injectedFailures,
+                        Histogram refreshLagMillis) {
+
+    }
+
+    private record IssuedToken(String subject, Instant issuedAt, Instant expiresAt) {
+
+    }
+}
@@ -0,0 +1,204 @@
+package com.gw2auth.example.app.loadtest;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * A browser session of a single user: keeps its own cookies and follows the login redirects by hand,
+ * so that thousands of users can share one {@link HttpClient}.
+ */
+class SimulatedUser {
+
+    private static final String CSRF_COOKIE = "XSRF-TOKEN";
+    private static final String CSRF_HEADER = "X-XSRF-TOKEN";
+    private static final Pattern GW2_API_TOKEN = Pattern.compile("\"token\":\"([^\"]+)\"");
+
+    private final HttpClient httpClient;
+    private final URI appUri;
+    private final String subject;
+    private final Map<String, String> cookies;
+    private volatile String gw2ApiToken;
+    private volatile int gw2Accounts;
+
+    SimulatedUser(HttpClient httpClient, URI appUri, String subject) {
+        this.httpClient = httpClient;
+        this.appUri = appUri;
+        this.subject = subject;
+        this.cookies = new ConcurrentHashMap<>();
+    }
+
+    String subject() {
+        return this.subject;
+    }
+
+    /**
+     * Runs the authorization code flow: app → issuer authorize endpoint → app callback.
+     *
+     * @return true if the session ended up authenticated
+     */
+    boolean login() throws IOException, InterruptedException {
+        HttpResponse<Void> response = send(HttpRequest.newBuilder(this.appUri.resolve("/oauth2/authorization/gw2auth")).GET());
+        if (response.statusCode() != 302) {
+            return false;
+        }
+
+        final String authorizeLocation = response.headers().firstValue("Location").orElseThrow();
+        final String authorizeUri = authorizeLocation + (authorizeLocation.contains("?") ? "&" : "?") + "mock_subject=" + URLEncoder.encode(this.subject, StandardCharsets.UTF_8);
+
+        response = send(HttpRequest.newBuilder(URI.create(authorizeUri)).GET());
+        if (response.statusCode() != 302) {
+            return false;
+        }
+
+        response = send(HttpRequest.newBuilder(URI.create(response.headers().firstValue("Location").orElseThrow())).GET());
+        if (response.statusCode() != 302 || response.headers().firstValue("Location").orElse("").contains("error")) {
+            return false;
+        }
+
+        // obtains the CSRF cookie for subsequent modifying requests and a GW2 API token for the proxied GW2 API requests
+        final HttpResponse<String> authInfo = send(HttpRequest.newBuilder(this.appUri.resolve("/api/authinfo")).GET(), HttpResponse.BodyHandlers.ofString());
+        if (authInfo.statusCode() != 200) {
+            return false;
+        }
+
+        final Matcher matcher = GW2_API_TOKEN.matcher(authInfo.body());
+        int gw2Accounts = 0;
+
+        while (matcher.find()) {
+            if (gw2Accounts++ == 0) {
+                this.gw2ApiToken = matcher.group(1);
+            }
+        }
+
+        this.gw2Accounts = gw2Accounts;
+
+        return true;
+    }
+
+    int enableBackgroundRefresh() throws IOException, InterruptedException {
+        final HttpRequest.Builder request = HttpRequest.newBuilder(this.appUri.resolve("/api/background-refresh"))
+                .POST(HttpRequest.BodyPublishers.noBody());
+
+        final String csrfToken = this.cookies.get(CSRF_COOKIE);
+        if (csrfToken != null) {
+            request.header(CSRF_HEADER, csrfToken);
+        }
+
+        return send(request).statusCode();
+    }
+
+    int authInfo() throws IOException, InterruptedException {
+        return send(HttpRequest.newBuilder(this.appUri.resolve("/api/authinfo")).GET()).statusCode();
+    }
+
+    int isBackgroundRefreshEnabled() throws IOException, InterruptedException {
+        return send(HttpRequest.newBuilder(this.appUri.resolve("/api/background-refresh")).GET()).statusCode();
+    }
+
+    /**
+     * Requests a page or static asset of the frontend.
+     */
+    int page(String path) throws IOException, InterruptedException {
+        return send(HttpRequest.newBuilder(this.appUri.resolve(path)).GET()).statusCode();
+    }
+
+    /**
+     * Requests the given GW2 API path through the application's proxy, with the user's first GW2 API token if {@code authenticated}.
+     */
+    int gw2Api(String path, boolean authenticated) throws IOException, InterruptedException {
+        final HttpRequest.Builder request = HttpRequest.newBuilder(this.appUri.resolve("/api/gw2/" + path)).GET();
+        final String gw2ApiToken = this.gw2ApiToken;
+
+        if (authenticated && gw2ApiToken != null) {
+            request.header("Authorization", "Bearer " + gw2ApiToken);
+        }
+
+        return send(request).statusCode();
+    }
+
+    /**
+     * Requests the given GW2 API paths for all GW2 accounts of the user through the application's batch endpoint.
+     *
+     * @return the status of the batch request, or -1 if it did not stream one result per account and path or was cut off
+     */
+    int gw2ApiBatch(List<String> paths) throws IOException, InterruptedException {
+        final String body = paths.stream().map((path) -> "\"" + path + "\"").collect(Collectors.joining(",", "{\"paths\":[", "]}"));
+        final HttpRequest.Builder request = HttpRequest.newBuilder(this.appUri.resolve("/api/gw2/batch"))
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofString(body));
+
+        final String csrfToken = this.cookies.get(CSRF_COOKIE);
+        if (csrfToken != null) {
+            request.header(CSRF_HEADER, csrfToken);
+        }
+
+        final HttpResponse<Stream<String>> response;
+        final long results;
+
+        try {
+            response = send(request, HttpResponse.BodyHandlers.ofLines());
+            results = response.body().filter((line) -> !line.isEmpty()).count();
+        } catch (IOException | UncheckedIOException e) {
+            // cut off by the batch timeout
+            return -1;
+        }
+
+        if (response.statusCode() == 200 && results != (long) paths.size() * this.gw2Accounts) {
+            return -1;
+        }
+
+        return response.statusCode();
+    }
+
+    private HttpResponse<Void> send(HttpRequest.Builder request) throws IOException, InterruptedException {
+        return send(request, HttpResponse.BodyHandlers.discarding());
+    }
+
+    private <T> HttpResponse<T> send(HttpRequest.Builder request, HttpResponse.BodyHandler<T> bodyHandler) throws IOException, InterruptedException {
+        final boolean sameOrigin = request.build().uri().getAuthority().equals(this.appUri.getAuthority());
+        if (sameOrigin && !this.cookies.isEmpty()) {
+            request.header("Cookie", this.cookies.entrySet().stream().map((e) -> e.getKey() + "=" + e.getValue()).collect(Collectors.joining("; ")));
+        }
+
+        final HttpResponse<T> response = this.httpClient.send(request.build(), bodyHandler);
+
+        if (sameOrigin) {
+            for (String setCookie : response.headers().allValues("Set-Cookie")) {
+                storeCookie(setCookie);
+            }
+        }
+
+        return response;
+    }
+
+    private void storeCookie(String setCookie) {
+        final int end = setCookie.indexOf(';');
+        final String pair = end == -1 ? setCookie : setCookie.substring(0, end);
+        final int equals = pair.indexOf('=');
+        if (equals == -1) {
+            return;
+        }
+
+        final String name = pair.substring(0, equals).trim();
+        final String value = pair.substring(equals + 1).trim();
+
+        if (value.isEmpty() || setCookie.contains("Max-Age=0")) {
+            this.cookies.remove(name);
+        } else {
+            this.cookies.put(name, value);
+        }
+    }
+}
@@ -0,0 +1,109 @@
+package com.gw2auth.example.app.loadtest;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Embedded stand-in for the GW2 API, serving a public endpoint ({@code /v2/currencies}) and account endpoints
+ * ({@code /v2/account/wallet}, {@code /v2/account/materials}) that require a bearer token.
+ * Responses carry {@code Cache-Control} headers like the real API and are delayed by a fixed latency.
+ */
+public class StubGw2Api implements AutoCloseable {
+
+    static {
+        // without TCP_NODELAY split header/body writes run into delayed ACKs
+        System.setProperty("sun.net.httpserver.nodelay", "true");
+    }
+
+    private static final String CURRENCIES = "[{\"id\":1,\"name\":\"Coin\",\"order\":101},{\"id\":2,\"name\":\"Karma\",\"order\":102},{\"id\":3,\"name\":\"Laurel\",\"order\":104}]";
+    private static final String WALLET = "[{\"id\":1,\"value\":123456},{\"id\":2,\"value\":987654},{\"id\":3,\"value\":321}]";
+    private static final String MATERIALS = "[{\"id\":19976,\"category\":37,\"binding\":\"Account\",\"count\":250}]";
+
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final String uri;
+    private final long latencyMillis;
+    private final LongAdder publicRequests;
+    private final LongAdder accountRequests;
+
+    public StubGw2Api(int threads, Duration latency) throws IOException {
+        this.server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 4096);
+        this.executor = Executors.newFixedThreadPool(threads);
+        this.uri = "http://" + this.server.getAddress().getHostString() + ":" + this.server.getAddress().getPort();
+        this.latencyMillis = latency.toMillis();
+        this.publicRequests = new LongAdder();
+        this.accountRequests = new LongAdder();
+
+        this.server.setExecutor(this.executor);
+        this.server.createContext("/v2/currencies", (exchange) -> publicEndpoint(exchange, CURRENCIES));
+        this.server.createContext("/v2/account/wallet", (exchange) -> accountEndpoint(exchange, WALLET));
+        this.server.createContext("/v2/account/materials", (exchange) -> accountEndpoint(exchange, MATERIALS));
+        this.server.start();
+    }
+
+    public String uri() {
+        return this.uri;
+    }
+
+    public long publicRequests() {
+        return this.publicRequests.sum();
+    }
+
+    public long accountRequests() {
+        return this.accountRequests.sum();
+    }
+
+    private void publicEndpoint(HttpExchange exchange, String body) throws IOException {
+        this.publicRequests.increment();
+        delay();
+        respond(exchange, 200, "public, max-age=300", body);
+    }
+
+    private void accountEndpoint(HttpExchange exchange, String body) throws IOException {
+        this.accountRequests.increment();
+        delay();
+
+        final String authorization = exchange.getRequestHeaders().getFirst("Authorization");
+        if (authorization == null || !authorization.startsWith("Bearer ")) {
+            respond(exchange, 401, "no-store", "{\"text\":\"Invalid access token\"}");
+            return;
+        }
+
+        respond(exchange, 200, "private, max-age=60", body);
+    }
+
+    private void delay() {
+        if (this.latencyMillis > 0L) {
+            try {
+                Thread.sleep(this.latencyMillis);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private static void respond(HttpExchange exchange, int status, String cacheControl, String body) throws IOException {
+        final byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+
+        exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+        exchange.getResponseHeaders().set("Cache-Control", cacheControl);
+        exchange.sendResponseHeaders(status, bytes.length);
+        exchange.getResponseBody().write(bytes);
+        exchange.close();
+    }
+
+    @Override
+    public void close() {
+        this.server.stop(0);
+        this.executor.shutdownNow();
+    }
+}
@@ -0,0 +1,55 @@
+// Writes gzip (.gz) and brotli (.br) variants next to the compressible files of the frontend build,
+// so that the application can serve them without compressing on every request.
+// Usage: node compress-static-assets.js <directory>
+
+const fs = require('fs');
+const path = require('path');
+const zlib = require('zlib');
+
+const COMPRESSIBLE_EXTENSIONS = new Set(['.html', '.js', '.css', '.json', '.svg', '.txt', '.ico', '.map', '.ttf', '.eot']);
+const MIN_SIZE = 1024;
+
+function compressDirectory(directory) {
+  for (const entry of fs.readdirSync(directory, { withFileTypes: true })) {
+    const file = path.join(directory, entry.name);
+
+    if (entry.isDirectory()) {
+      compressDirectory(file);
+    } else if (entry.isFile() && COMPRESSIBLE_EXTENSIONS.has(path.extname(entry.name).toLowerCase())) {
+      compressFile(file);
+    }
+  }
+}
+
+function compressFile(file) {
+  const content = fs.readFileSync(file);
+  if (content.length < MIN_SIZE) {
+    return;
+  }
+
+  const variants = {
+    '.gz': zlib.gzipSync(content, { level: zlib.constants.Z_BEST_COMPRESSION }),
+    '.br': zlib.brotliCompressSync(content, {
+      params: {
+        [zlib.constants.BROTLI_PARAM_MODE]: zlib.constants.BROTLI_MODE_TEXT,
+        [zlib.constants.BROTLI_PARAM_QUALITY]: zlib.constants.BROTLI_MAX_QUALITY,
+        [zlib.constants.BROTLI_PARAM_SIZE_HINT]: content.length
+      }
+    })
+  };
+
+  for (const [extension, compressed] of Object.entries(variants)) {
+    // a variant that does not save anything would only cost the client the decompression
+    if (compressed.length < content.length) {
+      fs.writeFileSync(file + extension, compressed);
+    }
+  }
+}
+
+const directory = process.argv[2];
+if (!directory) {
+  console.error('usage: node compress-static-assets.js <directory>');
+  process.exit(1);
+}
+
+compressDirectory(directory);
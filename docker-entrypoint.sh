@@ -7,6 +7,11 @@ if [[ -n $JAVA_OPTS ]]; then
   java_args+=" "
 fi
 
+# written by the training run of Dockerfile.startup
+if [[ -f /opt/app/application.jsa ]]; then
+  java_args+="-XX:SharedArchiveFile=/opt/app/application.jsa "
+fi
+
 java_args+="-jar /opt/app/application.jar"
 
 if [[ -n $APPLICATION_ARGS ]]; then
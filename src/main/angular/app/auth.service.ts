@@ -1,5 +1,5 @@
 import { Injectable } from '@angular/core';
-import {HttpClient, HttpResponse} from '@angular/common/http';
+import {HttpClient, HttpErrorResponse, HttpHeaders, HttpResponse} from '@angular/common/http';
 import {Observable, of, ReplaySubject, Subject, Subscription, timer} from 'rxjs';
 import {catchError, map} from 'rxjs/operators';
 import {Router} from '@angular/router';
@@ -14,6 +14,7 @@ export class AuthService {
 
   private readonly authInfoSubject: Subject<AuthInfo | null>;
   private latestAuthInfo: AuthInfo | null = null;
+  private latestAuthInfoETag: string | null = null;
   private isInitial = true;
 
   private keepAliveSubscription: Subscription | null = null;
@@ -24,10 +25,19 @@ export class AuthService {
 
   authInfo(forceLookup: boolean = true): Observable<AuthInfo | null> {
       if (forceLookup || this.isInitial) {
-          this.http.get<AuthInfo>('/api/authinfo', {observe: 'response'})
+          let headers = new HttpHeaders();
+          if (this.latestAuthInfo != null && this.latestAuthInfoETag != null) {
+              headers = headers.set('If-None-Match', this.latestAuthInfoETag);
+          }
+
+          this.http.get<AuthInfo>('/api/authinfo', {observe: 'response', headers: headers})
               .pipe(
-                  map((response) => response.body),
-                  catchError((err) => of(null))
+                  map((response) => {
+                      this.latestAuthInfoETag = response.headers.get('ETag');
+                      return response.body;
+                  }),
+                  // 304 -> unchanged since the last lookup
+                  catchError((err: HttpErrorResponse) => of(err.status == 304 ? this.latestAuthInfo : null))
               )
               .subscribe((resp) => this.next(resp));
       }
@@ -69,6 +79,10 @@ export class AuthService {
           force = true;
       }
 
+      if (authInfo == null) {
+          this.latestAuthInfoETag = null;
+      }
+
       if (force || !this.nullableAuthInfoEquals(authInfo, this.latestAuthInfo)) {
           this.latestAuthInfo = authInfo;
           this.authInfoSubject.next(authInfo);
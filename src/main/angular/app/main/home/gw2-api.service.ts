@@ -1,7 +1,8 @@
 import {Injectable} from '@angular/core';
-import {HttpClient, HttpErrorResponse, HttpResponse} from '@angular/common/http';
+import {HttpClient, HttpDownloadProgressEvent, HttpErrorResponse, HttpEvent, HttpEventType, HttpHeaders, HttpResponse} from '@angular/common/http';
 import {Observable, of} from 'rxjs';
-import {catchError, map} from 'rxjs/operators';
+import {catchError, map, mergeMap} from 'rxjs/operators';
+import {Gw2ApiBatchResult} from './gw2.model';
 
 @Injectable()
 export class Gw2ApiService {
@@ -9,23 +10,11 @@ export class Gw2ApiService {
     constructor(private readonly httpClient: HttpClient) {}
 
     getFromGw2Api(path: string, params: {[K in string]: any}, gw2ApiToken?: string): Observable<any> {
-        const requestURL = 'https://api.guildwars2.com/' + path;
-
-        if (gw2ApiToken != undefined) {
-            params['access_token'] = gw2ApiToken;
-        }
-
-        return this.httpClient.get(requestURL, { params: params });
+        return this.httpClient.get(Gw2ApiService.requestURL(path), { params: params, headers: Gw2ApiService.headers(gw2ApiToken) });
     }
 
     getFromGw2ApiRaw(path: string, params: {[K in string]: any}, gw2ApiToken?: string): Observable<string> {
-        const requestURL = 'https://api.guildwars2.com/' + path;
-
-        if (gw2ApiToken != undefined) {
-            params['access_token'] = gw2ApiToken;
-        }
-
-        return this.httpClient.get(requestURL, { params: params, observe: 'response', responseType: 'text' } )
+        return this.httpClient.get(Gw2ApiService.requestURL(path), { params: params, headers: Gw2ApiService.headers(gw2ApiToken), observe: 'response', responseType: 'text' } )
             .pipe(catchError((response: HttpErrorResponse) => of(response)))
             .pipe(map((response) => {
                 let text = `Status: ${response.status}\n\n`;
@@ -49,4 +38,47 @@ export class Gw2ApiService {
                 return text;
             }));
     }
+
+    /**
+     * Requests every path for every given GW2 account (all accounts of the user if none are given) in a single request.
+     * The backend streams the results as they complete, and each one is emitted as soon as it arrives.
+     */
+    getFromGw2ApiBatch(paths: string[], gw2AccountIds?: string[]): Observable<Gw2ApiBatchResult> {
+        let consumed = 0;
+
+        return this.httpClient.post('/api/gw2/batch', { paths: paths, gw2AccountIds: gw2AccountIds }, { observe: 'events', reportProgress: true, responseType: 'text' })
+            .pipe(mergeMap((event: HttpEvent<string>) => {
+                let text: string;
+
+                if (event.type == HttpEventType.DownloadProgress) {
+                    text = (<HttpDownloadProgressEvent> event).partialText ?? '';
+                } else if (event.type == HttpEventType.Response) {
+                    text = (<HttpResponse<string>> event).body ?? '';
+                } else {
+                    return [];
+                }
+
+                // only complete lines are parsed, the rest is picked up by a later event
+                const end = event.type == HttpEventType.Response ? text.length : text.lastIndexOf('\n') + 1;
+                const lines = end > consumed ? text.substring(consumed, end).split('\n') : [];
+                consumed = Math.max(consumed, end);
+
+                return lines.filter((line) => line.length > 0).map((line) => <Gw2ApiBatchResult> JSON.parse(line));
+            }));
+    }
+
+    // requests go through the backend, which caches and rate limits them
+    private static requestURL(path: string): string {
+        return '/api/gw2/' + path;
+    }
+
+    private static headers(gw2ApiToken?: string): HttpHeaders {
+        let headers = new HttpHeaders();
+
+        if (gw2ApiToken != undefined) {
+            headers = headers.set('Authorization', 'Bearer ' + gw2ApiToken);
+        }
+
+        return headers;
+    }
 }
\ No newline at end of file
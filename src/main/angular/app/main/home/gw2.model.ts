@@ -24,4 +24,11 @@ export function gw2ApiPermissionDisplayName(gw2ApiPermission: Gw2ApiPermission):
         case Gw2ApiPermission.UNLOCKS: return 'Unlocks';
         case Gw2ApiPermission.WALLET: return 'Wallet';
     }
+}
+
+export interface Gw2ApiBatchResult {
+    gw2AccountId: string;
+    path: string;
+    status: number;
+    body: any;
 }
\ No newline at end of file
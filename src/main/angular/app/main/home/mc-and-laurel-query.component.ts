@@ -61,63 +61,64 @@ export class McAndLaurelQueryComponent implements OnInit, OnChanges {
   onRequestApiClick(): void {
     if (!this.isLoading) {
       this.isLoading = true;
-      let waitingForResponseCount = this.selectedApiTokens.size * 2;
 
       const result: McAndLaurelResult = {mcs: 0, laurels: 0, accounts: []};
+      const gw2AccountResults = new Map<string, McAndLaurelAccountResult>();
       this.result = result;
 
       for (let gw2AccountId of this.selectedApiTokens) {
         const gw2ApiToken = this.authInfo.gw2ApiTokens[gw2AccountId];
 
         if (gw2ApiToken != undefined && gw2ApiToken.token) {
-          const gw2AccountResult = {gw2ApiToken: gw2ApiToken, mcs: 0, laurels: 0};
-          this.result.accounts.push(gw2AccountResult);
-
-          this.gw2ApiService.getFromGw2Api('v2/account/materials', {}, gw2ApiToken.token)
-              .pipe(catchError(() => of(null)))
-              .subscribe((response) => {
-                if (response != null) {
-                  for (let material of response) {
-                    if (material.id == 19976) {
-                      result.mcs += material.count;
-                      gw2AccountResult.mcs = material.count;
-                      break;
-                    }
-                  }
-                } else {
-                  gw2AccountResult.mcs = Number.NaN;
-                }
+          const gw2AccountResult = {gw2ApiToken: gw2ApiToken, mcs: Number.NaN, laurels: Number.NaN};
+          gw2AccountResults.set(gw2AccountId, gw2AccountResult);
+          result.accounts.push(gw2AccountResult);
+        }
+      }
 
-                waitingForResponseCount--;
+      if (gw2AccountResults.size < 1) {
+        this.isLoading = false;
+        return;
+      }
 
-                if (waitingForResponseCount < 1) {
-                  this.isLoading = false;
-                }
-              });
-
-          this.gw2ApiService.getFromGw2Api('v2/account/wallet', {}, gw2ApiToken.token)
-              .pipe(catchError(() => of(null)))
-              .subscribe((response) => {
-                if (response != null) {
-                  for (let currency of response) {
-                    if (currency.id == 3) {
-                      result.laurels += currency.value;
-                      gw2AccountResult.laurels = currency.value;
-                      break;
-                    }
+      // one request for all accounts; results are shown as they arrive
+      this.gw2ApiService.getFromGw2ApiBatch(['v2/account/materials', 'v2/account/wallet'], Array.from(gw2AccountResults.keys()))
+          .pipe(catchError(() => {
+            this.toastService.show('Request failed', 'Failed to request the GW2 API');
+            return of(null);
+          }))
+          .subscribe({
+            next: (batchResult) => {
+              const gw2AccountResult = batchResult != null ? gw2AccountResults.get(batchResult.gw2AccountId) : undefined;
+
+              if (batchResult == null || gw2AccountResult == undefined || batchResult.status != 200) {
+                return;
+              }
+
+              if (batchResult.path == 'v2/account/materials') {
+                gw2AccountResult.mcs = 0;
+
+                for (let material of batchResult.body) {
+                  if (material.id == 19976) {
+                    result.mcs += material.count;
+                    gw2AccountResult.mcs = material.count;
+                    break;
                   }
-                } else {
-                  gw2AccountResult.laurels = Number.NaN;
                 }
-
-                waitingForResponseCount--;
-
-                if (waitingForResponseCount < 1) {
-                  this.isLoading = false;
+              } else if (batchResult.path == 'v2/account/wallet') {
+                gw2AccountResult.laurels = 0;
+
+                for (let currency of batchResult.body) {
+                  if (currency.id == 3) {
+                    result.laurels += currency.value;
+                    gw2AccountResult.laurels = currency.value;
+                    break;
+                  }
                 }
-              });
-        }
-      }
+              }
+            },
+            complete: () => this.isLoading = false
+          });
     }
   }
 }
@@ -2,8 +2,10 @@ package com.gw2auth.example.app;
 
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceAutoConfiguration;
 
-@SpringBootApplication
+// the DataSource is only created for the jdbc store, see AuthorizedClientStoreConfiguration
+@SpringBootApplication(exclude = DataSourceAutoConfiguration.class)
 public class Application {
 
     public static void main(String[] args) {
@@ -0,0 +1,25 @@
+package com.gw2auth.example.app.configuration;
+
+import com.gw2auth.example.app.service.token.AccessTokenDecoder;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.boot.web.client.RestTemplateBuilder;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+@Configuration
+@EnableConfigurationProperties(AccessTokenDecoderProperties.class)
+public class AccessTokenDecoderConfiguration {
+
+    @Bean
+    public AccessTokenDecoder accessTokenDecoder(AccessTokenDecoderProperties properties, RestTemplateBuilder restTemplateBuilder, MeterRegistry meterRegistry) {
+        return new AccessTokenDecoder(
+                AccessTokenDecoder.jwkSetLoader(restTemplateBuilder.build()),
+                properties.jwkSetRefreshInterval(),
+                properties.jwkSetMinRefreshInterval(),
+                properties.claimsCacheSize(),
+                properties.claimsCacheTtl(),
+                meterRegistry
+        );
+    }
+}
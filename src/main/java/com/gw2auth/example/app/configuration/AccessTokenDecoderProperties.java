@@ -0,0 +1,16 @@
+package com.gw2auth.example.app.configuration;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.ConstructorBinding;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+import java.time.Duration;
+
+@ConstructorBinding
+@ConfigurationProperties("com.gw2auth.example.access-token-decoder")
+public record AccessTokenDecoderProperties(@DefaultValue("5m") Duration jwkSetRefreshInterval,
+                                           @DefaultValue("30s") Duration jwkSetMinRefreshInterval,
+                                           @DefaultValue("1000") long claimsCacheSize,
+                                           @DefaultValue("1m") Duration claimsCacheTtl) {
+
+}
@@ -0,0 +1,16 @@
+package com.gw2auth.example.app.configuration;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.ConstructorBinding;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+import java.time.Duration;
+
+@ConstructorBinding
+@ConfigurationProperties("com.gw2auth.example.active-session-refresh")
+public record ActiveSessionRefreshProperties(@DefaultValue("false") boolean enabled,
+                                             @DefaultValue("30s") Duration window,
+                                             @DefaultValue("10m") Duration idleTimeout,
+                                             @DefaultValue("100000") int maximumSessions) {
+
+}
@@ -0,0 +1,92 @@
+package com.gw2auth.example.app.configuration;
+
+import com.gw2auth.example.app.service.cluster.ClusterMembership;
+import com.gw2auth.example.app.service.refresh.RefreshOwnership;
+import com.gw2auth.example.app.service.store.AuthorizedClientStore;
+import com.gw2auth.example.app.service.store.FileAuthorizedClientStore;
+import com.gw2auth.example.app.service.store.InMemoryAuthorizedClientStore;
+import com.gw2auth.example.app.service.store.JdbcAuthorizedClientStore;
+import com.zaxxer.hikari.HikariDataSource;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.DependsOn;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.init.DatabasePopulatorUtils;
+import org.springframework.jdbc.datasource.init.ResourceDatabasePopulator;
+import org.springframework.security.oauth2.client.registration.ClientRegistrationRepository;
+import org.springframework.util.StringUtils;
+
+import java.io.IOException;
+import java.util.Objects;
+import java.util.UUID;
+
+@Configuration
+@EnableConfigurationProperties({AuthorizedClientStoreProperties.class, ClusterProperties.class})
+public class AuthorizedClientStoreConfiguration {
+
+    @Bean
+    public AuthorizedClientStore authorizedClientStore(AuthorizedClientStoreProperties properties,
+                                                       ClientRegistrationRepository clientRegistrationRepository,
+                                                       ObjectProvider<JdbcTemplate> jdbcTemplateProvider) throws IOException {
+
+        return switch (properties.type()) {
+            case MEMORY -> new InMemoryAuthorizedClientStore(clientRegistrationRepository);
+            case FILE -> new FileAuthorizedClientStore(clientRegistrationRepository, properties.path(), properties.compactionInterval(), properties.syncInterval());
+            case JDBC -> {
+                final JdbcTemplate jdbcTemplate = jdbcTemplateProvider.getObject();
+                DatabasePopulatorUtils.execute(
+                        new ResourceDatabasePopulator(new ClassPathResource("db/authorized-client-store.sql")),
+                        Objects.requireNonNull(jdbcTemplate.getDataSource())
+                );
+
+                yield new JdbcAuthorizedClientStore(jdbcTemplate, clientRegistrationRepository);
+            }
+        };
+    }
+
+    @Bean
+    @DependsOn("authorizedClientStore")
+    public RefreshOwnership refreshOwnership(AuthorizedClientStoreProperties properties,
+                                             ClusterProperties clusterProperties,
+                                             ObjectProvider<JdbcTemplate> jdbcTemplateProvider) {
+
+        if (properties.type() != AuthorizedClientStoreProperties.Type.JDBC) {
+            return RefreshOwnership.SINGLE_NODE;
+        }
+
+        final String nodeId = Objects.requireNonNullElseGet(clusterProperties.nodeId(), () -> UUID.randomUUID().toString());
+
+        return new ClusterMembership(
+                jdbcTemplateProvider.getObject(),
+                nodeId,
+                clusterProperties.heartbeatInterval(),
+                clusterProperties.nodeTimeout()
+        );
+    }
+
+    /**
+     * Replaces the excluded DataSourceAutoConfiguration, so that the memory and file stores run without a DataSource and connection pool.
+     */
+    @Configuration(proxyBeanMethods = false)
+    @ConditionalOnProperty(name = "com.gw2auth.example.store.type", havingValue = "jdbc")
+    @EnableConfigurationProperties(DataSourceProperties.class)
+    static class JdbcDataSourceConfiguration {
+
+        @Bean
+        @ConfigurationProperties("spring.datasource.hikari")
+        public HikariDataSource dataSource(DataSourceProperties properties) {
+            final HikariDataSource dataSource = properties.initializeDataSourceBuilder().type(HikariDataSource.class).build();
+            if (StringUtils.hasText(properties.getName())) {
+                dataSource.setPoolName(properties.getName());
+            }
+
+            return dataSource;
+        }
+    }
+}
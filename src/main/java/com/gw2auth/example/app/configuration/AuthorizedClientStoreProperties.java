@@ -0,0 +1,22 @@
+package com.gw2auth.example.app.configuration;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.ConstructorBinding;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+import java.nio.file.Path;
+import java.time.Duration;
+
+@ConstructorBinding
+@ConfigurationProperties("com.gw2auth.example.store")
+public record AuthorizedClientStoreProperties(@DefaultValue("memory") Type type,
+                                              @DefaultValue("authorized-clients.log") Path path,
+                                              @DefaultValue("5m") Duration compactionInterval,
+                                              @DefaultValue("0s") Duration syncInterval) {
+
+    public enum Type {
+        MEMORY,
+        FILE,
+        JDBC
+    }
+}
@@ -0,0 +1,25 @@
+package com.gw2auth.example.app.configuration;
+
+import com.gw2auth.example.app.service.refresh.RefreshEngine;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+@Configuration
+@EnableConfigurationProperties({BackgroundRefreshProperties.class, ActiveSessionRefreshProperties.class})
+public class BackgroundRefreshConfiguration {
+
+    @Bean
+    public RefreshEngine refreshEngine(BackgroundRefreshProperties properties, ThreadingProperties threadingProperties, MeterRegistry meterRegistry) {
+        return new RefreshEngine(
+                properties.workers(),
+                threadingProperties.mode().threadFactory("background-refresh-"),
+                properties.maxConcurrentRequestsPerIssuer(),
+                properties.circuitBreakerFailureThreshold(),
+                properties.circuitBreakerOpenDuration(),
+                properties.circuitBreakerMaxOpenDuration(),
+                meterRegistry
+        );
+    }
+}
@@ -0,0 +1,21 @@
+package com.gw2auth.example.app.configuration;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.ConstructorBinding;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+import java.time.Duration;
+
+@ConstructorBinding
+@ConfigurationProperties("com.gw2auth.example.background-refresh")
+public record BackgroundRefreshProperties(@DefaultValue("8") int workers,
+                                          @DefaultValue("8") int maxConcurrentRequestsPerIssuer,
+                                          @DefaultValue("30s") Duration jitter,
+                                          @DefaultValue("100") int logSampleRate,
+                                          @DefaultValue("1s") Duration retryInitialBackoff,
+                                          @DefaultValue("5m") Duration retryMaxBackoff,
+                                          @DefaultValue("5") int circuitBreakerFailureThreshold,
+                                          @DefaultValue("10s") Duration circuitBreakerOpenDuration,
+                                          @DefaultValue("5m") Duration circuitBreakerMaxOpenDuration) {
+
+}
@@ -0,0 +1,15 @@
+package com.gw2auth.example.app.configuration;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.ConstructorBinding;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+import java.time.Duration;
+
+@ConstructorBinding
+@ConfigurationProperties("com.gw2auth.example.cluster")
+public record ClusterProperties(String nodeId,
+                                @DefaultValue("10s") Duration heartbeatInterval,
+                                @DefaultValue("30s") Duration nodeTimeout) {
+
+}
@@ -0,0 +1,55 @@
+package com.gw2auth.example.app.configuration;
+
+import com.gw2auth.example.app.service.gw2api.Gw2ApiFanOut;
+import com.gw2auth.example.app.service.gw2api.Gw2ApiProxy;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.apache.http.client.HttpClient;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.boot.web.client.RestTemplateBuilder;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.client.ClientHttpResponse;
+import org.springframework.http.client.HttpComponentsClientHttpRequestFactory;
+import org.springframework.web.client.ResponseErrorHandler;
+
+@Configuration
+@EnableConfigurationProperties(Gw2ApiProxyProperties.class)
+public class Gw2ApiProxyConfiguration {
+
+    @Bean
+    public Gw2ApiProxy gw2ApiProxy(Gw2ApiProxyProperties properties, HttpClient outboundHttpClient, MeterRegistry meterRegistry) {
+        // not built from the shared builder: its http.client.requests metrics would tag every distinct GW2 API path and query
+        // with its own uri (and use up the uri tags of the issuer endpoints), so the proxy records the upstream latency itself
+        final RestTemplateBuilder restTemplateBuilder = new RestTemplateBuilder()
+                .requestFactory(() -> new HttpComponentsClientHttpRequestFactory(outboundHttpClient));
+
+        return new Gw2ApiProxy(
+                // error responses of the GW2 API are passed through to the client as they are
+                restTemplateBuilder.errorHandler(new PassThroughErrorHandler()).build(),
+                properties.baseUrl(),
+                properties.sharedCacheSize().toBytes(),
+                properties.tokenCacheSize().toBytes(),
+                properties.rateLimitBurst(),
+                properties.rateLimitPerSecond(),
+                meterRegistry
+        );
+    }
+
+    @Bean
+    public Gw2ApiFanOut gw2ApiFanOut(Gw2ApiProxyProperties properties, ThreadingProperties threadingProperties, Gw2ApiProxy gw2ApiProxy) {
+        return new Gw2ApiFanOut(gw2ApiProxy, properties.batchWorkers(), threadingProperties.mode().threadFactory("gw2api-batch-"), properties.batchParallelism());
+    }
+
+    private static class PassThroughErrorHandler implements ResponseErrorHandler {
+
+        @Override
+        public boolean hasError(ClientHttpResponse response) {
+            return false;
+        }
+
+        @Override
+        public void handleError(ClientHttpResponse response) {
+
+        }
+    }
+}
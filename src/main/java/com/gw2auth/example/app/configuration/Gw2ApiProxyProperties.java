@@ -0,0 +1,22 @@
+package com.gw2auth.example.app.configuration;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.ConstructorBinding;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+import org.springframework.util.unit.DataSize;
+
+import java.time.Duration;
+
+@ConstructorBinding
+@ConfigurationProperties("com.gw2auth.example.gw2-api")
+public record Gw2ApiProxyProperties(@DefaultValue("https://api.guildwars2.com") String baseUrl,
+                                    @DefaultValue("64MB") DataSize sharedCacheSize,
+                                    @DefaultValue("64MB") DataSize tokenCacheSize,
+                                    @DefaultValue("300") int rateLimitBurst,
+                                    @DefaultValue("5") double rateLimitPerSecond,
+                                    @DefaultValue("32") int batchWorkers,
+                                    @DefaultValue("8") int batchParallelism,
+                                    @DefaultValue("200") int batchMaxRequests,
+                                    @DefaultValue("60s") Duration batchTimeout) {
+
+}
@@ -1,102 +1,159 @@
 package com.gw2auth.example.app.configuration;
 
+import org.apache.http.client.HttpClient;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.DefaultConnectionKeepAliveStrategy;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.autoconfigure.security.oauth2.client.OAuth2ClientProperties;
 import org.springframework.boot.autoconfigure.security.oauth2.client.OAuth2ClientPropertiesRegistrationAdapter;
+import org.springframework.boot.autoconfigure.web.client.RestTemplateBuilderConfigurer;
 import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.boot.web.client.RestTemplateBuilder;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.http.client.HttpComponentsClientHttpRequestFactory;
+import org.springframework.http.converter.FormHttpMessageConverter;
 import org.springframework.security.oauth2.client.RefreshTokenOAuth2AuthorizedClientProvider;
+import org.springframework.security.oauth2.client.endpoint.DefaultAuthorizationCodeTokenResponseClient;
+import org.springframework.security.oauth2.client.endpoint.DefaultRefreshTokenTokenResponseClient;
+import org.springframework.security.oauth2.client.endpoint.OAuth2AccessTokenResponseClient;
+import org.springframework.security.oauth2.client.endpoint.OAuth2AuthorizationCodeGrantRequest;
+import org.springframework.security.oauth2.client.http.OAuth2ErrorResponseErrorHandler;
 import org.springframework.security.oauth2.client.registration.ClientRegistration;
 import org.springframework.security.oauth2.client.registration.ClientRegistrationRepository;
 import org.springframework.security.oauth2.client.registration.InMemoryClientRegistrationRepository;
-import org.springframework.security.oauth2.core.endpoint.OAuth2ParameterNames;
-import org.springframework.util.LinkedMultiValueMap;
-import org.springframework.util.MultiValueMap;
-import org.springframework.web.context.request.RequestContextHolder;
-import org.springframework.web.context.request.ServletRequestAttributes;
-
-import javax.servlet.http.HttpServletRequest;
-import java.net.URLDecoder;
-import java.nio.charset.StandardCharsets;
+import org.springframework.security.oauth2.core.http.converter.OAuth2AccessTokenResponseHttpMessageConverter;
+import org.springframework.web.client.RestOperations;
+
 import java.time.Duration;
-import java.util.*;
-import java.util.stream.Collectors;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
 
 @Configuration
-@EnableConfigurationProperties(OAuth2ClientProperties.class)
+@EnableConfigurationProperties({OAuth2ClientProperties.class, OutboundHttpProperties.class})
 public class OAuth2ClientConfiguration {
 
     @Bean
-    public RefreshTokenOAuth2AuthorizedClientProvider refreshTokenOAuth2AuthorizedClientProvider() {
-        final RefreshTokenOAuth2AuthorizedClientProvider refreshTokenOAuth2AuthorizedClientProvider = new RefreshTokenOAuth2AuthorizedClientProvider();
-        refreshTokenOAuth2AuthorizedClientProvider.setClockSkew(Duration.ofDays(365L));// forces to always allow a refresh, may otherwise decline a refresh attempt and return null instead
-        return refreshTokenOAuth2AuthorizedClientProvider;
+    public CloseableHttpClient outboundHttpClient(OutboundHttpProperties properties) {
+        final PoolingHttpClientConnectionManager connectionManager = new PoolingHttpClientConnectionManager(properties.keepAlive().toMillis(), TimeUnit.MILLISECONDS);
+        connectionManager.setMaxTotal(properties.maxConnections());
+        connectionManager.setDefaultMaxPerRoute(properties.maxConnectionsPerHost());
+        connectionManager.setValidateAfterInactivity(1000);
+
+        final RequestConfig requestConfig = RequestConfig.custom()
+                .setConnectTimeout((int) properties.connectTimeout().toMillis())
+                .setSocketTimeout((int) properties.readTimeout().toMillis())
+                .setConnectionRequestTimeout((int) properties.connectionRequestTimeout().toMillis())
+                .build();
+
+        final long keepAliveMillis = properties.keepAlive().toMillis();
+
+        return HttpClients.custom()
+                .setConnectionManager(connectionManager)
+                .setDefaultRequestConfig(requestConfig)
+                // honor the server's keep-alive hint, but never keep idle connections longer than configured
+                .setKeepAliveStrategy((response, context) -> {
+                    final long keepAlive = DefaultConnectionKeepAliveStrategy.INSTANCE.getKeepAliveDuration(response, context);
+                    return keepAlive > 0L ? Math.min(keepAlive, keepAliveMillis) : keepAliveMillis;
+                })
+                .evictExpiredConnections()
+                .evictIdleConnections(keepAliveMillis, TimeUnit.MILLISECONDS)
+                .disableCookieManagement()
+                .build();
     }
 
+    /**
+     * Every RestTemplate built from this builder shares the pooled outbound client and is instrumented with
+     * {@code http.client.requests} metrics.
+     */
     @Bean
-    public ClientRegistrationRepository clientRegistrationRepository(OAuth2ClientProperties properties) {
-        // this is just a hacky way only relevant for this framework; the framework expects the scopes to be configured statically
-
-        final List<ClientRegistration> registrations = new ArrayList<>(OAuth2ClientPropertiesRegistrationAdapter.getClientRegistrations(properties).values());
-        final ClientRegistrationRepository parent = new InMemoryClientRegistrationRepository(registrations);
+    public RestTemplateBuilder restTemplateBuilder(RestTemplateBuilderConfigurer configurer, HttpClient outboundHttpClient) {
+        return configurer.configure(new RestTemplateBuilder())
+                .requestFactory(() -> new HttpComponentsClientHttpRequestFactory(outboundHttpClient));
+    }
 
-        return (registrationId) -> {
-            final ClientRegistration clientRegistration = parent.findByRegistrationId(registrationId);
-            if (clientRegistration == null) {
-                return null;
-            }
+    @Bean
+    public OAuth2AccessTokenResponseClient<OAuth2AuthorizationCodeGrantRequest> authorizationCodeTokenResponseClient(RestTemplateBuilder restTemplateBuilder) {
+        final DefaultAuthorizationCodeTokenResponseClient client = new DefaultAuthorizationCodeTokenResponseClient();
+        client.setRestOperations(tokenEndpointRestOperations(restTemplateBuilder));
+        return client;
+    }
 
-            final HttpServletRequest request = Optional.ofNullable(RequestContextHolder.getRequestAttributes())
-                    .filter(ServletRequestAttributes.class::isInstance)
-                    .map(ServletRequestAttributes.class::cast)
-                    .map(ServletRequestAttributes::getRequest)
-                    .orElse(null);
+    @Bean
+    public RefreshTokenOAuth2AuthorizedClientProvider refreshTokenOAuth2AuthorizedClientProvider(RestTemplateBuilder restTemplateBuilder) {
+        final DefaultRefreshTokenTokenResponseClient accessTokenResponseClient = new DefaultRefreshTokenTokenResponseClient();
+        accessTokenResponseClient.setRestOperations(tokenEndpointRestOperations(restTemplateBuilder));
 
-            final String query;
-            if (request == null || (query = request.getQueryString()) == null) {
-                return clientRegistration;
-            }
+        final RefreshTokenOAuth2AuthorizedClientProvider refreshTokenOAuth2AuthorizedClientProvider = new RefreshTokenOAuth2AuthorizedClientProvider();
+        refreshTokenOAuth2AuthorizedClientProvider.setAccessTokenResponseClient(accessTokenResponseClient);
+        refreshTokenOAuth2AuthorizedClientProvider.setClockSkew(Duration.ofDays(365L));// forces to always allow a refresh, may otherwise decline a refresh attempt and return null instead
+        return refreshTokenOAuth2AuthorizedClientProvider;
+    }
 
-            final List<String> scopeQueryParam = parseQuery(query).get(OAuth2ParameterNames.SCOPE);
-            if (scopeQueryParam == null) {
-                return clientRegistration;
-            }
+    /**
+     * With {@code provider-discovery} disabled, the provider metadata is taken from the configuration as it is instead of being
+     * requested from the {@code issuer-uri} at startup; the {@code issuer-uri} is then only used to verify the {@code iss} claim.
+     */
+    @Bean
+    public ClientRegistrationRepository clientRegistrationRepository(OAuth2ClientProperties properties,
+                                                                     @Value("${com.gw2auth.example.client-registration-cache.maximum-size:256}") long maximumSize,
+                                                                     @Value("${com.gw2auth.example.provider-discovery:true}") boolean providerDiscovery) {
 
-            final Set<String> scopes = scopeQueryParam.stream()
-                    .flatMap((v) -> Arrays.stream(v.split(" ")))
-                    .collect(Collectors.toSet());
+        final List<ClientRegistration> registrations = new ArrayList<>((providerDiscovery ? OAuth2ClientPropertiesRegistrationAdapter.getClientRegistrations(properties) : getClientRegistrationsWithoutDiscovery(properties)).values());
+        return new ScopeAwareClientRegistrationRepository(new InMemoryClientRegistrationRepository(registrations), maximumSize);
+    }
 
-            if (clientRegistration.getScopes().containsAll(scopes)) {
-                return clientRegistration;
-            }
+    private static Map<String, ClientRegistration> getClientRegistrationsWithoutDiscovery(OAuth2ClientProperties properties) {
+        final OAuth2ClientProperties withoutIssuers = new OAuth2ClientProperties();
+        withoutIssuers.getRegistration().putAll(properties.getRegistration());
 
-            final Set<String> resultingScopes = new HashSet<>(scopes);
-            resultingScopes.addAll(clientRegistration.getScopes());
+        for (Map.Entry<String, OAuth2ClientProperties.Provider> entry : properties.getProvider().entrySet()) {
+            final OAuth2ClientProperties.Provider provider = entry.getValue();
 
-            return ClientRegistration.withClientRegistration(clientRegistration)
-                    .scope(resultingScopes)
-                    .build();
-        };
-    }
+            if (provider.getIssuerUri() != null && (provider.getTokenUri() == null || provider.getJwkSetUri() == null)) {
+                throw new IllegalStateException("provider " + entry.getKey() + " needs a token-uri and a jwk-set-uri when provider discovery is disabled");
+            }
 
-    private static MultiValueMap<String, String> parseQuery(String query) {
-        final MultiValueMap<String, String> result = new LinkedMultiValueMap<>();
+            final OAuth2ClientProperties.Provider copy = new OAuth2ClientProperties.Provider();
+            copy.setAuthorizationUri(provider.getAuthorizationUri());
+            copy.setTokenUri(provider.getTokenUri());
+            copy.setUserInfoUri(provider.getUserInfoUri());
+            copy.setUserInfoAuthenticationMethod(provider.getUserInfoAuthenticationMethod());
+            copy.setUserNameAttribute(provider.getUserNameAttribute());
+            copy.setJwkSetUri(provider.getJwkSetUri());
 
-        final String[] pairs = query.split("&");
-        String[] pair;
+            withoutIssuers.getProvider().put(entry.getKey(), copy);
+        }
 
-        for (String _pair : pairs) {
-            pair = _pair.split("=");
+        final Map<String, ClientRegistration> registrations = new LinkedHashMap<>();
 
-            if (pair.length >= 1) {
-                final List<String> values = result.computeIfAbsent(URLDecoder.decode(pair[0], StandardCharsets.UTF_8), (k) -> new ArrayList<>());
+        for (Map.Entry<String, ClientRegistration> entry : OAuth2ClientPropertiesRegistrationAdapter.getClientRegistrations(withoutIssuers).entrySet()) {
+            final String registrationId = entry.getKey();
+            final String providerId = Optional.ofNullable(properties.getRegistration().get(registrationId).getProvider()).orElse(registrationId);
+            final OAuth2ClientProperties.Provider provider = properties.getProvider().get(providerId);
 
-                if (pair.length >= 2) {
-                    values.add(URLDecoder.decode(pair[1], StandardCharsets.UTF_8));
-                }
+            if (provider != null && provider.getIssuerUri() != null) {
+                registrations.put(registrationId, ClientRegistration.withClientRegistration(entry.getValue()).issuerUri(provider.getIssuerUri()).build());
+            } else {
+                registrations.put(registrationId, entry.getValue());
             }
         }
 
-        return result;
+        return registrations;
+    }
+
+    private static RestOperations tokenEndpointRestOperations(RestTemplateBuilder restTemplateBuilder) {
+        // same converters and error handler as the framework's default token response clients
+        return restTemplateBuilder
+                .messageConverters(new FormHttpMessageConverter(), new OAuth2AccessTokenResponseHttpMessageConverter())
+                .errorHandler(new OAuth2ErrorResponseErrorHandler())
+                .build();
     }
 }
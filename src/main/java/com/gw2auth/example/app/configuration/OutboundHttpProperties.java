@@ -0,0 +1,18 @@
+package com.gw2auth.example.app.configuration;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.ConstructorBinding;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+import java.time.Duration;
+
+@ConstructorBinding
+@ConfigurationProperties("com.gw2auth.example.outbound-http")
+public record OutboundHttpProperties(@DefaultValue("64") int maxConnections,
+                                     @DefaultValue("16") int maxConnectionsPerHost,
+                                     @DefaultValue("2s") Duration connectTimeout,
+                                     @DefaultValue("10s") Duration readTimeout,
+                                     @DefaultValue("2s") Duration connectionRequestTimeout,
+                                     @DefaultValue("30s") Duration keepAlive) {
+
+}
@@ -3,40 +3,150 @@ package com.gw2auth.example.app.configuration;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.core.io.ByteArrayResource;
 import org.springframework.core.io.ClassPathResource;
 import org.springframework.core.io.Resource;
+import org.springframework.http.CacheControl;
+import org.springframework.util.StreamUtils;
+import org.springframework.util.StringUtils;
 import org.springframework.web.servlet.config.annotation.ResourceHandlerRegistry;
 import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+import org.springframework.web.servlet.resource.EncodedResourceResolver;
 import org.springframework.web.servlet.resource.PathResourceResolver;
 
+import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 
 @Configuration
 public class ResourceRoutingConfiguration implements WebMvcConfigurer {
 
+    private static final String LOCATION = "classpath:/static/";
+    private static final String INDEX = "/static/index.html";
+    // file names of the Angular bundle contain a content hash (outputHashing=all), e.g. main.1a2b3c4d5e6f7a8b.js
+    private static final String HASHED_FILE_PATTERN = "/{file:[\\w-]+\\.[0-9a-f]{16,}\\.\\w+}";
+    // the precompressed variants written by compress-static-assets.js
+    private static final List<String> CODINGS = List.of("br", "gzip");
+    private static final Map<String, String> EXTENSIONS = Map.of("br", ".br", "gzip", ".gz");
+
     private final boolean useCache;
+    private final InMemoryResource index;
 
     @Autowired
-    public ResourceRoutingConfiguration(@Value("${spring.thymeleaf.cache:false}") boolean useCache) {
+    public ResourceRoutingConfiguration(@Value("${spring.web.resources.chain.cache:true}") boolean useCache) {
         this.useCache = useCache;
+
+        // during development the frontend is rebuilt while the application is running (or not built at all)
+        final Resource index = new ClassPathResource(INDEX);
+        this.index = useCache && index.exists() ? InMemoryResource.load(index) : null;
     }
 
     @Override
     public void addResourceHandlers(ResourceHandlerRegistry registry) {
-        registry.addResourceHandler("/**")
-                .addResourceLocations("classpath:/static/")
+        // the content of a hashed file never changes, a changed file gets a new name
+        registry.addResourceHandler(HASHED_FILE_PATTERN)
+                .addResourceLocations(LOCATION)
+                .setCacheControl(CacheControl.maxAge(Duration.ofDays(365L)).cachePublic())
                 .resourceChain(this.useCache)
+                .addResolver(encodedResourceResolver())
+                .addResolver(new PathResourceResolver());
+
+        // everything else (index.html, favicon.ico, assets/) is revalidated using Last-Modified;
+        // not cached by the resource chain since the client side routes resolve to index.html for arbitrary paths
+        registry.addResourceHandler("/**")
+                .addResourceLocations(LOCATION)
+                .setCacheControl(CacheControl.noCache())
+                .resourceChain(false)
+                .addResolver(encodedResourceResolver())
                 .addResolver(new PathResourceResolver() {
                     @Override
                     protected Resource getResource(String resourcePath, Resource location) throws IOException {
                         Resource resource = super.getResource(resourcePath, location);
 
-                        if (resource == null) {
-                            resource = new ClassPathResource("/static/index.html");
+                        // paths with a file extension are missing files, not client side routes
+                        if (resource == null && StringUtils.getFilenameExtension(resourcePath) == null) {
+                            resource = ResourceRoutingConfiguration.this.index != null ? ResourceRoutingConfiguration.this.index : new ClassPathResource(INDEX);
                         }
 
                         return resource;
                     }
                 });
     }
+
+    private static EncodedResourceResolver encodedResourceResolver() {
+        final EncodedResourceResolver resolver = new EncodedResourceResolver();
+        resolver.setContentCodings(CODINGS);
+        resolver.setExtensions(EXTENSIONS);
+
+        return resolver;
+    }
+
+    /**
+     * A resource read into memory once, along with its precompressed variants so that {@link EncodedResourceResolver} finds them.
+     */
+    private static final class InMemoryResource extends ByteArrayResource {
+
+        private final String filename;
+        private final long lastModified;
+        private final Map<String, InMemoryResource> variants;
+
+        private InMemoryResource(byte[] content, String filename, long lastModified, Map<String, InMemoryResource> variants) {
+            super(content, filename);
+            this.filename = filename;
+            this.lastModified = lastModified;
+            this.variants = variants;
+        }
+
+        static InMemoryResource load(Resource resource) {
+            final Map<String, InMemoryResource> variants = new HashMap<>();
+
+            try {
+                for (String extension : EXTENSIONS.values()) {
+                    final Resource variant = resource.createRelative(resource.getFilename() + extension);
+
+                    if (variant.exists()) {
+                        variants.put(variant.getFilename(), read(variant, Map.of()));
+                    }
+                }
+
+                return read(resource, variants);
+            } catch (IOException e) {
+                throw new UncheckedIOException("failed to load " + resource, e);
+            }
+        }
+
+        private static InMemoryResource read(Resource resource, Map<String, InMemoryResource> variants) throws IOException {
+            final byte[] content;
+            try (InputStream in = resource.getInputStream()) {
+                content = StreamUtils.copyToByteArray(in);
+            }
+
+            return new InMemoryResource(content, resource.getFilename(), resource.lastModified(), Map.copyOf(variants));
+        }
+
+        @Override
+        public String getFilename() {
+            return this.filename;
+        }
+
+        @Override
+        public long lastModified() {
+            return this.lastModified;
+        }
+
+        @Override
+        public Resource createRelative(String relativePath) throws IOException {
+            final InMemoryResource variant = this.variants.get(relativePath);
+            if (variant == null) {
+                throw new FileNotFoundException(relativePath);
+            }
+
+            return variant;
+        }
+    }
 }
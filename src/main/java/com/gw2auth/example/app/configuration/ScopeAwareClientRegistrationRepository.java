@@ -0,0 +1,129 @@
+package com.gw2auth.example.app.configuration;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import org.springframework.security.oauth2.client.registration.ClientRegistration;
+import org.springframework.security.oauth2.client.registration.ClientRegistrationRepository;
+import org.springframework.security.oauth2.core.endpoint.OAuth2ParameterNames;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+
+import javax.servlet.http.HttpServletRequest;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.Optional;
+import java.util.SortedSet;
+import java.util.TreeSet;
+
+/**
+ * Resolves client registrations with the scopes requested through the {@code scope} query parameter of the current request added.
+ * <p>
+ * This is just a hacky way only relevant for this framework; the framework expects the scopes to be configured statically.
+ * The derived registrations are memoized per registration and canonical (sorted, deduplicated) scope set.
+ */
+public class ScopeAwareClientRegistrationRepository implements ClientRegistrationRepository {
+
+    private final ClientRegistrationRepository parent;
+    private final Cache<String, ClientRegistration> derivedRegistrations;
+
+    public ScopeAwareClientRegistrationRepository(ClientRegistrationRepository parent, long maximumSize) {
+        this.parent = parent;
+        this.derivedRegistrations = Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                .build();
+    }
+
+    @Override
+    public ClientRegistration findByRegistrationId(String registrationId) {
+        final String query = Optional.ofNullable(RequestContextHolder.getRequestAttributes())
+                .filter(ServletRequestAttributes.class::isInstance)
+                .map(ServletRequestAttributes.class::cast)
+                .map(ServletRequestAttributes::getRequest)
+                .map(HttpServletRequest::getQueryString)
+                .orElse(null);
+
+        return findByRegistrationId(registrationId, query);
+    }
+
+    public ClientRegistration findByRegistrationId(String registrationId, String query) {
+        final ClientRegistration clientRegistration = this.parent.findByRegistrationId(registrationId);
+        if (clientRegistration == null || query == null) {
+            return clientRegistration;
+        }
+
+        final String scopeQueryParam = findQueryParameter(query, OAuth2ParameterNames.SCOPE);
+        if (scopeQueryParam == null) {
+            return clientRegistration;
+        }
+
+        final SortedSet<String> scopes = new TreeSet<>(clientRegistration.getScopes());
+        int start = 0;
+
+        while (start <= scopeQueryParam.length()) {
+            int end = scopeQueryParam.indexOf(' ', start);
+            if (end == -1) {
+                end = scopeQueryParam.length();
+            }
+
+            if (end > start) {
+                scopes.add(scopeQueryParam.substring(start, end));
+            }
+
+            start = end + 1;
+        }
+
+        if (scopes.size() == clientRegistration.getScopes().size()) {
+            return clientRegistration;
+        }
+
+        final String key = registrationId + ' ' + String.join(" ", scopes);
+
+        return this.derivedRegistrations.get(key, (k) -> ClientRegistration.withClientRegistration(clientRegistration).scope(scopes).build());
+    }
+
+    /**
+     * Scans the query string for the given parameter without splitting it.
+     *
+     * @return the decoded values of all occurrences of the parameter joined by a space, or null if the parameter is absent
+     */
+    static String findQueryParameter(String query, String name) {
+        final int length = query.length();
+        final int nameLength = name.length();
+        String result = null;
+        int start = 0;
+
+        while (start < length) {
+            int end = query.indexOf('&', start);
+            if (end == -1) {
+                end = length;
+            }
+
+            final int nameEnd = start + nameLength;
+            if (nameEnd <= end && query.regionMatches(start, name, 0, nameLength) && (nameEnd == end || query.charAt(nameEnd) == '=')) {
+                final String value = nameEnd == end ? "" : decode(query, nameEnd + 1, end);
+                result = result == null ? value : result + ' ' + value;
+            }
+
+            start = end + 1;
+        }
+
+        return result;
+    }
+
+    private static String decode(String query, int start, int end) {
+        // everything after a second '=' is ignored
+        final int equals = query.indexOf('=', start);
+        if (equals != -1 && equals < end) {
+            end = equals;
+        }
+
+        for (int i = start; i < end; i++) {
+            final char c = query.charAt(i);
+            if (c == '%' || c == '+') {
+                return URLDecoder.decode(query.substring(start, end), StandardCharsets.UTF_8);
+            }
+        }
+
+        return query.substring(start, end);
+    }
+}
@@ -1,5 +1,12 @@
 package com.gw2auth.example.app.configuration;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.gw2auth.example.app.service.session.CookieAuthorizationRequestRepository;
+import com.gw2auth.example.app.service.session.CookieCipher;
+import com.gw2auth.example.app.service.session.CookieSecurityContextRepository;
+import org.springframework.boot.actuate.autoconfigure.security.servlet.EndpointRequest;
+import org.springframework.boot.actuate.metrics.export.prometheus.PrometheusScrapeEndpoint;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.security.config.Customizer;
@@ -9,17 +16,22 @@ import org.springframework.security.config.annotation.web.configuration.WebSecur
 import org.springframework.security.config.annotation.web.configurers.CsrfConfigurer;
 import org.springframework.security.config.annotation.web.configurers.oauth2.client.OAuth2LoginConfigurer;
 import org.springframework.security.config.http.SessionCreationPolicy;
+import org.springframework.security.oauth2.client.endpoint.OAuth2AccessTokenResponseClient;
+import org.springframework.security.oauth2.client.endpoint.OAuth2AuthorizationCodeGrantRequest;
 import org.springframework.security.web.SecurityFilterChain;
 import org.springframework.security.web.authentication.logout.HttpStatusReturningLogoutSuccessHandler;
 import org.springframework.security.web.csrf.CookieCsrfTokenRepository;
 
 @Configuration
 @EnableWebSecurity
+@EnableConfigurationProperties(SessionProperties.class)
 public class SecurityConfiguration {
 
     @Bean
-    public Customizer<OAuth2LoginConfigurer<HttpSecurity>> oauth2LoginCustomizer() {
-        return (oauth2) -> oauth2.loginPage("/");
+    public Customizer<OAuth2LoginConfigurer<HttpSecurity>> oauth2LoginCustomizer(OAuth2AccessTokenResponseClient<OAuth2AuthorizationCodeGrantRequest> authorizationCodeTokenResponseClient) {
+        return (oauth2) -> oauth2
+                .loginPage("/")
+                .tokenEndpoint((tokenEndpoint) -> tokenEndpoint.accessTokenResponseClient(authorizationCodeTokenResponseClient));
     }
 
     @Bean
@@ -35,11 +47,17 @@ public class SecurityConfiguration {
     @Bean
     public SecurityFilterChain httpSecurityFilterChain(HttpSecurity http,
                                                                Customizer<OAuth2LoginConfigurer<HttpSecurity>> oauth2LoginCustomizer,
-                                                               Customizer<CsrfConfigurer<HttpSecurity>> csrfCustomizer) throws Exception {
+                                                               Customizer<CsrfConfigurer<HttpSecurity>> csrfCustomizer,
+                                                               SessionProperties sessionProperties,
+                                                               ObjectMapper objectMapper) throws Exception {
+        final boolean cookieSession = sessionProperties.mode() == SessionProperties.Mode.COOKIE;
+
         http
                 .authorizeRequests((auth) -> {
                     auth
                             .antMatchers("/", "/privacy-policy", "/legal", "/assets/**", "/api/authinfo").permitAll()
+                            // only served on the management port
+                            .requestMatchers(EndpointRequest.to(PrometheusScrapeEndpoint.class)).permitAll()
                             .anyRequest().authenticated();
                 })
                 .csrf(csrfCustomizer)
@@ -48,16 +66,30 @@ public class SecurityConfiguration {
                             .frameOptions().deny()
                             .contentSecurityPolicy((csp) -> csp.policyDirectives(String.join("; ",
                                     "default-src 'self'",
-                                    "connect-src 'self' https://api.guildwars2.com",
+                                    "connect-src 'self'",
                                     "script-src 'self' 'unsafe-inline'",
                                     "style-src 'self' 'unsafe-inline'",
                                     "img-src 'self' data:"
                             )));
                 })
-                .sessionManagement((session) -> session.sessionCreationPolicy(SessionCreationPolicy.IF_REQUIRED))
+                .sessionManagement((session) -> session.sessionCreationPolicy(cookieSession ? SessionCreationPolicy.STATELESS : SessionCreationPolicy.IF_REQUIRED))
                 .oauth2Login(oauth2LoginCustomizer)
                 .logout((logout) -> logout.logoutSuccessHandler(new HttpStatusReturningLogoutSuccessHandler()));
 
+        if (cookieSession) {
+            if (sessionProperties.cookieSecret() == null || sessionProperties.cookieSecret().isBlank()) {
+                throw new IllegalStateException("com.gw2auth.example.session.cookie-secret must be set when using the cookie session mode");
+            }
+
+            // the authorized client itself stays in the AuthorizedClientStore, keyed by the principal name in the cookie
+            final CookieCipher cookieCipher = new CookieCipher(sessionProperties.cookieSecret());
+
+            http
+                    .securityContext((securityContext) -> securityContext.securityContextRepository(new CookieSecurityContextRepository(cookieCipher, objectMapper, sessionProperties.cookieMaxAge())))
+                    .oauth2Login((oauth2) -> oauth2.authorizationEndpoint((authorizationEndpoint) -> authorizationEndpoint.authorizationRequestRepository(new CookieAuthorizationRequestRepository(cookieCipher, objectMapper, sessionProperties.authorizationRequestMaxAge()))))
+                    .logout((logout) -> logout.deleteCookies(CookieSecurityContextRepository.COOKIE_NAME));
+        }
+
         return http.build();
     }
 }
@@ -0,0 +1,26 @@
+package com.gw2auth.example.app.configuration;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.ConstructorBinding;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+import java.time.Duration;
+
+@ConstructorBinding
+@ConfigurationProperties("com.gw2auth.example.session")
+public record SessionProperties(@DefaultValue("servlet") Mode mode,
+                               String cookieSecret,
+                               @DefaultValue("7d") Duration cookieMaxAge,
+                               @DefaultValue("5m") Duration authorizationRequestMaxAge) {
+
+    public enum Mode {
+        /**
+         * The authentication and the pending authorization request are kept in the servlet session.
+         */
+        SERVLET,
+        /**
+         * The authentication and the pending authorization request are kept in encrypted cookies; no server side session is created.
+         */
+        COOKIE
+    }
+}
@@ -0,0 +1,60 @@
+package com.gw2auth.example.app.configuration;
+
+import com.gw2auth.example.app.service.store.AuthorizedClientStore;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.boot.LazyInitializationExcludeFilter;
+import org.springframework.boot.SpringApplication;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.env.Environment;
+import org.springframework.security.oauth2.client.registration.ClientRegistrationRepository;
+import org.springframework.security.web.SecurityFilterChain;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.List;
+
+@Configuration
+public class StartupConfiguration {
+
+    private static final Logger LOG = LoggerFactory.getLogger(StartupConfiguration.class);
+    // the pages and endpoints requested by the training run; covers the anonymous paths and the start of the login
+    private static final List<String> TRAINING_RUN_PATHS = List.of("/", "/api/authinfo", "/api/background-refresh", "/oauth2/authorization/gw2auth");
+
+    /**
+     * Created at startup even with {@code spring.main.lazy-initialization}, so that invalid configuration still fails the startup
+     * and the stored clients are loaded before the first request.
+     */
+    @Bean
+    public static LazyInitializationExcludeFilter eagerInitializationExcludeFilter() {
+        return LazyInitializationExcludeFilter.forBeanTypes(SecurityFilterChain.class, ClientRegistrationRepository.class, AuthorizedClientStore.class);
+    }
+
+    /**
+     * Requests a few paths of the started application once and exits, so that a class data sharing archive written at exit
+     * ({@code -XX:ArchiveClassesAtExit}) also contains the classes needed to serve the first requests.
+     */
+    @Bean
+    @ConditionalOnProperty(name = "com.gw2auth.example.startup.training-run", havingValue = "true")
+    public ApplicationRunner startupTrainingRun(ConfigurableApplicationContext context, Environment environment) {
+        return (args) -> {
+            final URI baseUri = URI.create("http://localhost:" + environment.getRequiredProperty("local.server.port"));
+            final HttpClient httpClient = HttpClient.newBuilder()
+                    .followRedirects(HttpClient.Redirect.NEVER)
+                    .build();
+
+            for (String path : TRAINING_RUN_PATHS) {
+                final HttpResponse<Void> response = httpClient.send(HttpRequest.newBuilder(baseUri.resolve(path)).GET().build(), HttpResponse.BodyHandlers.discarding());
+                LOG.info("training run: GET {} {}", path, response.statusCode());
+            }
+
+            System.exit(SpringApplication.exit(context));
+        };
+    }
+}
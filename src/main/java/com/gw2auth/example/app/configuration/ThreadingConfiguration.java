@@ -0,0 +1,24 @@
+package com.gw2auth.example.app.configuration;
+
+import com.gw2auth.example.app.service.VirtualThreads;
+import org.apache.coyote.ProtocolHandler;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.boot.web.embedded.tomcat.TomcatProtocolHandlerCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+@Configuration
+@EnableConfigurationProperties(ThreadingProperties.class)
+public class ThreadingConfiguration {
+
+    /**
+     * Replaces Tomcat's bounded request thread pool, so that requests blocked on the issuer (inline token refreshes)
+     * no longer hold threads needed by all other requests. Concurrency is still bounded by {@code server.tomcat.max-connections}.
+     */
+    @Bean
+    @ConditionalOnProperty(name = "com.gw2auth.example.threading.mode", havingValue = "virtual")
+    public TomcatProtocolHandlerCustomizer<ProtocolHandler> virtualThreadProtocolHandlerCustomizer() {
+        return (protocolHandler) -> protocolHandler.setExecutor(VirtualThreads.perTaskExecutor("http-vt-"));
+    }
+}
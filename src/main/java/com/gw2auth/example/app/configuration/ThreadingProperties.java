@@ -0,0 +1,29 @@
+package com.gw2auth.example.app.configuration;
+
+import com.gw2auth.example.app.service.VirtualThreads;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.ConstructorBinding;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+
+import java.util.concurrent.ThreadFactory;
+
+@ConstructorBinding
+@ConfigurationProperties("com.gw2auth.example.threading")
+public record ThreadingProperties(@DefaultValue("platform") Mode mode) {
+
+    public enum Mode {
+        /**
+         * Servlet requests are served by Tomcat's thread pool, background work runs on platform threads.
+         */
+        PLATFORM,
+        /**
+         * Every servlet request runs on its own virtual thread, and the background workers are virtual threads. Requires Java 21 or later.
+         */
+        VIRTUAL;
+
+        public ThreadFactory threadFactory(String prefix) {
+            return this == VIRTUAL ? VirtualThreads.factory(prefix) : new CustomizableThreadFactory(prefix);
+        }
+    }
+}
@@ -0,0 +1,27 @@
+package com.gw2auth.example.app.configuration;
+
+import com.gw2auth.example.app.service.revocation.TokenRevocationPipeline;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.boot.web.client.RestTemplateBuilder;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+@Configuration
+@EnableConfigurationProperties(TokenRevocationProperties.class)
+public class TokenRevocationConfiguration {
+
+    @Bean
+    public TokenRevocationPipeline tokenRevocationPipeline(TokenRevocationProperties properties, ThreadingProperties threadingProperties, RestTemplateBuilder restTemplateBuilder, MeterRegistry meterRegistry) {
+        return new TokenRevocationPipeline(
+                restTemplateBuilder.build(),
+                properties.workers(),
+                threadingProperties.mode().threadFactory("token-revocation-"),
+                properties.queueCapacity(),
+                properties.maxAttempts(),
+                properties.initialBackoff(),
+                properties.maxBackoff(),
+                meterRegistry
+        );
+    }
+}
@@ -0,0 +1,17 @@
+package com.gw2auth.example.app.configuration;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.ConstructorBinding;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+import java.time.Duration;
+
+@ConstructorBinding
+@ConfigurationProperties("com.gw2auth.example.token-revocation")
+public record TokenRevocationProperties(@DefaultValue("4") int workers,
+                                        @DefaultValue("10000") int queueCapacity,
+                                        @DefaultValue("5") int maxAttempts,
+                                        @DefaultValue("1s") Duration initialBackoff,
+                                        @DefaultValue("1m") Duration maxBackoff) {
+
+}
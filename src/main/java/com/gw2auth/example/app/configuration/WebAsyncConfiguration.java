@@ -0,0 +1,57 @@
+package com.gw2auth.example.app.configuration;
+
+import com.gw2auth.example.app.service.VirtualThreads;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.task.AsyncTaskExecutor;
+import org.springframework.scheduling.concurrent.ConcurrentTaskExecutor;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.web.servlet.config.annotation.AsyncSupportConfigurer;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+/**
+ * Runs asynchronous MVC requests (the streamed {@code /api/gw2/batch} responses) on a dedicated executor instead of Boot's
+ * shared {@code applicationTaskExecutor}, whose few threads and unbounded queue would let slow batches delay each other indefinitely.
+ */
+@Configuration
+public class WebAsyncConfiguration implements WebMvcConfigurer, DisposableBean {
+
+    private final AsyncTaskExecutor executor;
+    private final long timeoutMillis;
+
+    @Autowired
+    public WebAsyncConfiguration(Gw2ApiProxyProperties properties, ThreadingProperties threadingProperties) {
+        if (threadingProperties.mode() == ThreadingProperties.Mode.VIRTUAL) {
+            // the batch workers bound the upstream requests, a stream only waits for them
+            this.executor = new ConcurrentTaskExecutor(VirtualThreads.perTaskExecutor("mvc-async-vt-"));
+        } else {
+            // a stream needs at least one batch worker to make progress, so more streams than workers would only wait;
+            // once the queue is full too, further batches are rejected (see Gw2ApiProxyController)
+            final ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+            executor.setThreadNamePrefix("mvc-async-");
+            executor.setCorePoolSize(properties.batchWorkers());
+            executor.setMaxPoolSize(properties.batchWorkers());
+            executor.setQueueCapacity(properties.batchWorkers());
+            executor.initialize();
+
+            this.executor = executor;
+        }
+
+        this.timeoutMillis = properties.batchTimeout().toMillis();
+    }
+
+    @Override
+    public void configureAsyncSupport(AsyncSupportConfigurer configurer) {
+        configurer.setTaskExecutor(this.executor);
+        // on timeout the stream is interrupted, which cancels the batch's outstanding requests
+        configurer.setDefaultTimeout(this.timeoutMillis);
+    }
+
+    @Override
+    public void destroy() {
+        if (this.executor instanceof ThreadPoolTaskExecutor threadPoolTaskExecutor) {
+            threadPoolTaskExecutor.shutdown();
+        }
+    }
+}
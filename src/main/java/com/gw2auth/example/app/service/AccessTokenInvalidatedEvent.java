@@ -0,0 +1,8 @@
+package com.gw2auth.example.app.service;
+
+/**
+ * Published whenever an access token was replaced by a refresh, revoked or removed together with its authorized client.
+ */
+public record AccessTokenInvalidatedEvent(String accessTokenValue) {
+
+}
@@ -1,31 +1,45 @@
 package com.gw2auth.example.app.service;
 
-import com.nimbusds.jwt.JWT;
-import com.nimbusds.jwt.JWTParser;
+import com.gw2auth.example.app.service.token.AccessTokenDecoder;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.security.core.authority.SimpleGrantedAuthority;
 import org.springframework.security.oauth2.client.userinfo.OAuth2UserRequest;
 import org.springframework.security.oauth2.client.userinfo.OAuth2UserService;
 import org.springframework.security.oauth2.core.OAuth2AuthenticationException;
-import org.springframework.security.oauth2.core.OAuth2Error;
 import org.springframework.security.oauth2.core.user.DefaultOAuth2User;
 import org.springframework.security.oauth2.core.user.OAuth2User;
 import org.springframework.stereotype.Service;
 
-import java.text.ParseException;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.TimeUnit;
 
 @Service
 public class Gw2AuthExampleUserService implements OAuth2UserService<OAuth2UserRequest, OAuth2User> {
 
+    private final AccessTokenDecoder accessTokenDecoder;
+    private final Timer jwtParseTimer;
+
+    @Autowired
+    public Gw2AuthExampleUserService(AccessTokenDecoder accessTokenDecoder, MeterRegistry meterRegistry) {
+        this.accessTokenDecoder = accessTokenDecoder;
+        this.jwtParseTimer = Timer.builder("jwt.parse")
+                .description("Duration of parsing an access token and extracting its claims")
+                .tag("source", "login")
+                .register(meterRegistry);
+    }
+
     @Override
     public OAuth2User loadUser(OAuth2UserRequest userRequest) throws OAuth2AuthenticationException {
         final Map<String, Object> claims;
+        final long start = System.nanoTime();
+
         try {
-            final JWT jwt = JWTParser.parse(userRequest.getAccessToken().getTokenValue());
-            claims = jwt.getJWTClaimsSet().getClaims();
-        } catch (ParseException e) {
-            throw new OAuth2AuthenticationException(new OAuth2Error("jwt_parse_error"), e);
+            claims = this.accessTokenDecoder.decode(userRequest.getClientRegistration(), userRequest.getAccessToken().getTokenValue()).getClaims();
+        } finally {
+            this.jwtParseTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
         }
 
         return new DefaultOAuth2User(List.of(new SimpleGrantedAuthority("USER")), claims, "sub");
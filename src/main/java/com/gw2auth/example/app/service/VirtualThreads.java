@@ -0,0 +1,69 @@
+package com.gw2auth.example.app.service;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Creates virtual threads when running on Java 21 or later.
+ * <p>
+ * The application is compiled for an older release, so the {@code Thread.ofVirtual()} API is looked up at runtime.
+ */
+public final class VirtualThreads {
+
+    private static final Method OF_VIRTUAL;
+    private static final Method NAME;
+    private static final Method FACTORY;
+
+    static {
+        Method ofVirtual = null;
+        Method name = null;
+        Method factory = null;
+
+        try {
+            final Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+
+            ofVirtual = Thread.class.getMethod("ofVirtual");
+            name = builderClass.getMethod("name", String.class, long.class);
+            factory = builderClass.getMethod("factory");
+
+            // Java 19 and 20 only offer virtual threads as a preview feature
+            ofVirtual.invoke(null);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            ofVirtual = null;
+        }
+
+        OF_VIRTUAL = ofVirtual;
+        NAME = name;
+        FACTORY = factory;
+    }
+
+    private VirtualThreads() {
+    }
+
+    /**
+     * @param prefix the name prefix of the created threads, followed by a counter
+     * @throws IllegalStateException if virtual threads are not available
+     */
+    public static ThreadFactory factory(String prefix) {
+        if (OF_VIRTUAL == null) {
+            throw new IllegalStateException("virtual threads require Java 21 or later (running on " + Runtime.version() + ")");
+        }
+
+        try {
+            // Thread.ofVirtual().name(prefix, 1L).factory()
+            return (ThreadFactory) FACTORY.invoke(NAME.invoke(OF_VIRTUAL.invoke(null), prefix, 1L));
+        } catch (IllegalAccessException | InvocationTargetException e) {
+            throw new IllegalStateException("failed to create a virtual thread factory", e);
+        }
+    }
+
+    /**
+     * @return an executor starting a new virtual thread for every task
+     */
+    public static Executor perTaskExecutor(String prefix) {
+        final ThreadFactory threadFactory = factory(prefix);
+        return (command) -> threadFactory.newThread(command).start();
+    }
+}
@@ -1,4 +1,4 @@
-package com.gw2auth.example.app.web;
+package com.gw2auth.example.app.service.authinfo;
 
 import com.fasterxml.jackson.annotation.JsonProperty;
 
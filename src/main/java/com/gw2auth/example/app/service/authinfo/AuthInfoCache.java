@@ -0,0 +1,69 @@
+package com.gw2auth.example.app.service.authinfo;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import com.gw2auth.example.app.service.AccessTokenInvalidatedEvent;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.function.Function;
+
+/**
+ * Caches the encoded {@link AuthInfo} built from an access token, keyed by the access token value.
+ * Entries expire together with their access token.
+ */
+@Component
+public class AuthInfoCache {
+
+    private final Cache<String, EncodedAuthInfo> cache;
+
+    @Autowired
+    public AuthInfoCache(@Value("${com.gw2auth.example.authinfo-cache.maximum-size:10000}") long maximumSize, MeterRegistry meterRegistry) {
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfter(new ExpireWithAccessToken())
+                .recordStats()
+                .build();
+
+        CaffeineCacheMetrics.monitor(meterRegistry, this.cache, "authinfo");
+    }
+
+    public EncodedAuthInfo get(String accessTokenValue, Function<String, EncodedAuthInfo> loader) {
+        return this.cache.get(accessTokenValue, loader);
+    }
+
+    @EventListener
+    public void onAccessTokenInvalidated(AccessTokenInvalidatedEvent event) {
+        this.cache.invalidate(event.accessTokenValue());
+    }
+
+    private static class ExpireWithAccessToken implements Expiry<String, EncodedAuthInfo> {
+
+        @Override
+        public long expireAfterCreate(String key, EncodedAuthInfo value, long currentTime) {
+            final Instant expiresAt = value.authInfo().expiresAt();
+            if (expiresAt == null) {
+                return Long.MAX_VALUE;
+            }
+
+            return Math.max(0L, Duration.between(Instant.now(), expiresAt).toNanos());
+        }
+
+        @Override
+        public long expireAfterUpdate(String key, EncodedAuthInfo value, long currentTime, long currentDuration) {
+            return expireAfterCreate(key, value, currentTime);
+        }
+
+        @Override
+        public long expireAfterRead(String key, EncodedAuthInfo value, long currentTime, long currentDuration) {
+            return currentDuration;
+        }
+    }
+}
@@ -0,0 +1,93 @@
+package com.gw2auth.example.app.service.authinfo;
+
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.gw2auth.example.app.service.token.AccessTokenDecoder;
+
+import java.io.IOException;
+import java.time.Instant;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Reads the GW2 claims of an access token straight into an {@link AuthInfo}, without building the claims as JSON maps first.
+ */
+public class AuthInfoClaimsReader implements AccessTokenDecoder.ClaimsReader<AuthInfo> {
+
+    private final Instant expiresAt;
+    private Set<String> gw2ApiPermissions;
+    private Map<String, AuthInfo.Gw2ApiToken> gw2ApiTokens;
+
+    public AuthInfoClaimsReader(Instant expiresAt) {
+        this.expiresAt = expiresAt;
+        this.gw2ApiPermissions = Set.of();
+        this.gw2ApiTokens = Map.of();
+    }
+
+    @Override
+    public void readClaim(String name, JsonParser parser) throws IOException {
+        switch (name) {
+            case "gw2:permissions" -> this.gw2ApiPermissions = readGw2ApiPermissions(parser);
+            case "gw2:tokens" -> this.gw2ApiTokens = readGw2ApiTokens(parser);
+        }
+    }
+
+    @Override
+    public AuthInfo build(String subject) {
+        return new AuthInfo(subject, this.gw2ApiPermissions, this.gw2ApiTokens, this.expiresAt);
+    }
+
+    private static Set<String> readGw2ApiPermissions(JsonParser parser) throws IOException {
+        if (parser.currentToken() != JsonToken.START_ARRAY) {
+            throw new JsonParseException(parser, "gw2:permissions must be an array");
+        }
+
+        final Set<String> gw2ApiPermissions = new LinkedHashSet<>();
+        while (parser.nextToken() != JsonToken.END_ARRAY) {
+            if (parser.currentToken() != JsonToken.VALUE_STRING) {
+                throw new JsonParseException(parser, "gw2:permissions must only contain strings");
+            }
+
+            gw2ApiPermissions.add(parser.getText());
+        }
+
+        return gw2ApiPermissions;
+    }
+
+    private static Map<String, AuthInfo.Gw2ApiToken> readGw2ApiTokens(JsonParser parser) throws IOException {
+        if (parser.currentToken() != JsonToken.START_OBJECT) {
+            throw new JsonParseException(parser, "gw2:tokens must be an object");
+        }
+
+        final Map<String, AuthInfo.Gw2ApiToken> gw2ApiTokens = new LinkedHashMap<>();
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            final String gw2AccountId = parser.getCurrentName();
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                throw new JsonParseException(parser, "gw2:tokens must only contain objects");
+            }
+
+            String name = null;
+            String gw2ApiSubtoken = null;
+            String error = null;
+
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                final String field = parser.getCurrentName();
+                parser.nextToken();
+
+                switch (field) {
+                    case "name" -> name = parser.getValueAsString();
+                    case "token" -> gw2ApiSubtoken = parser.getValueAsString();
+                    case "error" -> error = parser.getValueAsString();
+                    default -> parser.skipChildren();
+                }
+            }
+
+            gw2ApiTokens.put(gw2AccountId, new AuthInfo.Gw2ApiToken(name, gw2ApiSubtoken, error));
+        }
+
+        return gw2ApiTokens;
+    }
+}
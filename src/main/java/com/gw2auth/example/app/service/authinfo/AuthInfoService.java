@@ -0,0 +1,173 @@
+package com.gw2auth.example.app.service.authinfo;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.gw2auth.example.app.service.AccessTokenInvalidatedEvent;
+import com.gw2auth.example.app.service.refresh.ActiveSessionRefreshService;
+import com.gw2auth.example.app.service.refresh.TokenRefreshCoordinator;
+import com.gw2auth.example.app.service.token.AccessTokenDecoder;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.security.oauth2.client.OAuth2AuthorizedClient;
+import org.springframework.security.oauth2.client.OAuth2AuthorizedClientService;
+import org.springframework.security.oauth2.client.authentication.OAuth2AuthenticationToken;
+import org.springframework.security.oauth2.client.registration.ClientRegistration;
+import org.springframework.security.oauth2.core.AbstractOAuth2Token;
+import org.springframework.security.oauth2.core.OAuth2AccessToken;
+import org.springframework.security.oauth2.core.OAuth2RefreshToken;
+import org.springframework.stereotype.Service;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Builds the authinfo of the current user from its authorized client, refreshing the access token when it has expired.
+ */
+@Service
+public class AuthInfoService {
+
+    private final OAuth2AuthorizedClientService oAuth2AuthorizedClientService;
+    private final TokenRefreshCoordinator tokenRefreshCoordinator;
+    private final ActiveSessionRefreshService activeSessionRefreshService;
+    private final AuthInfoCache authInfoCache;
+    private final AccessTokenDecoder accessTokenDecoder;
+    private final ObjectMapper objectMapper;
+    private final ApplicationEventPublisher eventPublisher;
+    private final Timer jwtParseTimer;
+    private final Counter inlineRefreshCounter;
+    private final Clock clock;
+    private final Duration clockSkew;
+
+    public AuthInfoService(OAuth2AuthorizedClientService oAuth2AuthorizedClientService, TokenRefreshCoordinator tokenRefreshCoordinator, ActiveSessionRefreshService activeSessionRefreshService, AuthInfoCache authInfoCache, AccessTokenDecoder accessTokenDecoder, ObjectMapper objectMapper, ApplicationEventPublisher eventPublisher, MeterRegistry meterRegistry, Clock clock, Duration clockSkew) {
+        this.oAuth2AuthorizedClientService = oAuth2AuthorizedClientService;
+        this.tokenRefreshCoordinator = tokenRefreshCoordinator;
+        this.activeSessionRefreshService = activeSessionRefreshService;
+        this.authInfoCache = authInfoCache;
+        this.accessTokenDecoder = accessTokenDecoder;
+        this.objectMapper = objectMapper;
+        this.eventPublisher = eventPublisher;
+        this.jwtParseTimer = Timer.builder("jwt.parse")
+                .description("Duration of parsing an access token and extracting its claims")
+                .tag("source", "authinfo")
+                .register(meterRegistry);
+        this.inlineRefreshCounter = Counter.builder("authinfo.refresh.inline")
+                .description("Number of authinfo requests that had to refresh the expired access token before answering")
+                .register(meterRegistry);
+        this.clock = clock;
+        this.clockSkew = clockSkew;
+    }
+
+    @Autowired
+    public AuthInfoService(OAuth2AuthorizedClientService oAuth2AuthorizedClientService, TokenRefreshCoordinator tokenRefreshCoordinator, ActiveSessionRefreshService activeSessionRefreshService, AuthInfoCache authInfoCache, AccessTokenDecoder accessTokenDecoder, ObjectMapper objectMapper, ApplicationEventPublisher eventPublisher, MeterRegistry meterRegistry) {
+        this(oAuth2AuthorizedClientService, tokenRefreshCoordinator, activeSessionRefreshService, authInfoCache, accessTokenDecoder, objectMapper, eventPublisher, meterRegistry, Clock.systemUTC(), Duration.ofSeconds(5L));
+    }
+
+    /**
+     * Builds the authinfo of the current user, refreshing its access token if needed.
+     *
+     * @return the authinfo, or null if the user is not (or no longer) logged in; the authentication is cleared in that case
+     */
+    public EncodedAuthInfo getCurrentAuthInfo() {
+        final OAuth2AuthenticationToken token = Optional.ofNullable(SecurityContextHolder.getContext().getAuthentication())
+                .filter(OAuth2AuthenticationToken.class::isInstance)
+                .map(OAuth2AuthenticationToken.class::cast)
+                .orElse(null);
+
+        final EncodedAuthInfo authInfo;
+
+        if (token == null || (authInfo = getAuthInfo(token)) == null) {
+            SecurityContextHolder.getContext().setAuthentication(null);
+            return null;
+        }
+
+        return authInfo;
+    }
+
+    private EncodedAuthInfo getAuthInfo(OAuth2AuthenticationToken token) {
+        final OAuth2AuthorizedClient client = this.oAuth2AuthorizedClientService.loadAuthorizedClient(token.getAuthorizedClientRegistrationId(), token.getName());
+        final EncodedAuthInfo authInfo;
+
+        if (client == null || (authInfo = getAuthInfo(token, client)) == null) {
+            this.oAuth2AuthorizedClientService.removeAuthorizedClient(token.getAuthorizedClientRegistrationId(), token.getName());
+
+            if (client != null) {
+                this.eventPublisher.publishEvent(new AccessTokenInvalidatedEvent(client.getAccessToken().getTokenValue()));
+            }
+
+            return null;
+        }
+
+        return authInfo;
+    }
+
+    private EncodedAuthInfo getAuthInfo(OAuth2AuthenticationToken token, OAuth2AuthorizedClient client) {
+        if (hasTokenExpired(client.getAccessToken())) {
+            final OAuth2RefreshToken refreshToken = client.getRefreshToken();
+            if (refreshToken == null || hasTokenExpired(refreshToken)) {
+                return null;
+            }
+
+            // concurrent requests (and the background refresh) share a single refresh per principal
+            this.inlineRefreshCounter.increment();
+            client = this.tokenRefreshCoordinator.refresh(client, token, true);
+
+            if (client == null) {
+                return null;
+            }
+        }
+
+        // refreshes the token ahead of its expiry from now on, if enabled
+        this.activeSessionRefreshService.touch(client);
+
+        final ClientRegistration clientRegistration = client.getClientRegistration();
+        final OAuth2AccessToken accessToken = client.getAccessToken();
+        return this.authInfoCache.get(accessToken.getTokenValue(), (tokenValue) -> encode(tokenValue, buildAuthInfo(clientRegistration, tokenValue, accessToken.getExpiresAt())));
+    }
+
+    private EncodedAuthInfo encode(String accessTokenValue, AuthInfo authInfo) {
+        final byte[] json;
+        try {
+            json = this.objectMapper.writeValueAsBytes(authInfo);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("failed to encode authinfo", e);
+        }
+
+        return new EncodedAuthInfo(authInfo, json, eTagOf(accessTokenValue));
+    }
+
+    private static String eTagOf(String accessTokenValue) {
+        final MessageDigest messageDigest;
+        try {
+            messageDigest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+
+        final byte[] digest = messageDigest.digest(accessTokenValue.getBytes(StandardCharsets.UTF_8));
+        return "\"" + Base64.getUrlEncoder().withoutPadding().encodeToString(Arrays.copyOf(digest, 16)) + "\"";
+    }
+
+    private AuthInfo buildAuthInfo(ClientRegistration clientRegistration, String accessTokenValue, Instant expiresAt) {
+        final long start = System.nanoTime();
+
+        try {
+            return this.accessTokenDecoder.decode(clientRegistration, accessTokenValue, () -> new AuthInfoClaimsReader(expiresAt));
+        } finally {
+            this.jwtParseTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    private boolean hasTokenExpired(AbstractOAuth2Token token) {
+        return token.getExpiresAt() != null && this.clock.instant().minus(this.clockSkew).isAfter(token.getExpiresAt());
+    }
+}
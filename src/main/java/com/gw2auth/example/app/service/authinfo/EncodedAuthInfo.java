@@ -0,0 +1,8 @@
+package com.gw2auth.example.app.service.authinfo;
+
+/**
+ * An {@link AuthInfo} together with its pre-encoded JSON representation and the ETag identifying the access token it was built from.
+ */
+public record EncodedAuthInfo(AuthInfo authInfo, byte[] json, String eTag) {
+
+}
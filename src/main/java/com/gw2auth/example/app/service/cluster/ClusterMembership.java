@@ -0,0 +1,224 @@
+package com.gw2auth.example.app.service.cluster;
+
+import com.gw2auth.example.app.service.refresh.RefreshOwnership;
+import com.gw2auth.example.app.service.store.EnrollmentPartitions;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.jdbc.core.JdbcOperations;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tracks the live nodes of a cluster through heartbeats in a shared database and partitions principals among them.
+ * <p>
+ * Principals are hashed into a fixed number of {@link EnrollmentPartitions partitions}. Each partition is owned by exactly one live node,
+ * chosen by rendezvous hashing, so that only the partitions of a joining or leaving node move.
+ * <p>
+ * Nodes notice a join or leave at their own next heartbeat, so for a moment two nodes may each consider themselves owner of the same partition.
+ * A node therefore only holds the lease to refresh (see {@link #holdsLease(String)}) once every live node has acknowledged the same view
+ * of the membership in its {@code cluster_node} row, and only for as long as the other nodes still consider it alive.
+ */
+public class ClusterMembership implements RefreshOwnership, SmartLifecycle {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ClusterMembership.class);
+
+    private final JdbcOperations jdbcOperations;
+    private final String nodeId;
+    private final Duration heartbeatInterval;
+    private final Duration nodeTimeout;
+    private final List<Runnable> listeners;
+    private volatile View view;
+    private volatile ScheduledExecutorService heartbeatExecutor;
+
+    public ClusterMembership(JdbcOperations jdbcOperations, String nodeId, Duration heartbeatInterval, Duration nodeTimeout) {
+        if (nodeTimeout.compareTo(heartbeatInterval.multipliedBy(2L)) <= 0) {
+            // the lease is renewed every heartbeat interval and ends a heartbeat interval before the node times out
+            throw new IllegalArgumentException("nodeTimeout must be more than twice the heartbeatInterval");
+        }
+
+        this.jdbcOperations = jdbcOperations;
+        this.nodeId = nodeId;
+        this.heartbeatInterval = heartbeatInterval;
+        this.nodeTimeout = nodeTimeout;
+        this.listeners = new CopyOnWriteArrayList<>();
+        this.view = new View(0L, new String[EnrollmentPartitions.COUNT], false, 0L);
+    }
+
+    @Override
+    public boolean owns(String principalName) {
+        return this.nodeId.equals(this.view.partitionOwners()[EnrollmentPartitions.of(principalName)]);
+    }
+
+    @Override
+    public boolean holdsLease(String principalName) {
+        final View view = this.view;
+        return view.acknowledged()
+                && System.currentTimeMillis() < view.leaseUntil()
+                && this.nodeId.equals(view.partitionOwners()[EnrollmentPartitions.of(principalName)]);
+    }
+
+    @Override
+    public BitSet ownedPartitions() {
+        final String[] partitionOwners = this.view.partitionOwners();
+        final BitSet ownedPartitions = new BitSet(partitionOwners.length);
+
+        for (int partition = 0; partition < partitionOwners.length; partition++) {
+            if (this.nodeId.equals(partitionOwners[partition])) {
+                ownedPartitions.set(partition);
+            }
+        }
+
+        return ownedPartitions;
+    }
+
+    @Override
+    public void addListener(Runnable listener) {
+        this.listeners.add(listener);
+    }
+
+    @Override
+    public void start() {
+        heartbeat();
+
+        final ScheduledExecutorService heartbeatExecutor = Executors.newSingleThreadScheduledExecutor(new CustomizableThreadFactory("cluster-heartbeat-"));
+        heartbeatExecutor.scheduleWithFixedDelay(this::heartbeatSafe, this.heartbeatInterval.toMillis(), this.heartbeatInterval.toMillis(), TimeUnit.MILLISECONDS);
+
+        this.heartbeatExecutor = heartbeatExecutor;
+    }
+
+    @Override
+    public void stop() {
+        final ScheduledExecutorService heartbeatExecutor = this.heartbeatExecutor;
+        this.heartbeatExecutor = null;
+
+        if (heartbeatExecutor != null) {
+            heartbeatExecutor.shutdownNow();
+        }
+
+        // leave the cluster right away instead of waiting for the other nodes to notice the timeout
+        this.jdbcOperations.update("DELETE FROM cluster_node WHERE node_id = ?", this.nodeId);
+    }
+
+    @Override
+    public boolean isRunning() {
+        return this.heartbeatExecutor != null;
+    }
+
+    @Override
+    public int getPhase() {
+        // start before and stop after the background refresh
+        return SmartLifecycle.DEFAULT_PHASE - 1024;
+    }
+
+    private void heartbeatSafe() {
+        try {
+            heartbeat();
+        } catch (Exception e) {
+            LOG.warn("cluster heartbeat failed", e);
+        }
+    }
+
+    private void heartbeat() {
+        final long now = System.currentTimeMillis();
+        final View previous = this.view;
+
+        // acknowledges the view adopted by the previous heartbeat, so that refreshes started under the view before have had a heartbeat interval to complete
+        if (this.jdbcOperations.update("UPDATE cluster_node SET heartbeat_at = ?, membership_view = ? WHERE node_id = ?", now, previous.id(), this.nodeId) < 1) {
+            this.jdbcOperations.update("INSERT INTO cluster_node (node_id, heartbeat_at, membership_view) VALUES (?, ?, ?)", this.nodeId, now, previous.id());
+        }
+
+        this.jdbcOperations.update("DELETE FROM cluster_node WHERE heartbeat_at < ?", now - this.nodeTimeout.toMillis());
+
+        final List<Member> members = this.jdbcOperations.query(
+                "SELECT node_id, membership_view FROM cluster_node ORDER BY node_id",
+                (rs, rowNum) -> new Member(rs.getString(1), rs.getLong(2))
+        );
+
+        final List<String> nodeIds = members.stream().map(Member::nodeId).toList();
+        final long viewId = viewIdOf(nodeIds);
+        // the other nodes consider this node alive until heartbeat_at + nodeTimeout by their clocks; a heartbeat interval of that is left for clock differences
+        final long leaseUntil = now + this.nodeTimeout.toMillis() - this.heartbeatInterval.toMillis();
+
+        if (viewId != previous.id()) {
+            final String[] partitionOwners = assignPartitions(nodeIds);
+            final long ownedPartitions = Arrays.stream(partitionOwners).filter(this.nodeId::equals).count();
+            LOG.info("cluster membership changed; nodes={} owned partitions={}/{}", nodeIds, ownedPartitions, EnrollmentPartitions.COUNT);
+
+            this.view = new View(viewId, partitionOwners, false, leaseUntil);
+        } else {
+            final boolean acknowledged = members.stream().allMatch((member) -> member.membershipView() == viewId);
+            if (acknowledged && !previous.acknowledged()) {
+                LOG.info("cluster membership acknowledged by all nodes; nodes={}", nodeIds);
+            }
+
+            this.view = new View(viewId, previous.partitionOwners(), acknowledged, leaseUntil);
+        }
+
+        // listeners are notified on every heartbeat so that they also pick up enrollments made through other nodes
+        for (Runnable listener : this.listeners) {
+            listener.run();
+        }
+    }
+
+    private static long viewIdOf(List<String> nodeIds) {
+        long viewId = 0L;
+
+        for (String nodeId : nodeIds) {
+            for (int i = 0; i < nodeId.length(); i++) {
+                viewId = mix(viewId + nodeId.charAt(i));
+            }
+
+            // separates the node ids
+            viewId = mix(viewId + 0x10000L);
+        }
+
+        return viewId;
+    }
+
+    private static String[] assignPartitions(List<String> nodeIds) {
+        final String[] partitionOwners = new String[EnrollmentPartitions.COUNT];
+
+        for (int partition = 0; partition < partitionOwners.length; partition++) {
+            long maxWeight = Long.MIN_VALUE;
+
+            for (String nodeId : nodeIds) {
+                final long weight = mix(((long) nodeId.hashCode() << 32) | partition);
+                if (partitionOwners[partition] == null || weight > maxWeight) {
+                    partitionOwners[partition] = nodeId;
+                    maxWeight = weight;
+                }
+            }
+        }
+
+        return partitionOwners;
+    }
+
+    private static long mix(long value) {
+        // SplitMix64 finalizer
+        value = (value ^ (value >>> 30)) * 0xbf58476d1ce4e5b9L;
+        value = (value ^ (value >>> 27)) * 0x94d049bb133111ebL;
+        return value ^ (value >>> 31);
+    }
+
+    /**
+     * @param id           identifies the set of live nodes the partitions were assigned to
+     * @param acknowledged whether every live node has acknowledged this view
+     * @param leaseUntil   until when (epoch millis) this node may refresh, unless a heartbeat renews the lease
+     */
+    private record View(long id, String[] partitionOwners, boolean acknowledged, long leaseUntil) {
+
+    }
+
+    private record Member(String nodeId, long membershipView) {
+
+    }
+}
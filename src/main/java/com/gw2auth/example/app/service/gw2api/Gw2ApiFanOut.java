@@ -0,0 +1,116 @@
+package com.gw2auth.example.app.service.gw2api;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.http.HttpStatus;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.function.BiConsumer;
+
+/**
+ * Sends many GW2 API requests through the {@link Gw2ApiProxy} concurrently.
+ * <p>
+ * All batches share one bounded worker pool, and a single batch never occupies more than {@code parallelism} workers,
+ * so that one large batch cannot starve the others.
+ */
+public class Gw2ApiFanOut implements DisposableBean {
+
+    private static final Logger LOG = LoggerFactory.getLogger(Gw2ApiFanOut.class);
+
+    private final Gw2ApiProxy gw2ApiProxy;
+    private final ExecutorService executor;
+    private final int parallelism;
+
+    public Gw2ApiFanOut(Gw2ApiProxy gw2ApiProxy, int workers, int parallelism) {
+        this(gw2ApiProxy, workers, new CustomizableThreadFactory("gw2api-batch-"), parallelism);
+    }
+
+    public Gw2ApiFanOut(Gw2ApiProxy gw2ApiProxy, int workers, ThreadFactory threadFactory, int parallelism) {
+        if (workers < 1) {
+            throw new IllegalArgumentException("workers must be at least 1");
+        } else if (parallelism < 1) {
+            throw new IllegalArgumentException("parallelism must be at least 1");
+        }
+
+        this.gw2ApiProxy = gw2ApiProxy;
+        this.executor = Executors.newFixedThreadPool(workers, threadFactory);
+        this.parallelism = parallelism;
+    }
+
+    /**
+     * Sends all requests and hands each response to {@code onResponse} as soon as it is available, in completion order.
+     * {@code onResponse} is always invoked on the calling thread; if it throws, the remaining requests are cancelled.
+     *
+     * @param onResponse receives the index of the request within {@code requests} and its response
+     */
+    public void execute(List<Request> requests, BiConsumer<Integer, Gw2ApiResponse> onResponse) throws InterruptedException {
+        final CompletionService<Integer> completionService = new ExecutorCompletionService<>(this.executor);
+        final Gw2ApiResponse[] responses = new Gw2ApiResponse[requests.size()];
+        final List<Future<Integer>> futures = new ArrayList<>(requests.size());
+        int submitted = 0;
+
+        try {
+            while (submitted < requests.size() && submitted < this.parallelism) {
+                futures.add(submit(completionService, requests, responses, submitted++));
+            }
+
+            for (int completed = 0; completed < requests.size(); completed++) {
+                final int index = completionService.take().get();
+
+                if (submitted < requests.size()) {
+                    futures.add(submit(completionService, requests, responses, submitted++));
+                }
+
+                onResponse.accept(index, responses[index]);
+                responses[index] = null;
+            }
+        } catch (ExecutionException e) {
+            // the task itself never throws
+            throw new IllegalStateException(e.getCause());
+        } finally {
+            for (Future<Integer> future : futures) {
+                future.cancel(true);
+            }
+        }
+    }
+
+    private Future<Integer> submit(CompletionService<Integer> completionService, List<Request> requests, Gw2ApiResponse[] responses, int index) {
+        final Request request = requests.get(index);
+
+        return completionService.submit(() -> {
+            Gw2ApiResponse response;
+            try {
+                response = this.gw2ApiProxy.get(request.path(), request.query(), request.gw2ApiToken());
+            } catch (RuntimeException e) {
+                LOG.warn("failed to request {} from the GW2 API", request.path(), e);
+                response = Gw2ApiProxy.error(HttpStatus.INTERNAL_SERVER_ERROR, "internal error");
+            }
+
+            // published to the calling thread through the completion queue
+            responses[index] = response;
+            return index;
+        });
+    }
+
+    @Override
+    public void destroy() throws Exception {
+        this.executor.shutdown();
+
+        if (!this.executor.awaitTermination(10L, TimeUnit.SECONDS)) {
+            this.executor.shutdownNow();
+        }
+    }
+
+    /**
+     * @param path the URL encoded path below the API root, e.g. {@code v2/account}
+     * @param query the URL encoded query string, or null
+     * @param gw2ApiToken the GW2 API token to send, or null
+     */
+    public record Request(String path, String query, String gw2ApiToken) {
+
+    }
+}
@@ -0,0 +1,333 @@
+package com.gw2auth.example.app.service.gw2api;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.*;
+import org.springframework.web.client.RestClientException;
+import org.springframework.web.client.RestOperations;
+
+import java.net.URI;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Forwards GET requests to the GW2 API.
+ * <p>
+ * Responses are cached for as long as their {@code Cache-Control} or {@code Expires} headers allow:
+ * responses to requests without a GW2 API token in a cache shared by all users, responses to authenticated requests in a cache keyed by the token.
+ * Identical requests that arrive while one is in flight wait for its response instead of being sent again,
+ * and requests actually sent upstream are rate limited per GW2 API token (requests without a token share one limit).
+ */
+public class Gw2ApiProxy {
+
+    private static final Logger LOG = LoggerFactory.getLogger(Gw2ApiProxy.class);
+    private static final String ACCESS_TOKEN_PARAMETER = "access_token";
+    private static final String PUBLIC_KEY = "public";
+    private static final List<String> FORWARDED_HEADERS = List.of(
+            HttpHeaders.CONTENT_TYPE,
+            HttpHeaders.CONTENT_LANGUAGE,
+            HttpHeaders.LINK,
+            "X-Page-Total",
+            "X-Page-Size",
+            "X-Result-Total",
+            "X-Result-Count"
+    );
+
+    private final RestOperations restOperations;
+    private final String baseUrl;
+    private final Cache<String, Gw2ApiResponse> sharedCache;
+    private final Cache<String, Gw2ApiResponse> tokenCache;
+    private final Gw2ApiRateLimiter rateLimiter;
+    private final ConcurrentMap<String, CompletableFuture<Gw2ApiResponse>> inFlight;
+
+    private final Counter hitCounter;
+    private final Counter coalescedCounter;
+    private final Counter fetchedCounter;
+    private final Counter rateLimitedCounter;
+    private final Counter unavailableCounter;
+    private final Timer upstreamTimer;
+
+    public Gw2ApiProxy(RestOperations restOperations, String baseUrl, long sharedCacheBytes, long tokenCacheBytes, int rateLimitBurst, double rateLimitPerSecond, MeterRegistry meterRegistry) {
+        this.restOperations = restOperations;
+        this.baseUrl = baseUrl.endsWith("/") ? baseUrl.substring(0, baseUrl.length() - 1) : baseUrl;
+        this.sharedCache = responseCache(sharedCacheBytes);
+        this.tokenCache = responseCache(tokenCacheBytes);
+        this.rateLimiter = new Gw2ApiRateLimiter(rateLimitBurst, rateLimitPerSecond);
+        this.inFlight = new ConcurrentHashMap<>();
+
+        this.hitCounter = requestCounter(meterRegistry, "hit");
+        this.coalescedCounter = requestCounter(meterRegistry, "coalesced");
+        this.fetchedCounter = requestCounter(meterRegistry, "fetched");
+        this.rateLimitedCounter = requestCounter(meterRegistry, "rate_limited");
+        this.unavailableCounter = requestCounter(meterRegistry, "unavailable");
+        // deliberately not tagged by path, which is chosen by the user
+        this.upstreamTimer = Timer.builder("gw2api.proxy.upstream")
+                .description("Duration of requests sent to the GW2 API")
+                .register(meterRegistry);
+
+        CaffeineCacheMetrics.monitor(meterRegistry, this.sharedCache, "gw2api-shared");
+        CaffeineCacheMetrics.monitor(meterRegistry, this.tokenCache, "gw2api-token");
+    }
+
+    /**
+     * @param path the URL encoded path below the API root, e.g. {@code v2/account}
+     * @param query the URL encoded query string, or null; an {@code access_token} parameter is used as the GW2 API token if none is given explicitly
+     * @param gw2ApiToken the GW2 API token to send, or null
+     */
+    public Gw2ApiResponse get(String path, String query, String gw2ApiToken) {
+        final List<String> parameters = new ArrayList<>();
+
+        if (query != null) {
+            for (String parameter : query.split("&")) {
+                if (parameter.equals(ACCESS_TOKEN_PARAMETER) || parameter.startsWith(ACCESS_TOKEN_PARAMETER + "=")) {
+                    if (gw2ApiToken == null && parameter.length() > ACCESS_TOKEN_PARAMETER.length() + 1) {
+                        gw2ApiToken = URLDecoder.decode(parameter.substring(ACCESS_TOKEN_PARAMETER.length() + 1), StandardCharsets.UTF_8);
+                    }
+                } else if (!parameter.isEmpty()) {
+                    parameters.add(parameter);
+                }
+            }
+        }
+
+        // the parameter order does not change the response, so it must not change the cache key either
+        Collections.sort(parameters);
+
+        final String canonicalQuery = String.join("&", parameters);
+        final String limiterKey = gw2ApiToken == null ? PUBLIC_KEY : hash(gw2ApiToken);
+        final String key = limiterKey + ' ' + path + '?' + canonicalQuery;
+        final Cache<String, Gw2ApiResponse> cache = gw2ApiToken == null ? this.sharedCache : this.tokenCache;
+
+        final Gw2ApiResponse cached = cache.getIfPresent(key);
+        if (cached != null) {
+            this.hitCounter.increment();
+            return cached;
+        }
+
+        final CompletableFuture<Gw2ApiResponse> future = new CompletableFuture<>();
+        final CompletableFuture<Gw2ApiResponse> existing = this.inFlight.putIfAbsent(key, future);
+
+        if (existing != null) {
+            this.coalescedCounter.increment();
+            return join(existing);
+        }
+
+        try {
+            final Gw2ApiResponse response;
+            final Duration retryAfter = this.rateLimiter.tryAcquire(limiterKey);
+
+            if (!retryAfter.isZero()) {
+                this.rateLimitedCounter.increment();
+                response = rateLimited(retryAfter);
+            } else {
+                response = fetch(path, canonicalQuery, gw2ApiToken);
+
+                if (response.expiresAt() != null) {
+                    cache.put(key, response);
+                }
+            }
+
+            future.complete(response);
+            return response;
+        } catch (RuntimeException | Error e) {
+            future.completeExceptionally(e);
+            throw e;
+        } finally {
+            this.inFlight.remove(key, future);
+        }
+    }
+
+    private Gw2ApiResponse fetch(String path, String query, String gw2ApiToken) {
+        final URI uri;
+        try {
+            uri = URI.create(this.baseUrl + '/' + path + (query.isEmpty() ? "" : '?' + query));
+        } catch (IllegalArgumentException e) {
+            return error(HttpStatus.BAD_REQUEST, "invalid request");
+        }
+
+        final RequestEntity<Void> request = RequestEntity.get(uri)
+                .accept(MediaType.APPLICATION_JSON)
+                .headers((headers) -> {
+                    if (gw2ApiToken != null) {
+                        headers.setBearerAuth(gw2ApiToken);
+                    }
+                })
+                .build();
+
+        final long start = System.nanoTime();
+        final ResponseEntity<byte[]> response;
+        try {
+            response = this.restOperations.exchange(request, byte[].class);
+        } catch (RestClientException e) {
+            LOG.debug("failed to request {} from the GW2 API", path, e);
+            this.unavailableCounter.increment();
+            return error(HttpStatus.BAD_GATEWAY, "GW2 API unavailable");
+        } finally {
+            this.upstreamTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+
+        this.fetchedCounter.increment();
+
+        final HttpHeaders headers = new HttpHeaders();
+        for (String name : FORWARDED_HEADERS) {
+            final List<String> values = response.getHeaders().get(name);
+            if (values != null) {
+                headers.put(name, values);
+            }
+        }
+
+        final Instant expiresAt = response.getStatusCode().is2xxSuccessful() ? expiresAt(response.getHeaders(), gw2ApiToken == null, Instant.now()) : null;
+        final byte[] body = response.getBody() == null ? new byte[0] : response.getBody();
+
+        return new Gw2ApiResponse(response.getStatusCodeValue(), HttpHeaders.readOnlyHttpHeaders(headers), body, expiresAt);
+    }
+
+    /**
+     * @return until when the response may be reused according to its caching headers, or null if it may not be reused
+     */
+    private static Instant expiresAt(HttpHeaders headers, boolean shared, Instant now) {
+        long maxAge = -1L;
+        long sharedMaxAge = -1L;
+
+        for (String cacheControl : headers.getOrEmpty(HttpHeaders.CACHE_CONTROL)) {
+            for (String directive : cacheControl.split(",")) {
+                final String[] parts = directive.trim().toLowerCase(Locale.ROOT).split("=", 2);
+
+                switch (parts[0]) {
+                    case "no-store", "no-cache" -> {
+                        return null;
+                    }
+                    case "private" -> {
+                        if (shared) {
+                            return null;
+                        }
+                    }
+                    case "max-age" -> maxAge = parseSeconds(parts);
+                    case "s-maxage" -> sharedMaxAge = parseSeconds(parts);
+                }
+            }
+        }
+
+        if (shared && sharedMaxAge >= 0L) {
+            maxAge = sharedMaxAge;
+        }
+
+        if (maxAge < 0L) {
+            final long expires = headers.getExpires();
+            if (expires < 0L) {
+                return null;
+            }
+
+            // relative to the server's clock, if it told us what time it is
+            final long date = headers.getDate();
+            maxAge = (expires - (date < 0L ? now.toEpochMilli() : date)) / 1000L;
+        }
+
+        return maxAge > 0L ? now.plusSeconds(maxAge) : null;
+    }
+
+    private static long parseSeconds(String[] directive) {
+        if (directive.length < 2) {
+            return -1L;
+        }
+
+        try {
+            return Long.parseLong(directive[1].trim().replace("\"", ""));
+        } catch (NumberFormatException e) {
+            return -1L;
+        }
+    }
+
+    private static Gw2ApiResponse rateLimited(Duration retryAfter) {
+        final Gw2ApiResponse response = error(HttpStatus.TOO_MANY_REQUESTS, "too many requests");
+        final HttpHeaders headers = new HttpHeaders();
+        headers.putAll(response.headers());
+        headers.set(HttpHeaders.RETRY_AFTER, Long.toString(Math.max(1L, (retryAfter.toMillis() + 999L) / 1000L)));
+
+        return new Gw2ApiResponse(response.status(), HttpHeaders.readOnlyHttpHeaders(headers), response.body(), null);
+    }
+
+    static Gw2ApiResponse error(HttpStatus status, String text) {
+        final HttpHeaders headers = new HttpHeaders();
+        headers.setContentType(MediaType.APPLICATION_JSON);
+
+        // same shape as the GW2 API's own error responses
+        return new Gw2ApiResponse(status.value(), HttpHeaders.readOnlyHttpHeaders(headers), ("{\"text\":\"" + text + "\"}").getBytes(StandardCharsets.UTF_8), null);
+    }
+
+    private static String hash(String gw2ApiToken) {
+        final MessageDigest messageDigest;
+        try {
+            messageDigest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+
+        final byte[] digest = messageDigest.digest(gw2ApiToken.getBytes(StandardCharsets.UTF_8));
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(Arrays.copyOf(digest, 16));
+    }
+
+    private static Gw2ApiResponse join(CompletableFuture<Gw2ApiResponse> future) {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            } else if (e.getCause() instanceof Error cause) {
+                throw cause;
+            }
+
+            throw e;
+        }
+    }
+
+    private static Cache<String, Gw2ApiResponse> responseCache(long maximumBytes) {
+        return Caffeine.newBuilder()
+                .maximumWeight(maximumBytes)
+                .weigher((String key, Gw2ApiResponse value) -> key.length() + value.body().length)
+                .expireAfter(new ExpireWithResponse())
+                .recordStats()
+                .build();
+    }
+
+    private static Counter requestCounter(MeterRegistry meterRegistry, String outcome) {
+        return Counter.builder("gw2api.proxy.requests")
+                .description("Number of GW2 API requests served by the proxy by outcome")
+                .tag("outcome", outcome)
+                .register(meterRegistry);
+    }
+
+    private static class ExpireWithResponse implements Expiry<String, Gw2ApiResponse> {
+
+        @Override
+        public long expireAfterCreate(String key, Gw2ApiResponse value, long currentTime) {
+            return Math.max(0L, Duration.between(Instant.now(), value.expiresAt()).toNanos());
+        }
+
+        @Override
+        public long expireAfterUpdate(String key, Gw2ApiResponse value, long currentTime, long currentDuration) {
+            return expireAfterCreate(key, value, currentTime);
+        }
+
+        @Override
+        public long expireAfterRead(String key, Gw2ApiResponse value, long currentTime, long currentDuration) {
+            return currentDuration;
+        }
+    }
+}
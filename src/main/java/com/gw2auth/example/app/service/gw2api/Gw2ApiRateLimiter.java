@@ -0,0 +1,62 @@
+package com.gw2auth.example.app.service.gw2api;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Token bucket per key: allows bursts of up to {@code burst} requests, refilled at {@code perSecond} requests per second.
+ * Buckets that have been idle long enough to be full again are dropped.
+ */
+class Gw2ApiRateLimiter {
+
+    private final int burst;
+    private final double perNano;
+    private final Cache<String, TokenBucket> buckets;
+
+    Gw2ApiRateLimiter(int burst, double perSecond) {
+        if (burst < 1) {
+            throw new IllegalArgumentException("burst must be at least 1");
+        } else if (perSecond <= 0.0) {
+            throw new IllegalArgumentException("perSecond must be positive");
+        }
+
+        this.burst = burst;
+        this.perNano = perSecond / TimeUnit.SECONDS.toNanos(1L);
+        this.buckets = Caffeine.newBuilder()
+                .expireAfterAccess(Duration.ofNanos((long) Math.ceil(burst / this.perNano)))
+                .build();
+    }
+
+    /**
+     * @return {@link Duration#ZERO} if a request for the key may be sent now, otherwise how long to wait until the next one may be sent
+     */
+    Duration tryAcquire(String key) {
+        return this.buckets.get(key, (k) -> new TokenBucket(this.burst)).tryAcquire(this.burst, this.perNano, System.nanoTime());
+    }
+
+    private static final class TokenBucket {
+
+        private double tokens;
+        private long lastRefill;
+
+        private TokenBucket(int burst) {
+            this.tokens = burst;
+            this.lastRefill = System.nanoTime();
+        }
+
+        private synchronized Duration tryAcquire(int burst, double perNano, long now) {
+            this.tokens = Math.min(burst, this.tokens + (now - this.lastRefill) * perNano);
+            this.lastRefill = now;
+
+            if (this.tokens >= 1.0) {
+                this.tokens -= 1.0;
+                return Duration.ZERO;
+            }
+
+            return Duration.ofNanos((long) Math.ceil((1.0 - this.tokens) / perNano));
+        }
+    }
+}
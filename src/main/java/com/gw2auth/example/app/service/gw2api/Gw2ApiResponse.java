@@ -0,0 +1,15 @@
+package com.gw2auth.example.app.service.gw2api;
+
+import org.springframework.http.HttpHeaders;
+
+import java.time.Instant;
+
+/**
+ * A response of the GW2 API as served by the {@link Gw2ApiProxy}.
+ *
+ * @param headers the subset of the upstream headers that is passed on to the client
+ * @param expiresAt until when the response may be reused, or null if it may not be reused at all
+ */
+public record Gw2ApiResponse(int status, HttpHeaders headers, byte[] body, Instant expiresAt) {
+
+}
@@ -0,0 +1,331 @@
+package com.gw2auth.example.app.service.refresh;
+
+import com.gw2auth.example.app.configuration.ActiveSessionRefreshProperties;
+import com.gw2auth.example.app.configuration.BackgroundRefreshProperties;
+import com.gw2auth.example.app.service.store.AuthorizedClientStore;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.security.oauth2.client.ClientAuthorizationException;
+import org.springframework.security.oauth2.client.OAuth2AuthorizedClient;
+import org.springframework.security.oauth2.core.OAuth2AccessToken;
+import org.springframework.stereotype.Service;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Refreshes the access tokens of recently active sessions shortly before they expire,
+ * so that their next request does not have to wait for the issuer.
+ * <p>
+ * Sessions are tracked on this node as they use {@code /api/authinfo} and are dropped once they have been idle for {@code idleTimeout}.
+ * Refreshes run on the shared {@link RefreshEngine}, at a random point between {@code window} and half of it before the access token expires.
+ * Principals enrolled into background refresh are left to the {@link BackgroundRefreshService} and only checked again once their token expired.
+ * <p>
+ * A refresh that fails for good only stops the tracking; the next request of the session refreshes inline and handles the failure as before.
+ */
+@Service
+public class ActiveSessionRefreshService implements SmartLifecycle {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ActiveSessionRefreshService.class);
+
+    private final AuthorizedClientStore authorizedClientStore;
+    private final TokenRefreshCoordinator tokenRefreshCoordinator;
+    private final RefreshEngine refreshEngine;
+    private final boolean enabled;
+    private final long windowMillis;
+    private final long idleTimeoutMillis;
+    private final int maximumSessions;
+    private final long retryInitialBackoffMillis;
+    private final long retryMaxBackoffMillis;
+
+    private final RefreshSchedule sessionsToBeRefreshed;
+    private final ConcurrentMap<String, AtomicLong> lastActiveAt;
+
+    private final Counter refreshSuccessCounter;
+    private final Counter refreshRetryCounter;
+    private final Counter refreshFailedCounter;
+    private final Counter idleCounter;
+    private final Counter rejectedCounter;
+
+    private volatile Thread dispatcher;
+
+    @Autowired
+    public ActiveSessionRefreshService(AuthorizedClientStore authorizedClientStore,
+                                       TokenRefreshCoordinator tokenRefreshCoordinator,
+                                       RefreshEngine refreshEngine,
+                                       ActiveSessionRefreshProperties properties,
+                                       BackgroundRefreshProperties backgroundRefreshProperties,
+                                       MeterRegistry meterRegistry) {
+
+        this.authorizedClientStore = authorizedClientStore;
+        this.tokenRefreshCoordinator = tokenRefreshCoordinator;
+        this.refreshEngine = refreshEngine;
+        this.enabled = properties.enabled();
+        this.windowMillis = Math.max(0L, properties.window().toMillis());
+        this.idleTimeoutMillis = properties.idleTimeout().toMillis();
+        this.maximumSessions = properties.maximumSessions();
+        this.retryInitialBackoffMillis = Math.max(1L, backgroundRefreshProperties.retryInitialBackoff().toMillis());
+        this.retryMaxBackoffMillis = Math.max(this.retryInitialBackoffMillis, backgroundRefreshProperties.retryMaxBackoff().toMillis());
+
+        this.sessionsToBeRefreshed = new RefreshSchedule();
+        this.lastActiveAt = new ConcurrentHashMap<>();
+
+        this.refreshSuccessCounter = refreshCounter(meterRegistry, "success");
+        this.refreshRetryCounter = refreshCounter(meterRegistry, "retry");
+        this.refreshFailedCounter = refreshCounter(meterRegistry, "failed");
+        this.idleCounter = refreshCounter(meterRegistry, "idle");
+        this.rejectedCounter = Counter.builder("active.session.refresh.rejected")
+                .description("Number of active sessions not tracked because maximum-sessions was reached")
+                .register(meterRegistry);
+
+        Gauge.builder("active.session.refresh.tracked", this.sessionsToBeRefreshed, RefreshSchedule::size)
+                .description("Number of active sessions whose access token is refreshed ahead of its expiry")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Marks the session of the client's principal as active, tracking it if it is not tracked yet.
+     * Called on every {@code /api/authinfo} request, so it does not touch the store.
+     */
+    public void touch(OAuth2AuthorizedClient client) {
+        if (!this.enabled || client.getRefreshToken() == null) {
+            return;
+        }
+
+        final OAuth2AccessToken accessToken = client.getAccessToken();
+        if (accessToken.getIssuedAt() == null || accessToken.getExpiresAt() == null) {
+            return;
+        }
+
+        final String principalName = client.getPrincipalName();
+        final long now = System.currentTimeMillis();
+        final AtomicLong lastActiveAt = this.lastActiveAt.get(principalName);
+
+        if (lastActiveAt != null) {
+            lastActiveAt.set(now);
+            return;
+        }
+
+        if (this.lastActiveAt.size() >= this.maximumSessions) {
+            this.rejectedCounter.increment();
+            return;
+        }
+
+        if (this.lastActiveAt.putIfAbsent(principalName, new AtomicLong(now)) == null) {
+            this.sessionsToBeRefreshed.add(principalName, client.getClientRegistration().getRegistrationId(), issuedAt(client), dueAt(client));
+        }
+    }
+
+    @Override
+    public void start() {
+        if (!this.enabled) {
+            return;
+        }
+
+        final Thread dispatcher = new Thread(this::refreshActiveSessions, "active-session-refresh-dispatcher");
+        dispatcher.setDaemon(true);
+        dispatcher.start();
+
+        this.dispatcher = dispatcher;
+    }
+
+    @Override
+    public void stop() {
+        final Thread dispatcher = this.dispatcher;
+        this.dispatcher = null;
+
+        if (dispatcher != null) {
+            dispatcher.interrupt();
+
+            try {
+                dispatcher.join(10_000L);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    @Override
+    public boolean isRunning() {
+        return this.dispatcher != null;
+    }
+
+    private void refreshActiveSessions() {
+        while (!Thread.currentThread().isInterrupted()) {
+            OAuth2AuthorizedClient client = null;
+
+            try {
+                client = takeNextDueClient();
+
+                final OAuth2AuthorizedClient next = client;
+                final boolean submitted = this.refreshEngine.submit(
+                        BackgroundRefreshService.issuerOf(next.getClientRegistration()),
+                        next.getPrincipalName(),
+                        () -> refreshClientSafe(next),
+                        (result) -> result == next,
+                        (result) -> onRefreshCompletedSafe(next, result)
+                );
+
+                if (!submitted) {
+                    // refreshed by the background refresh right now; picked up again with the stored client
+                    retryLater(next);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (Exception e) {
+                LOG.warn("failed to dispatch active session refresh", e);
+
+                if (client != null) {
+                    retryLater(client);
+                }
+            }
+        }
+    }
+
+    private OAuth2AuthorizedClient takeNextDueClient() throws InterruptedException {
+        while (true) {
+            final RefreshSchedule.Due due = this.sessionsToBeRefreshed.takeDue();
+            final String clientRegistrationId = due.clientRegistrationId();
+            final String principalName = due.principalName();
+            final AtomicLong lastActiveAt = this.lastActiveAt.get(principalName);
+
+            if (lastActiveAt == null || System.currentTimeMillis() - lastActiveAt.get() > this.idleTimeoutMillis) {
+                untrack(principalName);
+                this.idleCounter.increment();
+                continue;
+            }
+
+            final OAuth2AuthorizedClient client;
+            try {
+                client = this.authorizedClientStore.loadAuthorizedClient(clientRegistrationId, principalName);
+            } catch (RuntimeException e) {
+                LOG.warn("failed to load client={} for active session refresh", principalName, e);
+                this.sessionsToBeRefreshed.retry(principalName, this::retryDueAt);
+                continue;
+            }
+
+            // logged out, or refreshing already failed for good
+            if (client == null || client.getRefreshToken() == null) {
+                untrack(principalName);
+                continue;
+            }
+
+            if (issuedAt(client) != due.issuedAt()) {
+                // refreshed inline or elsewhere since it was scheduled
+                reschedule(client);
+                continue;
+            }
+
+            final boolean backgroundRefreshEnabled;
+            try {
+                backgroundRefreshEnabled = this.authorizedClientStore.isBackgroundRefreshEnabled(clientRegistrationId, principalName);
+            } catch (RuntimeException e) {
+                // touch() only queues sessions that are not tracked yet, so this session must stay queued
+                LOG.warn("failed to check the enrollment of client={} for active session refresh", principalName, e);
+                this.sessionsToBeRefreshed.retry(principalName, this::retryDueAt);
+                continue;
+            }
+
+            if (backgroundRefreshEnabled) {
+                // left to the background refresh, but kept tracked (instead of being tracked again by the next request) in case the enrollment is cancelled
+                this.sessionsToBeRefreshed.reschedule(principalName, due.issuedAt(), client.getAccessToken().getExpiresAt().toEpochMilli());
+            } else {
+                return client;
+            }
+        }
+    }
+
+    private OAuth2AuthorizedClient refreshClientSafe(OAuth2AuthorizedClient client) {
+        final String principalName = client.getPrincipalName();
+
+        try {
+            // same as an inline refresh by the session's request, which would otherwise have replaced this token
+            return this.tokenRefreshCoordinator.refresh(client, new NameAuthentication(principalName), true);
+        } catch (ClientAuthorizationException e) {
+            if (BackgroundRefreshService.isTransientFailure(e)) {
+                LOG.debug("refreshing active session client={} failed transiently", principalName, e);
+                return client;
+            }
+
+            LOG.info("refreshing active session client={} resulted in exception", principalName, e);
+        } catch (Exception e) {
+            LOG.warn("refreshing active session client={} resulted in exception", principalName, e);
+        }
+
+        return null;
+    }
+
+    private void onRefreshCompletedSafe(OAuth2AuthorizedClient previous, OAuth2AuthorizedClient next) {
+        try {
+            onRefreshCompleted(previous, next);
+        } catch (Exception e) {
+            // touch() only queues sessions that are not tracked yet, so this session would otherwise stay tracked but unqueued
+            LOG.warn("failed to complete active session refresh of client={}", previous.getPrincipalName(), e);
+            retryLater(previous);
+        }
+    }
+
+    private void onRefreshCompleted(OAuth2AuthorizedClient previous, OAuth2AuthorizedClient next) {
+        if (next == previous) {
+            retryLater(previous);
+            this.refreshRetryCounter.increment();
+        } else if (next != null) {
+            reschedule(next);
+            this.refreshSuccessCounter.increment();
+        } else {
+            untrack(previous.getPrincipalName());
+            this.refreshFailedCounter.increment();
+        }
+    }
+
+    private void untrack(String principalName) {
+        this.sessionsToBeRefreshed.remove(principalName);
+        this.lastActiveAt.remove(principalName);
+    }
+
+    private void reschedule(OAuth2AuthorizedClient client) {
+        this.sessionsToBeRefreshed.reschedule(client.getPrincipalName(), issuedAt(client), dueAt(client));
+    }
+
+    private void retryLater(OAuth2AuthorizedClient client) {
+        this.sessionsToBeRefreshed.retry(client.getPrincipalName(), this::retryDueAt);
+    }
+
+    private long retryDueAt(int failures) {
+        final long backoff = Math.min(this.retryMaxBackoffMillis, this.retryInitialBackoffMillis << Math.min(failures - 1, 30));
+        return System.currentTimeMillis() + ThreadLocalRandom.current().nextLong(backoff / 2L, backoff + 1L);
+    }
+
+    private static long issuedAt(OAuth2AuthorizedClient client) {
+        return client.getAccessToken().getIssuedAt().toEpochMilli();
+    }
+
+    private long dueAt(OAuth2AuthorizedClient client) {
+        final OAuth2AccessToken accessToken = client.getAccessToken();
+        final long issuedAt = accessToken.getIssuedAt().toEpochMilli();
+        final long expiresAt = accessToken.getExpiresAt().toEpochMilli();
+
+        // randomized so that sessions logged in together don't all hit the issuer at once;
+        // never earlier than halfway through the token's lifetime, so that short-lived tokens are not refreshed continuously
+        final long lead = Math.min(
+                ThreadLocalRandom.current().nextLong(this.windowMillis / 2L, this.windowMillis + 1L),
+                Math.max(0L, expiresAt - issuedAt) / 2L
+        );
+
+        return expiresAt - lead;
+    }
+
+    private static Counter refreshCounter(MeterRegistry meterRegistry, String outcome) {
+        return Counter.builder("active.session.refresh.completed")
+                .description("Number of active sessions whose refresh completed or that were dropped for being idle")
+                .tag("outcome", outcome)
+                .register(meterRegistry);
+    }
+}
@@ -0,0 +1,463 @@
+package com.gw2auth.example.app.service.refresh;
+
+import com.gw2auth.example.app.configuration.BackgroundRefreshProperties;
+import com.gw2auth.example.app.service.AccessTokenInvalidatedEvent;
+import com.gw2auth.example.app.service.store.AuthorizedClientStore;
+import com.gw2auth.example.app.service.store.EnrollmentPartitions;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.TimeGauge;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.oauth2.client.*;
+import org.springframework.security.oauth2.client.registration.ClientRegistration;
+import org.springframework.security.oauth2.core.OAuth2AccessToken;
+import org.springframework.security.oauth2.core.OAuth2ErrorCodes;
+import org.springframework.stereotype.Service;
+import org.springframework.web.client.HttpClientErrorException;
+import org.springframework.web.client.HttpServerErrorException;
+import org.springframework.web.client.ResourceAccessException;
+
+import java.time.Duration;
+import java.util.BitSet;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+@Service
+public class BackgroundRefreshService implements SmartLifecycle {
+
+    private static final Logger LOG = LoggerFactory.getLogger(BackgroundRefreshService.class);
+    private static final Duration MAX_TOKEN_AGE = Duration.ofMinutes(5L);
+    private static final Duration CLOCK_SKEW = Duration.ofSeconds(5L);
+    // enrollments are polled by the time the enrolling node recorded, which may be behind the clock of this node
+    private static final Duration ENROLLMENT_POLL_OVERLAP = Duration.ofMinutes(1L);
+    // how long a due client waits while this node owns it but doesn't hold the lease to refresh it
+    private static final Duration LEASE_WAIT = Duration.ofSeconds(5L);
+
+    private final AuthorizedClientStore authorizedClientStore;
+    private final TokenRefreshCoordinator tokenRefreshCoordinator;
+    private final RefreshEngine refreshEngine;
+    private final RefreshOwnership refreshOwnership;
+    private final ApplicationEventPublisher eventPublisher;
+    private final long jitterMillis;
+    private final int logSampleRate;
+    private final long retryInitialBackoffMillis;
+    private final long retryMaxBackoffMillis;
+
+    private final RefreshSchedule clientsToBeRefreshed;
+
+    private final Counter refreshSuccessCounter;
+    private final Counter refreshRetryCounter;
+    private final Counter refreshRemovedCounter;
+
+    private volatile Thread dispatcher;
+
+    // guarded by this; null until started
+    private BitSet ownedPartitions;
+    private long enrollmentsPolledAt;
+
+    @Autowired
+    public BackgroundRefreshService(AuthorizedClientStore authorizedClientStore,
+                                    TokenRefreshCoordinator tokenRefreshCoordinator,
+                                    RefreshEngine refreshEngine,
+                                    RefreshOwnership refreshOwnership,
+                                    ApplicationEventPublisher eventPublisher,
+                                    BackgroundRefreshProperties properties,
+                                    MeterRegistry meterRegistry) {
+
+        this.authorizedClientStore = authorizedClientStore;
+        this.tokenRefreshCoordinator = tokenRefreshCoordinator;
+        this.refreshEngine = refreshEngine;
+        this.refreshOwnership = refreshOwnership;
+        this.eventPublisher = eventPublisher;
+        this.jitterMillis = properties.jitter().toMillis();
+        this.logSampleRate = Math.max(1, properties.logSampleRate());
+        this.retryInitialBackoffMillis = Math.max(1L, properties.retryInitialBackoff().toMillis());
+        this.retryMaxBackoffMillis = Math.max(this.retryInitialBackoffMillis, properties.retryMaxBackoff().toMillis());
+
+        this.clientsToBeRefreshed = new RefreshSchedule();
+
+        this.refreshSuccessCounter = refreshCounter(meterRegistry, "success");
+        this.refreshRetryCounter = refreshCounter(meterRegistry, "retry");
+        this.refreshRemovedCounter = refreshCounter(meterRegistry, "removed");
+
+        Gauge.builder("background.refresh.queue.size", this.clientsToBeRefreshed, RefreshSchedule::size)
+                .description("Number of clients waiting for their next refresh")
+                .register(meterRegistry);
+
+        TimeGauge.builder("background.refresh.overdue", this.clientsToBeRefreshed, TimeUnit.MILLISECONDS, (schedule) -> Math.max(0L, System.currentTimeMillis() - schedule.headDueAt()))
+                .description("How long the most overdue client has been waiting for its refresh")
+                .register(meterRegistry);
+
+        refreshOwnership.addListener(this::rebalance);
+    }
+
+    public boolean isEnabled(String clientRegistrationId, String principalName) {
+        return this.clientsToBeRefreshed.contains(principalName) || this.authorizedClientStore.isBackgroundRefreshEnabled(clientRegistrationId, principalName);
+    }
+
+    public void enable(OAuth2AuthorizedClient client) {
+        this.authorizedClientStore.setBackgroundRefreshEnabled(client.getClientRegistration().getRegistrationId(), client.getPrincipalName(), true);
+
+        // if another node owns the principal, it picks up the enrollment from the shared store
+        if (this.refreshOwnership.owns(client.getPrincipalName())) {
+            schedule(client);
+        }
+    }
+
+    public void disable(String clientRegistrationId, String principalName) {
+        this.clientsToBeRefreshed.remove(principalName);
+        this.authorizedClientStore.setBackgroundRefreshEnabled(clientRegistrationId, principalName, false);
+    }
+
+    @Override
+    public void start() {
+        final long start = System.nanoTime();
+        scheduleOwnedPartitions();
+
+        final long tookMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        LOG.info("scheduled {} clients for background refresh in {}ms", this.clientsToBeRefreshed.size(), tookMillis);
+
+        final Thread dispatcher = new Thread(this::refreshExpiredTokens, "background-refresh-dispatcher");
+        dispatcher.setDaemon(true);
+        dispatcher.start();
+
+        this.dispatcher = dispatcher;
+    }
+
+    @Override
+    public void stop() {
+        final Thread dispatcher = this.dispatcher;
+        this.dispatcher = null;
+
+        if (dispatcher != null) {
+            dispatcher.interrupt();
+
+            try {
+                dispatcher.join(10_000L);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    @Override
+    public boolean isRunning() {
+        return this.dispatcher != null;
+    }
+
+    private synchronized void scheduleOwnedPartitions() {
+        this.ownedPartitions = this.refreshOwnership.ownedPartitions();
+        this.enrollmentsPolledAt = System.currentTimeMillis();
+        this.authorizedClientStore.forEachBackgroundRefreshEnabled(this.ownedPartitions, Long.MIN_VALUE, (principalName) -> true, this::schedule);
+    }
+
+    private synchronized void rebalance() {
+        if (this.ownedPartitions == null) {
+            // not started yet, start() schedules every owned partition
+            return;
+        }
+
+        final BitSet ownedPartitions = this.refreshOwnership.ownedPartitions();
+        final long polledAt = System.currentTimeMillis();
+
+        // only a change of the owned partitions requires a scan, and only of the partitions gained
+        if (!ownedPartitions.equals(this.ownedPartitions)) {
+            for (String principalName : this.clientsToBeRefreshed.keys()) {
+                if (!ownedPartitions.get(EnrollmentPartitions.of(principalName))) {
+                    this.clientsToBeRefreshed.remove(principalName);
+                }
+            }
+
+            final BitSet gainedPartitions = (BitSet) ownedPartitions.clone();
+            gainedPartitions.andNot(this.ownedPartitions);
+
+            this.authorizedClientStore.forEachBackgroundRefreshEnabled(
+                    gainedPartitions,
+                    Long.MIN_VALUE,
+                    (principalName) -> !this.clientsToBeRefreshed.contains(principalName),
+                    this::schedule
+            );
+
+            this.ownedPartitions = ownedPartitions;
+        }
+
+        // pick up the enrollments made through other nodes since the last poll
+        this.authorizedClientStore.forEachBackgroundRefreshEnabled(
+                ownedPartitions,
+                this.enrollmentsPolledAt - ENROLLMENT_POLL_OVERLAP.toMillis(),
+                (principalName) -> !this.clientsToBeRefreshed.contains(principalName),
+                this::schedule
+        );
+
+        this.enrollmentsPolledAt = polledAt;
+    }
+
+    private void refreshExpiredTokens() {
+        while (!Thread.currentThread().isInterrupted()) {
+            OAuth2AuthorizedClient client = null;
+
+            try {
+                client = takeNextDueClient();
+
+                final OAuth2AuthorizedClient next = client;
+                // set if the lease was lost while the refresh was queued; the refresh isn't attempted then and is no failure of the issuer
+                final AtomicBoolean postponed = new AtomicBoolean();
+                final boolean submitted = this.refreshEngine.submit(
+                        issuerOf(next.getClientRegistration()),
+                        next.getPrincipalName(),
+                        () -> refreshClientIfLeaseHeld(next, postponed),
+                        (result) -> result == next && !postponed.get(),
+                        (result) -> {
+                            if (postponed.get()) {
+                                postpone(next.getPrincipalName(), issuedAt(next));
+                            } else {
+                                onRefreshCompletedSafe(next, result);
+                            }
+                        }
+                );
+
+                if (!submitted) {
+                    // the in-flight refresh reschedules the client once it completes
+                    LOG.debug("client={} is already being refreshed", next.getPrincipalName());
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+
+                if (client != null) {
+                    reschedule(client);
+                }
+            } catch (Exception e) {
+                LOG.warn("failed to dispatch refresh", e);
+
+                if (client != null) {
+                    retryLater(client);
+                }
+            }
+        }
+    }
+
+    private OAuth2AuthorizedClient refreshClientIfLeaseHeld(OAuth2AuthorizedClient client, AtomicBoolean postponed) {
+        if (!this.refreshOwnership.holdsLease(client.getPrincipalName())) {
+            postponed.set(true);
+            return client;
+        }
+
+        return refreshClientSafe(client);
+    }
+
+    private OAuth2AuthorizedClient refreshClientSafe(OAuth2AuthorizedClient client) {
+        final String principalName = client.getPrincipalName();
+        final Authentication authentication = new NameAuthentication(principalName);
+
+        if (isLogSampled()) {
+            LOG.debug("refreshing client={} (sampled)", principalName);
+        }
+
+        try {
+            return this.tokenRefreshCoordinator.refresh(client, authentication);
+        } catch (ClientAuthorizationException e) {
+            if (isTransientFailure(e)) {
+                // retried with backoff; logged at debug only since an issuer outage would otherwise flood the log
+                LOG.debug("refreshing client={} failed transiently", principalName, e);
+                return client;
+            }
+
+            LOG.warn("refreshing client={} resulted in exception", principalName, e);
+        } catch (Exception e) {
+            LOG.warn("refreshing client={} resulted in exception", principalName, e);
+        }
+
+        return null;
+    }
+
+    private void onRefreshCompletedSafe(OAuth2AuthorizedClient previous, OAuth2AuthorizedClient next) {
+        try {
+            onRefreshCompleted(previous, next);
+        } catch (Exception e) {
+            // the client has already been taken from the schedule; without this it would never be refreshed again
+            LOG.warn("failed to complete refresh of client={}", previous.getPrincipalName(), e);
+            retryLater(previous);
+        }
+    }
+
+    private void onRefreshCompleted(OAuth2AuthorizedClient previous, OAuth2AuthorizedClient next) {
+        final String principalName = previous.getPrincipalName();
+
+        if (next == previous) {
+            retryLater(previous);
+            this.refreshRetryCounter.increment();
+        } else if (next != null) {
+            reschedule(next);
+            this.refreshSuccessCounter.increment();
+
+            if (isLogSampled()) {
+                LOG.debug("refreshed client={} successfully (sampled)", principalName);
+            }
+        } else {
+            final String clientRegistrationId = previous.getClientRegistration().getRegistrationId();
+
+            // the client might have been refreshed elsewhere in the meantime, invalidating the refresh token we used
+            if (!this.authorizedClientStore.removeAuthorizedClient(clientRegistrationId, principalName, previous.getRefreshToken())) {
+                final OAuth2AuthorizedClient savedClient = this.authorizedClientStore.loadAuthorizedClient(clientRegistrationId, principalName);
+                if (savedClient != null) {
+                    reschedule(savedClient);
+                } else {
+                    this.clientsToBeRefreshed.remove(principalName);
+                }
+
+                return;
+            }
+
+            this.clientsToBeRefreshed.remove(principalName);
+            this.eventPublisher.publishEvent(new AccessTokenInvalidatedEvent(previous.getAccessToken().getTokenValue()));
+            this.refreshRemovedCounter.increment();
+            LOG.info("refreshing client={} returned null", principalName);
+        }
+    }
+
+    private OAuth2AuthorizedClient takeNextDueClient() throws InterruptedException {
+        while (true) {
+            final RefreshSchedule.Due due = this.clientsToBeRefreshed.takeDue();
+            final String clientRegistrationId = due.clientRegistrationId();
+            final String principalName = due.principalName();
+
+            // ownership may have moved or the enrollment may have been cancelled through another node
+            if (!this.refreshOwnership.owns(principalName)) {
+                this.clientsToBeRefreshed.remove(principalName);
+                continue;
+            }
+
+            // another node may still consider itself the owner until every node has acknowledged the current membership
+            if (!this.refreshOwnership.holdsLease(principalName)) {
+                postpone(principalName, due.issuedAt());
+                continue;
+            }
+
+            final boolean backgroundRefreshEnabled;
+            try {
+                backgroundRefreshEnabled = this.authorizedClientStore.isBackgroundRefreshEnabled(clientRegistrationId, principalName);
+            } catch (RuntimeException e) {
+                LOG.warn("failed to check the enrollment of client={} for refresh", principalName, e);
+                this.clientsToBeRefreshed.retry(principalName, this::retryDueAt);
+                continue;
+            }
+
+            if (!backgroundRefreshEnabled) {
+                this.clientsToBeRefreshed.remove(principalName);
+                continue;
+            }
+
+            final OAuth2AuthorizedClient client;
+            try {
+                client = this.authorizedClientStore.loadAuthorizedClient(clientRegistrationId, principalName);
+            } catch (RuntimeException e) {
+                LOG.warn("failed to load client={} for refresh", principalName, e);
+                this.clientsToBeRefreshed.retry(principalName, this::retryDueAt);
+                continue;
+            }
+
+            // the client may have been removed through another node
+            if (client == null) {
+                this.clientsToBeRefreshed.remove(principalName);
+                continue;
+            }
+
+            if (issuedAt(client) == due.issuedAt()) {
+                return client;
+            }
+
+            // refreshed elsewhere since it was scheduled; whoever refreshed it took care of the replaced tokens
+            reschedule(client);
+        }
+    }
+
+    private void schedule(OAuth2AuthorizedClient client) {
+        this.clientsToBeRefreshed.add(client.getPrincipalName(), client.getClientRegistration().getRegistrationId(), issuedAt(client), dueAt(client));
+    }
+
+    private void reschedule(OAuth2AuthorizedClient client) {
+        this.clientsToBeRefreshed.reschedule(client.getPrincipalName(), issuedAt(client), dueAt(client));
+    }
+
+    private void postpone(String principalName, long issuedAt) {
+        this.clientsToBeRefreshed.reschedule(principalName, issuedAt, System.currentTimeMillis() + LEASE_WAIT.toMillis());
+    }
+
+    private void retryLater(OAuth2AuthorizedClient client) {
+        final int failures = this.clientsToBeRefreshed.retry(client.getPrincipalName(), this::retryDueAt);
+
+        if (isLogSampled()) {
+            LOG.debug("retrying client={} after {} consecutive failures (sampled)", client.getPrincipalName(), failures);
+        }
+    }
+
+    private long retryDueAt(int failures) {
+        // exponential backoff, randomized to between half and all of the delay so that retries of clients failing together spread out
+        final long backoff = Math.min(this.retryMaxBackoffMillis, this.retryInitialBackoffMillis << Math.min(failures - 1, 30));
+        return System.currentTimeMillis() + ThreadLocalRandom.current().nextLong(backoff / 2L, backoff + 1L);
+    }
+
+    private static long issuedAt(OAuth2AuthorizedClient client) {
+        return client.getAccessToken().getIssuedAt().toEpochMilli();
+    }
+
+    private long dueAt(OAuth2AuthorizedClient client) {
+        final OAuth2AccessToken accessToken = client.getAccessToken();
+        final long issuedAt = accessToken.getIssuedAt().toEpochMilli();
+        final long dueAt = Math.min(
+                accessToken.getExpiresAt().minus(CLOCK_SKEW).toEpochMilli(),
+                issuedAt + MAX_TOKEN_AGE.toMillis()
+        );
+
+        // refresh a random amount of time early so that tokens issued together don't all hit the issuer at once;
+        // the jitter is capped to a quarter of the token's refresh interval to avoid refreshing short-lived tokens immediately
+        final long maxJitter = Math.min(this.jitterMillis, Math.max(0L, dueAt - issuedAt) / 4L);
+        if (maxJitter <= 0L) {
+            return dueAt;
+        }
+
+        return dueAt - ThreadLocalRandom.current().nextLong(maxJitter + 1L);
+    }
+
+    /**
+     * Per-refresh logging is too expensive at volume, so only one in {@code logSampleRate} refreshes is logged (at debug).
+     */
+    private boolean isLogSampled() {
+        return LOG.isDebugEnabled() && ThreadLocalRandom.current().nextInt(this.logSampleRate) == 0;
+    }
+
+    static boolean isTransientFailure(ClientAuthorizationException e) {
+        final String errorCode = e.getError().getErrorCode();
+        if (errorCode.equals(OAuth2ErrorCodes.SERVER_ERROR) || errorCode.equals(OAuth2ErrorCodes.TEMPORARILY_UNAVAILABLE)) {
+            return true;
+        }
+
+        // a token endpoint answering with 5xx or 429, or not answering at all, surfaces as invalid_token_response
+        for (Throwable cause = e.getCause(); cause != null; cause = cause.getCause()) {
+            if (cause instanceof ResourceAccessException || cause instanceof HttpServerErrorException || cause instanceof HttpClientErrorException.TooManyRequests) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    static String issuerOf(ClientRegistration clientRegistration) {
+        final String issuerUri = clientRegistration.getProviderDetails().getIssuerUri();
+        return issuerUri != null ? issuerUri : clientRegistration.getProviderDetails().getTokenUri();
+    }
+
+    private static Counter refreshCounter(MeterRegistry meterRegistry, String outcome) {
+        return Counter.builder("background.refresh.completed")
+                .description("Number of completed token refreshes")
+                .tag("outcome", outcome)
+                .register(meterRegistry);
+    }
+}
@@ -0,0 +1,152 @@
+package com.gw2auth.example.app.service.refresh;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Limits the concurrent refreshes against a single issuer and stops them entirely while the issuer is failing.
+ * <p>
+ * After {@code failureThreshold} consecutive transient failures the breaker opens and no refresh is admitted for the open duration,
+ * which doubles (up to {@code maxOpenDuration}) every time the breaker trips again without having recovered.
+ * Once the open duration has passed, refreshes are admitted one at a time and every success doubles the number of concurrent refreshes
+ * until {@code maxConcurrentRequests} is reached again (slow start). A transient failure while ramping up opens the breaker again.
+ */
+class IssuerCircuitBreaker {
+
+    enum State {
+        CLOSED,
+        OPEN,
+        RAMPING_UP
+    }
+
+    private final int maxConcurrentRequests;
+    private final int failureThreshold;
+    private final long minOpenNanos;
+    private final long maxOpenNanos;
+
+    private final ReentrantLock lock;
+    private final Condition capacityAvailable;
+
+    private State state;
+    private int limit;
+    private int inFlight;
+    private int consecutiveFailures;
+    private long openNanos;
+    private long openUntil;
+
+    IssuerCircuitBreaker(int maxConcurrentRequests, int failureThreshold, long minOpenMillis, long maxOpenMillis) {
+        this.maxConcurrentRequests = maxConcurrentRequests;
+        this.failureThreshold = failureThreshold;
+        this.minOpenNanos = TimeUnit.MILLISECONDS.toNanos(minOpenMillis);
+        this.maxOpenNanos = Math.max(this.minOpenNanos, TimeUnit.MILLISECONDS.toNanos(maxOpenMillis));
+
+        this.lock = new ReentrantLock();
+        this.capacityAvailable = this.lock.newCondition();
+
+        this.state = State.CLOSED;
+        this.limit = maxConcurrentRequests;
+        this.inFlight = 0;
+        this.consecutiveFailures = 0;
+        this.openNanos = this.minOpenNanos;
+        this.openUntil = 0L;
+    }
+
+    /**
+     * Waits until a refresh against the issuer may be started.
+     */
+    void acquire() throws InterruptedException {
+        this.lock.lockInterruptibly();
+        try {
+            while (true) {
+                if (this.state == State.OPEN) {
+                    final long remaining = this.openUntil - System.nanoTime();
+                    if (remaining > 0L) {
+                        this.capacityAvailable.awaitNanos(remaining);
+                        continue;
+                    }
+
+                    this.state = State.RAMPING_UP;
+                    this.limit = 1;
+                }
+
+                if (this.inFlight < this.limit) {
+                    this.inFlight++;
+                    return;
+                }
+
+                this.capacityAvailable.await();
+            }
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    /**
+     * Releases a refresh previously admitted by {@link #acquire()}.
+     *
+     * @param transientFailure whether the issuer failed in a way that indicates an outage (5xx, timeouts, ...)
+     */
+    void release(boolean transientFailure) {
+        this.lock.lock();
+        try {
+            this.inFlight--;
+
+            if (transientFailure) {
+                this.consecutiveFailures++;
+
+                if (this.state == State.RAMPING_UP || (this.state == State.CLOSED && this.consecutiveFailures >= this.failureThreshold)) {
+                    open();
+                }
+            } else {
+                this.consecutiveFailures = 0;
+
+                if (this.state == State.RAMPING_UP) {
+                    this.limit = Math.min(this.maxConcurrentRequests, this.limit * 2);
+
+                    if (this.limit >= this.maxConcurrentRequests) {
+                        this.state = State.CLOSED;
+                        this.openNanos = this.minOpenNanos;
+                    }
+                }
+            }
+
+            this.capacityAvailable.signalAll();
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    /**
+     * Releases an admitted refresh that did not reach the issuer.
+     */
+    void cancel() {
+        this.lock.lock();
+        try {
+            this.inFlight--;
+            this.capacityAvailable.signalAll();
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    State state() {
+        this.lock.lock();
+        try {
+            return this.state;
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    private void open() {
+        if (this.state == State.RAMPING_UP) {
+            // tripped again before recovering: back off longer
+            this.openNanos = Math.min(this.maxOpenNanos, this.openNanos * 2L);
+        }
+
+        this.state = State.OPEN;
+        this.limit = 0;
+        this.openUntil = System.nanoTime() + this.openNanos;
+    }
+}
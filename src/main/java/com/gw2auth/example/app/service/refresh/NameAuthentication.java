@@ -0,0 +1,25 @@
+package com.gw2auth.example.app.service.refresh;
+
+import org.springframework.security.authentication.AbstractAuthenticationToken;
+
+class NameAuthentication extends AbstractAuthenticationToken {
+
+    private static final long serialVersionUID = 1L;
+
+    private final String name;
+
+    NameAuthentication(String name) {
+        super(null);
+        this.name = name;
+    }
+
+    @Override
+    public Object getCredentials() {
+        return "";
+    }
+
+    @Override
+    public Object getPrincipal() {
+        return this.name;
+    }
+}
@@ -0,0 +1,149 @@
+package com.gw2auth.example.app.service.refresh;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+
+import java.time.Duration;
+import java.util.Set;
+import java.util.concurrent.*;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+
+/**
+ * Executes token refreshes on a bounded worker pool.
+ * <p>
+ * At most {@code maxConcurrentRequestsPerIssuer} refreshes are in flight against the same issuer at any time,
+ * and a principal is never refreshed twice concurrently.
+ * Refreshes against an issuer that keeps failing transiently are paused and ramped back up by an {@link IssuerCircuitBreaker}.
+ */
+public class RefreshEngine implements DisposableBean {
+
+    private static final Logger LOG = LoggerFactory.getLogger(RefreshEngine.class);
+
+    private final ExecutorService executor;
+    private final int maxConcurrentRequestsPerIssuer;
+    private final int circuitBreakerFailureThreshold;
+    private final long circuitBreakerOpenMillis;
+    private final long circuitBreakerMaxOpenMillis;
+    private final MeterRegistry meterRegistry;
+    private final ConcurrentMap<String, IssuerCircuitBreaker> circuitBreakers;
+    private final Set<String> inFlight;
+    private final Timer refreshTimer;
+
+    public RefreshEngine(int workers, int maxConcurrentRequestsPerIssuer, int circuitBreakerFailureThreshold, Duration circuitBreakerOpenDuration, Duration circuitBreakerMaxOpenDuration, MeterRegistry meterRegistry) {
+        this(workers, new CustomizableThreadFactory("background-refresh-"), maxConcurrentRequestsPerIssuer, circuitBreakerFailureThreshold, circuitBreakerOpenDuration, circuitBreakerMaxOpenDuration, meterRegistry);
+    }
+
+    public RefreshEngine(int workers, ThreadFactory threadFactory, int maxConcurrentRequestsPerIssuer, int circuitBreakerFailureThreshold, Duration circuitBreakerOpenDuration, Duration circuitBreakerMaxOpenDuration, MeterRegistry meterRegistry) {
+        if (workers < 1) {
+            throw new IllegalArgumentException("workers must be at least 1");
+        } else if (maxConcurrentRequestsPerIssuer < 1) {
+            throw new IllegalArgumentException("maxConcurrentRequestsPerIssuer must be at least 1");
+        } else if (circuitBreakerFailureThreshold < 1) {
+            throw new IllegalArgumentException("circuitBreakerFailureThreshold must be at least 1");
+        }
+
+        this.executor = Executors.newFixedThreadPool(workers, threadFactory);
+        this.maxConcurrentRequestsPerIssuer = maxConcurrentRequestsPerIssuer;
+        this.circuitBreakerFailureThreshold = circuitBreakerFailureThreshold;
+        this.circuitBreakerOpenMillis = circuitBreakerOpenDuration.toMillis();
+        this.circuitBreakerMaxOpenMillis = circuitBreakerMaxOpenDuration.toMillis();
+        this.meterRegistry = meterRegistry;
+        this.circuitBreakers = new ConcurrentHashMap<>();
+        this.inFlight = ConcurrentHashMap.newKeySet();
+        this.refreshTimer = Timer.builder("background.refresh.duration")
+                .description("Duration of a single token refresh")
+                .register(meterRegistry);
+
+        Gauge.builder("background.refresh.inflight", this.inFlight, Set::size)
+                .description("Number of token refreshes currently in flight")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Submits a refresh for the given principal key.
+     * Blocks until the issuer has capacity for another concurrent request, which includes waiting while its circuit breaker is open.
+     *
+     * @param transientFailure tells whether the task's result is a transient failure of the issuer; a task throwing counts as a non-transient failure
+     * @param completion receives the task's result on the worker, or null if the task threw; it should handle its own failures, exceptions are only logged
+     * @return false if a refresh for the same key is already in flight; the task is not executed in that case
+     */
+    public <T> boolean submit(String issuer, String key, Supplier<T> task, Predicate<T> transientFailure, Consumer<T> completion) throws InterruptedException {
+        if (!this.inFlight.add(key)) {
+            return false;
+        }
+
+        final IssuerCircuitBreaker circuitBreaker = this.circuitBreakers.computeIfAbsent(issuer, this::createCircuitBreaker);
+
+        try {
+            circuitBreaker.acquire();
+        } catch (InterruptedException e) {
+            this.inFlight.remove(key);
+            throw e;
+        }
+
+        try {
+            this.executor.execute(() -> {
+                T result = null;
+                boolean isTransientFailure = false;
+                try {
+                    result = this.refreshTimer.record(task);
+                    isTransientFailure = transientFailure.test(result);
+                } catch (RuntimeException e) {
+                    LOG.warn("refresh for key={} failed", key, e);
+                    result = null;
+                } finally {
+                    circuitBreaker.release(isTransientFailure);
+                    this.inFlight.remove(key);
+                    // the caller has already dequeued the key, so it must always learn about the outcome (even if the task threw an Error)
+                    complete(key, completion, result);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            circuitBreaker.cancel();
+            this.inFlight.remove(key);
+            throw e;
+        }
+
+        return true;
+    }
+
+    private static <T> void complete(String key, Consumer<T> completion, T result) {
+        try {
+            completion.accept(result);
+        } catch (RuntimeException e) {
+            LOG.warn("refresh completion for key={} failed", key, e);
+        }
+    }
+
+    private IssuerCircuitBreaker createCircuitBreaker(String issuer) {
+        final IssuerCircuitBreaker circuitBreaker = new IssuerCircuitBreaker(
+                this.maxConcurrentRequestsPerIssuer,
+                this.circuitBreakerFailureThreshold,
+                this.circuitBreakerOpenMillis,
+                this.circuitBreakerMaxOpenMillis
+        );
+
+        Gauge.builder("background.refresh.circuit.state", circuitBreaker, (v) -> v.state().ordinal())
+                .description("State of the issuer's circuit breaker (0=closed, 1=open, 2=ramping up)")
+                .tag("issuer", issuer)
+                .register(this.meterRegistry);
+
+        return circuitBreaker;
+    }
+
+    @Override
+    public void destroy() throws Exception {
+        this.executor.shutdown();
+
+        if (!this.executor.awaitTermination(10L, TimeUnit.SECONDS)) {
+            this.executor.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,51 @@
+package com.gw2auth.example.app.service.refresh;
+
+import com.gw2auth.example.app.service.store.EnrollmentPartitions;
+
+import java.util.BitSet;
+
+/**
+ * Decides which principals this node is responsible for refreshing in the background.
+ */
+public interface RefreshOwnership {
+
+    RefreshOwnership SINGLE_NODE = new RefreshOwnership() {
+        @Override
+        public boolean owns(String principalName) {
+            return true;
+        }
+
+        @Override
+        public boolean holdsLease(String principalName) {
+            return true;
+        }
+
+        @Override
+        public BitSet ownedPartitions() {
+            return EnrollmentPartitions.all();
+        }
+
+        @Override
+        public void addListener(Runnable listener) {
+
+        }
+    };
+
+    boolean owns(String principalName);
+
+    /**
+     * Whether this node owns the principal and may refresh it right now, i.e. no other node can still consider itself its owner.
+     * Checked right before a refresh token is spent, since only one of two concurrent refreshes with the same refresh token can succeed.
+     */
+    boolean holdsLease(String principalName);
+
+    /**
+     * The {@link EnrollmentPartitions partitions} this node owns; a principal is owned if and only if its partition is.
+     */
+    BitSet ownedPartitions();
+
+    /**
+     * Registers a listener that is invoked whenever the ownership might have changed.
+     */
+    void addListener(Runnable listener);
+}
@@ -0,0 +1,304 @@
+package com.gw2auth.example.app.service.refresh;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.IntToLongFunction;
+
+/**
+ * Schedule of enrolled clients, ordered by the time their next refresh is due.
+ * <p>
+ * Enrollment lookups are lock-free. The ordering is kept in a binary heap indexed by principal,
+ * so scheduling, rescheduling and cancellation are all O(log n) under a short-lived lock.
+ * An entry that has been taken stays enrolled but is no longer queued until it is rescheduled.
+ * Each entry also tracks the number of consecutive failed refreshes, which drives the retry backoff.
+ * <p>
+ * Entries only hold the principal, the (interned) registration id, the issue time of the scheduled access token and the due time;
+ * the full client is loaded from the store once it is due, so that the schedule does not keep every enrolled client's tokens on the heap.
+ * The issue time tells whether the stored client has been refreshed elsewhere since it was scheduled.
+ */
+public final class RefreshSchedule {
+
+    private final ConcurrentMap<String, Entry> entries;
+    private final ReentrantLock lock;
+    private final Condition headChanged;
+    private Entry[] heap;
+    private int size;
+
+    public RefreshSchedule() {
+        this.entries = new ConcurrentHashMap<>();
+        this.lock = new ReentrantLock();
+        this.headChanged = this.lock.newCondition();
+        this.heap = new Entry[128];
+        this.size = 0;
+    }
+
+    public boolean contains(String key) {
+        return this.entries.containsKey(key);
+    }
+
+    public int size() {
+        return this.entries.size();
+    }
+
+    public Set<String> keys() {
+        return Collections.unmodifiableSet(this.entries.keySet());
+    }
+
+    /**
+     * @return the due time of the next queued client, or {@link Long#MAX_VALUE} if none is queued
+     */
+    public long headDueAt() {
+        this.lock.lock();
+        try {
+            return this.size < 1 ? Long.MAX_VALUE : this.heap[0].dueAt;
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    /**
+     * Enrolls the key if it is not enrolled yet.
+     *
+     * @return true if the key was newly enrolled
+     */
+    public boolean add(String key, String clientRegistrationId, long issuedAt, long dueAt) {
+        final Entry entry = new Entry(key, clientRegistrationId.intern(), issuedAt, dueAt);
+        if (this.entries.putIfAbsent(key, entry) != null) {
+            return false;
+        }
+
+        this.lock.lock();
+        try {
+            // the entry might have been removed or rescheduled concurrently before we acquired the lock
+            if (this.entries.get(key) == entry && entry.index < 0) {
+                insert(entry);
+                signalIfHead(entry);
+            }
+        } finally {
+            this.lock.unlock();
+        }
+
+        return true;
+    }
+
+    /**
+     * Cancels the enrollment of the key.
+     *
+     * @return true if the key was enrolled
+     */
+    public boolean remove(String key) {
+        final Entry entry = this.entries.remove(key);
+        if (entry == null) {
+            return false;
+        }
+
+        this.lock.lock();
+        try {
+            if (entry.index >= 0) {
+                removeAt(entry.index);
+            }
+        } finally {
+            this.lock.unlock();
+        }
+
+        return true;
+    }
+
+    /**
+     * Queues the enrolled key again for the access token issued at the given time, and resets its failure count.
+     * Does nothing if the key is not (or no longer) enrolled.
+     */
+    public void reschedule(String key, long issuedAt, long dueAt) {
+        this.lock.lock();
+        try {
+            final Entry entry = this.entries.get(key);
+            if (entry == null) {
+                return;
+            }
+
+            entry.issuedAt = issuedAt;
+            entry.failures = 0;
+            requeue(entry, dueAt);
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    /**
+     * Counts a failed refresh of the enrolled key and queues it again.
+     * Does nothing if the key is not (or no longer) enrolled.
+     *
+     * @param dueAtForFailures computes the due time from the number of consecutive failures (including this one)
+     * @return the number of consecutive failures, or 0 if the key is not enrolled
+     */
+    public int retry(String key, IntToLongFunction dueAtForFailures) {
+        this.lock.lock();
+        try {
+            final Entry entry = this.entries.get(key);
+            if (entry == null) {
+                return 0;
+            }
+
+            if (entry.failures < Integer.MAX_VALUE) {
+                entry.failures++;
+            }
+
+            requeue(entry, dueAtForFailures.applyAsLong(entry.failures));
+            return entry.failures;
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    /**
+     * Waits until the entry with the earliest due time is due and dequeues it.
+     * Wakes up early whenever an entry with an earlier due time is scheduled.
+     * The key remains enrolled.
+     */
+    public Due takeDue() throws InterruptedException {
+        this.lock.lockInterruptibly();
+        try {
+            while (true) {
+                if (this.size < 1) {
+                    this.headChanged.await();
+                } else {
+                    final long delay = this.heap[0].dueAt - System.currentTimeMillis();
+                    if (delay <= 0L) {
+                        final Entry entry = this.heap[0];
+                        removeAt(0);
+
+                        return new Due(entry.key, entry.clientRegistrationId, entry.issuedAt);
+                    }
+
+                    this.headChanged.await(delay, TimeUnit.MILLISECONDS);
+                }
+            }
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    private void requeue(Entry entry, long dueAt) {
+        entry.dueAt = dueAt;
+
+        if (entry.index < 0) {
+            insert(entry);
+        } else if (!siftUp(entry.index)) {
+            siftDown(entry.index);
+        }
+
+        signalIfHead(entry);
+    }
+
+    private void signalIfHead(Entry entry) {
+        if (entry.index == 0) {
+            this.headChanged.signal();
+        }
+    }
+
+    // region heap
+    private void insert(Entry entry) {
+        if (this.size == this.heap.length) {
+            this.heap = Arrays.copyOf(this.heap, this.heap.length * 2);
+        }
+
+        final int index = this.size++;
+        this.heap[index] = entry;
+        entry.index = index;
+        siftUp(index);
+    }
+
+    private void removeAt(int index) {
+        final Entry removed = this.heap[index];
+        final int last = --this.size;
+
+        if (index != last) {
+            move(this.heap[last], index);
+            this.heap[last] = null;
+
+            if (!siftUp(index)) {
+                siftDown(index);
+            }
+        } else {
+            this.heap[last] = null;
+        }
+
+        removed.index = -1;
+    }
+
+    private boolean siftUp(int index) {
+        final Entry entry = this.heap[index];
+        final int start = index;
+
+        while (index > 0) {
+            final int parent = (index - 1) >>> 1;
+            if (this.heap[parent].dueAt <= entry.dueAt) {
+                break;
+            }
+
+            move(this.heap[parent], index);
+            index = parent;
+        }
+
+        move(entry, index);
+        return index != start;
+    }
+
+    private void siftDown(int index) {
+        final Entry entry = this.heap[index];
+        final int half = this.size >>> 1;
+
+        while (index < half) {
+            int child = (index << 1) + 1;
+            final int right = child + 1;
+
+            if (right < this.size && this.heap[right].dueAt < this.heap[child].dueAt) {
+                child = right;
+            }
+
+            if (entry.dueAt <= this.heap[child].dueAt) {
+                break;
+            }
+
+            move(this.heap[child], index);
+            index = child;
+        }
+
+        move(entry, index);
+    }
+
+    private void move(Entry entry, int index) {
+        this.heap[index] = entry;
+        entry.index = index;
+    }
+    // endregion
+
+    public record Due(String principalName, String clientRegistrationId, long issuedAt) {
+
+    }
+
+    private static final class Entry {
+
+        private final String key;
+        private final String clientRegistrationId;
+        private long issuedAt;
+        private long dueAt;
+        private int index;
+        private int failures;
+
+        private Entry(String key, String clientRegistrationId, long issuedAt, long dueAt) {
+            this.key = key;
+            this.clientRegistrationId = clientRegistrationId;
+            this.issuedAt = issuedAt;
+            this.dueAt = dueAt;
+            this.index = -1;
+            this.failures = 0;
+        }
+    }
+}
@@ -0,0 +1,185 @@
+package com.gw2auth.example.app.service.refresh;
+
+import com.gw2auth.example.app.service.AccessTokenInvalidatedEvent;
+import com.gw2auth.example.app.service.revocation.TokenRevocationPipeline;
+import com.gw2auth.example.app.service.store.AuthorizedClientStore;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.oauth2.client.ClientAuthorizationException;
+import org.springframework.security.oauth2.client.OAuth2AuthorizationContext;
+import org.springframework.security.oauth2.client.OAuth2AuthorizedClient;
+import org.springframework.security.oauth2.client.RefreshTokenOAuth2AuthorizedClientProvider;
+import org.springframework.security.oauth2.core.OAuth2ErrorCodes;
+import org.springframework.stereotype.Component;
+
+import java.lang.reflect.Field;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Refreshes authorized clients with at most one refresh per principal in flight.
+ * <p>
+ * Callers asking to refresh a client that is already being refreshed wait for that refresh and receive its result.
+ * A caller holding a client that has already been refreshed by someone else receives the stored client instead
+ * of spending (and thereby invalidating) the refresh token a second time.
+ */
+@Component
+public class TokenRefreshCoordinator {
+
+    private static final Set<String> KNOWN_ERROR_CODES = knownErrorCodes();
+
+    private final AuthorizedClientStore authorizedClientStore;
+    private final RefreshTokenOAuth2AuthorizedClientProvider refreshTokenOAuth2AuthorizedClientProvider;
+    private final TokenRevocationPipeline tokenRevocationPipeline;
+    private final ApplicationEventPublisher eventPublisher;
+    private final ConcurrentMap<String, CompletableFuture<OAuth2AuthorizedClient>> inFlight;
+    private final Counter coalescedCounter;
+    private final MeterRegistry meterRegistry;
+
+    @Autowired
+    public TokenRefreshCoordinator(AuthorizedClientStore authorizedClientStore,
+                                   RefreshTokenOAuth2AuthorizedClientProvider refreshTokenOAuth2AuthorizedClientProvider,
+                                   TokenRevocationPipeline tokenRevocationPipeline,
+                                   ApplicationEventPublisher eventPublisher,
+                                   MeterRegistry meterRegistry) {
+
+        this.authorizedClientStore = authorizedClientStore;
+        this.refreshTokenOAuth2AuthorizedClientProvider = refreshTokenOAuth2AuthorizedClientProvider;
+        this.tokenRevocationPipeline = tokenRevocationPipeline;
+        this.eventPublisher = eventPublisher;
+        this.inFlight = new ConcurrentHashMap<>();
+        this.coalescedCounter = Counter.builder("token.refresh.coalesced")
+                .description("Number of refreshes that were served by another refresh of the same client")
+                .register(meterRegistry);
+        this.meterRegistry = meterRegistry;
+    }
+
+    /**
+     * Refreshes the client and saves the result.
+     *
+     * @return the refreshed client, or null if the client could not be refreshed
+     */
+    public OAuth2AuthorizedClient refresh(OAuth2AuthorizedClient client, Authentication principal) {
+        return refresh(client, principal, false);
+    }
+
+    /**
+     * Refreshes the client and saves the result.
+     *
+     * @param revokeReplacedIfEnrolled whether the replaced tokens should be revoked if the client is enrolled for background refresh;
+     *                                 used for refreshes outside the background refresh, since the background refresh schedule does not keep the tokens around
+     * @return the refreshed client, or null if the client could not be refreshed
+     */
+    public OAuth2AuthorizedClient refresh(OAuth2AuthorizedClient client, Authentication principal, boolean revokeReplacedIfEnrolled) {
+        final String clientRegistrationId = client.getClientRegistration().getRegistrationId();
+        final String principalName = client.getPrincipalName();
+        final String key = clientRegistrationId + ':' + principalName;
+
+        final CompletableFuture<OAuth2AuthorizedClient> future = new CompletableFuture<>();
+        final CompletableFuture<OAuth2AuthorizedClient> existing = this.inFlight.putIfAbsent(key, future);
+
+        if (existing != null) {
+            this.coalescedCounter.increment();
+            return join(existing);
+        }
+
+        try {
+            final OAuth2AuthorizedClient result;
+            final OAuth2AuthorizedClient savedClient = this.authorizedClientStore.loadAuthorizedClient(clientRegistrationId, principalName);
+
+            if (savedClient != null && !savedClient.getAccessToken().getTokenValue().equals(client.getAccessToken().getTokenValue())) {
+                // someone else refreshed this client after the caller loaded it
+                this.coalescedCounter.increment();
+                result = savedClient;
+            } else {
+                result = authorizeTimed(client, principal);
+
+                if (result != null) {
+                    this.authorizedClientStore.saveAuthorizedClient(result, principal);
+                    this.eventPublisher.publishEvent(new AccessTokenInvalidatedEvent(client.getAccessToken().getTokenValue()));
+
+                    if (revokeReplacedIfEnrolled && this.authorizedClientStore.isBackgroundRefreshEnabled(clientRegistrationId, principalName)) {
+                        this.tokenRevocationPipeline.revoke(client);
+                    }
+                }
+            }
+
+            future.complete(result);
+            return result;
+        } catch (RuntimeException | Error e) {
+            future.completeExceptionally(e);
+            throw e;
+        } finally {
+            this.inFlight.remove(key, future);
+        }
+    }
+
+    private OAuth2AuthorizedClient authorizeTimed(OAuth2AuthorizedClient client, Authentication principal) {
+        final Timer.Sample sample = Timer.start(this.meterRegistry);
+        String outcome = "error";
+        String error = "none";
+
+        try {
+            final OAuth2AuthorizedClient result = this.refreshTokenOAuth2AuthorizedClientProvider.authorize(
+                    OAuth2AuthorizationContext.withAuthorizedClient(client)
+                            .principal(principal)
+                            .build()
+            );
+
+            outcome = result != null ? "success" : "declined";
+            return result;
+        } catch (ClientAuthorizationException e) {
+            final String errorCode = e.getError().getErrorCode();
+            error = KNOWN_ERROR_CODES.contains(errorCode) ? errorCode : "other";
+            throw e;
+        } catch (RuntimeException e) {
+            error = "exception";
+            throw e;
+        } finally {
+            sample.stop(Timer.builder("token.refresh")
+                    .description("Duration of token refreshes against the issuer by outcome and OAuth2 error code")
+                    .tag("outcome", outcome)
+                    .tag("error", error)
+                    .register(this.meterRegistry));
+        }
+    }
+
+    private static OAuth2AuthorizedClient join(CompletableFuture<OAuth2AuthorizedClient> future) {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            } else if (e.getCause() instanceof Error cause) {
+                throw cause;
+            }
+
+            throw e;
+        }
+    }
+
+    private static Set<String> knownErrorCodes() {
+        // bounds the cardinality of the error tag to the codes defined by the spec
+        final Set<String> result = new HashSet<>();
+        for (Field field : OAuth2ErrorCodes.class.getFields()) {
+            try {
+                result.add((String) field.get(null));
+            } catch (IllegalAccessException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+
+        // used by the framework for responses that are not valid token responses (e.g. 5xx)
+        result.add("invalid_token_response");
+
+        return Set.copyOf(result);
+    }
+}
@@ -0,0 +1,207 @@
+package com.gw2auth.example.app.service.revocation;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.http.MediaType;
+import org.springframework.http.RequestEntity;
+import org.springframework.http.ResponseEntity;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.security.oauth2.client.OAuth2AuthorizedClient;
+import org.springframework.security.oauth2.client.registration.ClientRegistration;
+import org.springframework.security.oauth2.core.OAuth2Token;
+import org.springframework.security.oauth2.core.endpoint.OAuth2ParameterNames;
+import org.springframework.util.LinkedMultiValueMap;
+import org.springframework.util.MultiValueMap;
+import org.springframework.web.client.HttpClientErrorException;
+import org.springframework.web.client.HttpServerErrorException;
+import org.springframework.web.client.ResourceAccessException;
+import org.springframework.web.client.RestOperations;
+
+import java.time.Duration;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Revokes tokens asynchronously on its own worker pool.
+ * <p>
+ * Each token is revoked independently, so revocations of many stale tokens run concurrently.
+ * Failed revocations are retried with exponential backoff; revocations that are rejected because the queue is full,
+ * fail permanently, or run out of attempts are written to the {@code ...revocation.dead-letter} log.
+ */
+public class TokenRevocationPipeline implements DisposableBean {
+
+    private static final Logger LOG = LoggerFactory.getLogger(TokenRevocationPipeline.class);
+    private static final Logger DEAD_LETTER_LOG = LoggerFactory.getLogger(TokenRevocationPipeline.class.getPackageName() + ".dead-letter");
+
+    private final RestOperations restOperations;
+    private final ScheduledThreadPoolExecutor executor;
+    private final int queueCapacity;
+    private final int maxAttempts;
+    private final long initialBackoffMillis;
+    private final long maxBackoffMillis;
+    private final AtomicInteger pending;
+
+    private final Counter revokedCounter;
+    private final Counter retriedCounter;
+    private final Counter deadLetterCounter;
+
+    public TokenRevocationPipeline(RestOperations restOperations, int workers, int queueCapacity, int maxAttempts, Duration initialBackoff, Duration maxBackoff, MeterRegistry meterRegistry) {
+        this(restOperations, workers, new CustomizableThreadFactory("token-revocation-"), queueCapacity, maxAttempts, initialBackoff, maxBackoff, meterRegistry);
+    }
+
+    public TokenRevocationPipeline(RestOperations restOperations, int workers, ThreadFactory threadFactory, int queueCapacity, int maxAttempts, Duration initialBackoff, Duration maxBackoff, MeterRegistry meterRegistry) {
+        if (workers < 1) {
+            throw new IllegalArgumentException("workers must be at least 1");
+        } else if (queueCapacity < 1) {
+            throw new IllegalArgumentException("queueCapacity must be at least 1");
+        } else if (maxAttempts < 1) {
+            throw new IllegalArgumentException("maxAttempts must be at least 1");
+        }
+
+        this.restOperations = restOperations;
+        this.executor = new ScheduledThreadPoolExecutor(workers, threadFactory);
+        this.executor.setExecuteExistingDelayedTasksAfterShutdownPolicy(false);
+        this.executor.setRemoveOnCancelPolicy(true);
+        this.queueCapacity = queueCapacity;
+        this.maxAttempts = maxAttempts;
+        this.initialBackoffMillis = initialBackoff.toMillis();
+        this.maxBackoffMillis = maxBackoff.toMillis();
+        this.pending = new AtomicInteger();
+
+        this.revokedCounter = revocationCounter(meterRegistry, "revoked");
+        this.retriedCounter = revocationCounter(meterRegistry, "retry");
+        this.deadLetterCounter = revocationCounter(meterRegistry, "dead_letter");
+
+        Gauge.builder("token.revocation.pending", this.pending, AtomicInteger::get)
+                .description("Number of token revocations waiting to be sent or retried")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Queues the revocation of the client's access token and refresh token. Never blocks.
+     */
+    public void revoke(OAuth2AuthorizedClient client) {
+        final ClientRegistration clientRegistration = client.getClientRegistration();
+
+        revoke(clientRegistration, client.getAccessToken(), OAuth2ParameterNames.ACCESS_TOKEN);
+
+        if (client.getRefreshToken() != null) {
+            revoke(clientRegistration, client.getRefreshToken(), OAuth2ParameterNames.REFRESH_TOKEN);
+        }
+    }
+
+    private void revoke(ClientRegistration clientRegistration, OAuth2Token token, String tokenTypeHint) {
+        final Revocation revocation = new Revocation(clientRegistration, token.getTokenValue(), tokenTypeHint);
+
+        if (this.pending.incrementAndGet() > this.queueCapacity) {
+            this.pending.decrementAndGet();
+            deadLetter(revocation, 0, "queue full");
+            return;
+        }
+
+        try {
+            this.executor.execute(() -> attempt(revocation, 1));
+        } catch (RuntimeException e) {
+            this.pending.decrementAndGet();
+            deadLetter(revocation, 0, "rejected: " + e);
+        }
+    }
+
+    private void attempt(Revocation revocation, int attempt) {
+        final ClientRegistration clientRegistration = revocation.clientRegistration();
+
+        final MultiValueMap<String, String> params = new LinkedMultiValueMap<>();
+        params.add(OAuth2ParameterNames.CLIENT_ID, clientRegistration.getClientId());
+        params.add(OAuth2ParameterNames.CLIENT_SECRET, clientRegistration.getClientSecret());
+        params.add(OAuth2ParameterNames.TOKEN_TYPE_HINT, revocation.tokenTypeHint());
+        params.add(OAuth2ParameterNames.TOKEN, revocation.tokenValue());
+
+        final ResponseEntity<Void> responseEntity;
+        try {
+            responseEntity = this.restOperations.exchange(
+                    RequestEntity.post(clientRegistration.getProviderDetails().getIssuerUri() + "/oauth2/revoke")
+                            .contentType(MediaType.APPLICATION_FORM_URLENCODED)
+                            .body(params),
+                    Void.class
+            );
+        } catch (ResourceAccessException | HttpServerErrorException | HttpClientErrorException.TooManyRequests e) {
+            retryOrDeadLetter(revocation, attempt, e);
+            return;
+        } catch (Exception e) {
+            this.pending.decrementAndGet();
+            deadLetter(revocation, attempt, e.toString());
+            return;
+        }
+
+        this.pending.decrementAndGet();
+        this.revokedCounter.increment();
+        LOG.debug("revoked token; got status={}", responseEntity.getStatusCode().value());
+    }
+
+    private void retryOrDeadLetter(Revocation revocation, int attempt, Exception e) {
+        if (attempt >= this.maxAttempts) {
+            this.pending.decrementAndGet();
+            deadLetter(revocation, attempt, e.toString());
+            return;
+        }
+
+        LOG.debug("failed to revoke token (attempt {}/{}), retrying", attempt, this.maxAttempts, e);
+
+        try {
+            this.executor.schedule(() -> attempt(revocation, attempt + 1), backoffMillis(attempt), TimeUnit.MILLISECONDS);
+            this.retriedCounter.increment();
+        } catch (RuntimeException rejected) {
+            this.pending.decrementAndGet();
+            deadLetter(revocation, attempt, e.toString());
+        }
+    }
+
+    private long backoffMillis(int attempt) {
+        // exponential backoff, randomized to between half and all of the delay
+        final long backoff = Math.min(this.maxBackoffMillis, this.initialBackoffMillis << Math.min(attempt - 1, 30));
+        return ThreadLocalRandom.current().nextLong(backoff / 2L, backoff + 1L);
+    }
+
+    private void deadLetter(Revocation revocation, int attempts, String reason) {
+        this.deadLetterCounter.increment();
+        DEAD_LETTER_LOG.warn(
+                "failed to revoke token; registration={} tokenTypeHint={} attempts={} reason={}",
+                revocation.clientRegistration().getRegistrationId(),
+                revocation.tokenTypeHint(),
+                attempts,
+                reason
+        );
+    }
+
+    @Override
+    public void destroy() throws Exception {
+        this.executor.shutdown();
+
+        if (!this.executor.awaitTermination(10L, TimeUnit.SECONDS)) {
+            this.executor.shutdownNow();
+        }
+
+        final int remaining = this.pending.get();
+        if (remaining > 0) {
+            DEAD_LETTER_LOG.warn("dropped {} pending token revocations on shutdown", remaining);
+        }
+    }
+
+    private static Counter revocationCounter(MeterRegistry meterRegistry, String outcome) {
+        return Counter.builder("token.revocation.completed")
+                .description("Number of token revocation attempts by outcome")
+                .tag("outcome", outcome)
+                .register(meterRegistry);
+    }
+
+    private record Revocation(ClientRegistration clientRegistration, String tokenValue, String tokenTypeHint) {
+
+    }
+}
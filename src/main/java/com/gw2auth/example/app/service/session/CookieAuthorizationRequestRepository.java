@@ -0,0 +1,131 @@
+package com.gw2auth.example.app.service.session;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.security.oauth2.client.web.AuthorizationRequestRepository;
+import org.springframework.security.oauth2.core.endpoint.OAuth2AuthorizationRequest;
+import org.springframework.security.oauth2.core.endpoint.OAuth2ParameterNames;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.Duration;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Keeps the pending authorization request in an encrypted cookie instead of the servlet session,
+ * so that the authorization response may arrive at any node.
+ */
+public class CookieAuthorizationRequestRepository implements AuthorizationRequestRepository<OAuth2AuthorizationRequest> {
+
+    public static final String COOKIE_NAME = "AUTHORIZATION_REQUEST";
+
+    private final CookieCipher cookieCipher;
+    private final ObjectMapper objectMapper;
+    private final Duration maxAge;
+
+    public CookieAuthorizationRequestRepository(CookieCipher cookieCipher, ObjectMapper objectMapper, Duration maxAge) {
+        this.cookieCipher = cookieCipher;
+        this.objectMapper = objectMapper;
+        this.maxAge = maxAge;
+    }
+
+    @Override
+    public OAuth2AuthorizationRequest loadAuthorizationRequest(HttpServletRequest request) {
+        final String state = request.getParameter(OAuth2ParameterNames.STATE);
+        if (state == null) {
+            return null;
+        }
+
+        final OAuth2AuthorizationRequest authorizationRequest = readAuthorizationRequest(request);
+        return authorizationRequest != null && state.equals(authorizationRequest.getState()) ? authorizationRequest : null;
+    }
+
+    @Override
+    public void saveAuthorizationRequest(OAuth2AuthorizationRequest authorizationRequest, HttpServletRequest request, HttpServletResponse response) {
+        if (authorizationRequest == null) {
+            Cookies.delete(request, response, COOKIE_NAME);
+            return;
+        }
+
+        final Payload payload = new Payload(
+                authorizationRequest.getAuthorizationUri(),
+                authorizationRequest.getClientId(),
+                authorizationRequest.getRedirectUri(),
+                authorizationRequest.getScopes(),
+                authorizationRequest.getState(),
+                authorizationRequest.getAdditionalParameters(),
+                authorizationRequest.getAttributes(),
+                authorizationRequest.getAuthorizationRequestUri()
+        );
+
+        final byte[] plaintext;
+        try {
+            plaintext = this.objectMapper.writeValueAsBytes(payload);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+
+        Cookies.write(request, response, COOKIE_NAME, this.cookieCipher.encrypt(COOKIE_NAME, plaintext), this.maxAge);
+    }
+
+    @Override
+    public OAuth2AuthorizationRequest removeAuthorizationRequest(HttpServletRequest request, HttpServletResponse response) {
+        final OAuth2AuthorizationRequest authorizationRequest = loadAuthorizationRequest(request);
+        if (authorizationRequest != null) {
+            Cookies.delete(request, response, COOKIE_NAME);
+        }
+
+        return authorizationRequest;
+    }
+
+    @Override
+    @Deprecated
+    public OAuth2AuthorizationRequest removeAuthorizationRequest(HttpServletRequest request) {
+        // the cookie cannot be deleted without the response; it expires on its own
+        return loadAuthorizationRequest(request);
+    }
+
+    private OAuth2AuthorizationRequest readAuthorizationRequest(HttpServletRequest request) {
+        final String value = Cookies.find(request, COOKIE_NAME);
+        if (value == null) {
+            return null;
+        }
+
+        final byte[] plaintext = this.cookieCipher.decrypt(COOKIE_NAME, value);
+        if (plaintext == null) {
+            return null;
+        }
+
+        final Payload payload;
+        try {
+            payload = this.objectMapper.readValue(plaintext, Payload.class);
+        } catch (IOException e) {
+            return null;
+        }
+
+        return OAuth2AuthorizationRequest.authorizationCode()
+                .authorizationUri(payload.authorizationUri())
+                .clientId(payload.clientId())
+                .redirectUri(payload.redirectUri())
+                .scopes(payload.scopes())
+                .state(payload.state())
+                .additionalParameters(payload.additionalParameters())
+                .attributes(payload.attributes())
+                .authorizationRequestUri(payload.authorizationRequestUri())
+                .build();
+    }
+
+    private record Payload(@JsonProperty("authorizationUri") String authorizationUri,
+                           @JsonProperty("clientId") String clientId,
+                           @JsonProperty("redirectUri") String redirectUri,
+                           @JsonProperty("scopes") Set<String> scopes,
+                           @JsonProperty("state") String state,
+                           @JsonProperty("additionalParameters") Map<String, Object> additionalParameters,
+                           @JsonProperty("attributes") Map<String, Object> attributes,
+                           @JsonProperty("authorizationRequestUri") String authorizationRequestUri) {
+
+    }
+}
@@ -0,0 +1,84 @@
+package com.gw2auth.example.app.service.session;
+
+import javax.crypto.Cipher;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.Base64;
+
+/**
+ * Encrypts and authenticates cookie values with AES-GCM.
+ * <p>
+ * The cookie name is bound to the value as associated data, so a value cannot be moved from one cookie to another.
+ * Every node that shares the secret can read the cookies written by any other.
+ */
+public class CookieCipher {
+
+    private static final String TRANSFORMATION = "AES/GCM/NoPadding";
+    private static final int IV_LENGTH = 12;
+    private static final int TAG_LENGTH_BITS = 128;
+
+    private final SecretKey key;
+    private final SecureRandom secureRandom;
+
+    public CookieCipher(String secret) {
+        if (secret == null || secret.isBlank()) {
+            throw new IllegalArgumentException("secret must not be empty");
+        }
+
+        try {
+            this.key = new SecretKeySpec(MessageDigest.getInstance("SHA-256").digest(secret.getBytes(StandardCharsets.UTF_8)), "AES");
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException(e);
+        }
+
+        this.secureRandom = new SecureRandom();
+    }
+
+    public String encrypt(String cookieName, byte[] plaintext) {
+        final byte[] iv = new byte[IV_LENGTH];
+        this.secureRandom.nextBytes(iv);
+
+        final byte[] ciphertext;
+        try {
+            final Cipher cipher = Cipher.getInstance(TRANSFORMATION);
+            cipher.init(Cipher.ENCRYPT_MODE, this.key, new GCMParameterSpec(TAG_LENGTH_BITS, iv));
+            cipher.updateAAD(cookieName.getBytes(StandardCharsets.UTF_8));
+            ciphertext = cipher.doFinal(plaintext);
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("failed to encrypt cookie " + cookieName, e);
+        }
+
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(ByteBuffer.allocate(iv.length + ciphertext.length).put(iv).put(ciphertext).array());
+    }
+
+    /**
+     * @return the plaintext, or null if the value was not produced by {@link #encrypt(String, byte[])} for this cookie with the same secret
+     */
+    public byte[] decrypt(String cookieName, String value) {
+        final byte[] bytes;
+        try {
+            bytes = Base64.getUrlDecoder().decode(value);
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+
+        if (bytes.length < IV_LENGTH + TAG_LENGTH_BITS / 8) {
+            return null;
+        }
+
+        try {
+            final Cipher cipher = Cipher.getInstance(TRANSFORMATION);
+            cipher.init(Cipher.DECRYPT_MODE, this.key, new GCMParameterSpec(TAG_LENGTH_BITS, bytes, 0, IV_LENGTH));
+            cipher.updateAAD(cookieName.getBytes(StandardCharsets.UTF_8));
+            return cipher.doFinal(bytes, IV_LENGTH, bytes.length - IV_LENGTH);
+        } catch (GeneralSecurityException e) {
+            return null;
+        }
+    }
+}
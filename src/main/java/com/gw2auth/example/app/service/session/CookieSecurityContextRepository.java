@@ -0,0 +1,175 @@
+package com.gw2auth.example.app.service.session;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+import org.springframework.security.core.context.SecurityContext;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.security.oauth2.client.authentication.OAuth2AuthenticationToken;
+import org.springframework.security.oauth2.core.user.DefaultOAuth2User;
+import org.springframework.security.web.context.HttpRequestResponseHolder;
+import org.springframework.security.web.context.SaveContextOnUpdateOrErrorResponseWrapper;
+import org.springframework.security.web.context.SecurityContextRepository;
+import org.springframework.web.util.WebUtils;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Keeps the authentication in an encrypted cookie instead of the servlet session.
+ * <p>
+ * The cookie only holds the principal name, its authorities and the client registration id,
+ * which is also the reference to the principal's authorized client in the {@link com.gw2auth.example.app.service.store.AuthorizedClientStore}.
+ * The cookie is written when the authentication changes (i.e. on login) and deleted when it is cleared.
+ */
+public class CookieSecurityContextRepository implements SecurityContextRepository {
+
+    public static final String COOKIE_NAME = "AUTHENTICATION";
+    private static final String NAME_ATTRIBUTE = "sub";
+
+    private final CookieCipher cookieCipher;
+    private final ObjectMapper objectMapper;
+    private final Duration maxAge;
+    private final Clock clock;
+
+    public CookieSecurityContextRepository(CookieCipher cookieCipher, ObjectMapper objectMapper, Duration maxAge) {
+        this(cookieCipher, objectMapper, maxAge, Clock.systemUTC());
+    }
+
+    public CookieSecurityContextRepository(CookieCipher cookieCipher, ObjectMapper objectMapper, Duration maxAge, Clock clock) {
+        this.cookieCipher = cookieCipher;
+        this.objectMapper = objectMapper;
+        this.maxAge = maxAge;
+        this.clock = clock;
+    }
+
+    @Override
+    // the save-on-commit contract of SecurityContextPersistenceFilter, which this application uses with Spring Security 5.7
+    @SuppressWarnings("deprecation")
+    public SecurityContext loadContext(HttpRequestResponseHolder requestResponseHolder) {
+        final HttpServletRequest request = requestResponseHolder.getRequest();
+        final Authentication authentication = readAuthentication(request);
+        final SecurityContext context = SecurityContextHolder.createEmptyContext();
+
+        if (authentication != null) {
+            context.setAuthentication(authentication);
+        }
+
+        // the cookie must be written before the response is committed, e.g. by the redirect after the login
+        requestResponseHolder.setResponse(new SaveToCookieResponseWrapper(requestResponseHolder.getResponse(), request, authentication));
+
+        return context;
+    }
+
+    @Override
+    public void saveContext(SecurityContext context, HttpServletRequest request, HttpServletResponse response) {
+        final SaveToCookieResponseWrapper responseWrapper = WebUtils.getNativeResponse(response, SaveToCookieResponseWrapper.class);
+        if (responseWrapper == null) {
+            throw new IllegalStateException("the response was not wrapped by loadContext");
+        }
+
+        if (!responseWrapper.isContextSaved()) {
+            responseWrapper.saveContext(context);
+        }
+    }
+
+    @Override
+    public boolean containsContext(HttpServletRequest request) {
+        return Cookies.find(request, COOKIE_NAME) != null;
+    }
+
+    private Authentication readAuthentication(HttpServletRequest request) {
+        final String value = Cookies.find(request, COOKIE_NAME);
+        if (value == null) {
+            return null;
+        }
+
+        final byte[] plaintext = this.cookieCipher.decrypt(COOKIE_NAME, value);
+        if (plaintext == null) {
+            return null;
+        }
+
+        final Payload payload;
+        try {
+            payload = this.objectMapper.readValue(plaintext, Payload.class);
+        } catch (IOException e) {
+            return null;
+        }
+
+        if (Instant.ofEpochSecond(payload.issuedAt()).plus(this.maxAge).isBefore(this.clock.instant())) {
+            return null;
+        }
+
+        final List<GrantedAuthority> authorities = payload.authorities().stream()
+                .<GrantedAuthority>map(SimpleGrantedAuthority::new)
+                .toList();
+
+        return new OAuth2AuthenticationToken(
+                new DefaultOAuth2User(authorities, Map.of(NAME_ATTRIBUTE, payload.principalName()), NAME_ATTRIBUTE),
+                authorities,
+                payload.clientRegistrationId()
+        );
+    }
+
+    private String writeAuthentication(OAuth2AuthenticationToken authentication) {
+        final Payload payload = new Payload(
+                authentication.getAuthorizedClientRegistrationId(),
+                authentication.getName(),
+                authentication.getAuthorities().stream().map(GrantedAuthority::getAuthority).toList(),
+                this.clock.instant().getEpochSecond()
+        );
+
+        try {
+            return this.cookieCipher.encrypt(COOKIE_NAME, this.objectMapper.writeValueAsBytes(payload));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    // see loadContext
+    @SuppressWarnings("deprecation")
+    private final class SaveToCookieResponseWrapper extends SaveContextOnUpdateOrErrorResponseWrapper {
+
+        private final HttpServletRequest request;
+        private final Authentication loadedAuthentication;
+
+        private SaveToCookieResponseWrapper(HttpServletResponse response, HttpServletRequest request, Authentication loadedAuthentication) {
+            super(response, true);
+            this.request = request;
+            this.loadedAuthentication = loadedAuthentication;
+        }
+
+        @Override
+        protected void saveContext(SecurityContext context) {
+            final Authentication authentication = context.getAuthentication();
+
+            // unchanged authentications are not written again, so the cookie keeps its original expiry
+            if (authentication == this.loadedAuthentication) {
+                return;
+            }
+
+            if (authentication instanceof OAuth2AuthenticationToken oAuth2AuthenticationToken) {
+                Cookies.write(this.request, (HttpServletResponse) getResponse(), COOKIE_NAME, writeAuthentication(oAuth2AuthenticationToken), CookieSecurityContextRepository.this.maxAge);
+            } else if (containsContext(this.request)) {
+                // logged out, or the cookie was invalid or expired
+                Cookies.delete(this.request, (HttpServletResponse) getResponse(), COOKIE_NAME);
+            }
+        }
+    }
+
+    private record Payload(@JsonProperty("r") String clientRegistrationId,
+                           @JsonProperty("n") String principalName,
+                           @JsonProperty("a") List<String> authorities,
+                           @JsonProperty("i") long issuedAt) {
+
+    }
+}
@@ -0,0 +1,46 @@
+package com.gw2auth.example.app.service.session;
+
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.ResponseCookie;
+
+import javax.servlet.http.Cookie;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.time.Duration;
+
+final class Cookies {
+
+    private Cookies() {
+
+    }
+
+    static String find(HttpServletRequest request, String name) {
+        final Cookie[] cookies = request.getCookies();
+        if (cookies != null) {
+            for (Cookie cookie : cookies) {
+                if (cookie.getName().equals(name)) {
+                    return cookie.getValue();
+                }
+            }
+        }
+
+        return null;
+    }
+
+    static void write(HttpServletRequest request, HttpServletResponse response, String name, String value, Duration maxAge) {
+        // Lax, since the cookies must be sent along with the redirect back from the authorization server
+        final ResponseCookie cookie = ResponseCookie.from(name, value)
+                .path("/")
+                .maxAge(maxAge)
+                .httpOnly(true)
+                .secure(request.isSecure())
+                .sameSite("Lax")
+                .build();
+
+        response.addHeader(HttpHeaders.SET_COOKIE, cookie.toString());
+    }
+
+    static void delete(HttpServletRequest request, HttpServletResponse response, String name) {
+        write(request, response, name, "", Duration.ZERO);
+    }
+}
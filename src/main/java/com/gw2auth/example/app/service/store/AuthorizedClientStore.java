@@ -0,0 +1,36 @@
+package com.gw2auth.example.app.service.store;
+
+import org.springframework.security.oauth2.client.OAuth2AuthorizedClient;
+import org.springframework.security.oauth2.client.OAuth2AuthorizedClientService;
+import org.springframework.security.oauth2.core.OAuth2RefreshToken;
+
+import java.util.BitSet;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+
+/**
+ * Stores authorized clients together with their background refresh enrollment.
+ */
+public interface AuthorizedClientStore extends OAuth2AuthorizedClientService {
+
+    /**
+     * Removes the client only if it still holds the given refresh token (or none, if null), so that a client refreshed
+     * concurrently by another node or request isn't lost. Its enrollment is removed with it.
+     *
+     * @return whether the client was removed
+     */
+    boolean removeAuthorizedClient(String clientRegistrationId, String principalName, OAuth2RefreshToken refreshToken);
+
+    boolean isBackgroundRefreshEnabled(String clientRegistrationId, String principalName);
+
+    void setBackgroundRefreshEnabled(String clientRegistrationId, String principalName, boolean enabled);
+
+    /**
+     * Streams every stored client that is enrolled for background refresh, whose principal falls into one of the given
+     * {@link EnrollmentPartitions partitions}, that was enrolled at or after {@code enrolledSince} (epoch millis)
+     * and whose principal name matches the filter. The filter is applied before the client itself is loaded.
+     * <p>
+     * Stores that are not shared between nodes don't record when a client was enrolled and ignore {@code enrolledSince}.
+     */
+    void forEachBackgroundRefreshEnabled(BitSet partitions, long enrolledSince, Predicate<String> principalNameFilter, Consumer<OAuth2AuthorizedClient> consumer);
+}
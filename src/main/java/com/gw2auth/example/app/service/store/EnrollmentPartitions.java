@@ -0,0 +1,35 @@
+package com.gw2auth.example.app.service.store;
+
+import java.util.BitSet;
+
+/**
+ * Hashes principals into a fixed number of partitions.
+ * <p>
+ * Stores record the partition with every enrollment, so that a cluster node can load exactly the enrollments of the partitions it owns.
+ */
+public final class EnrollmentPartitions {
+
+    public static final int COUNT = 256;
+
+    private EnrollmentPartitions() {
+
+    }
+
+    public static int of(String principalName) {
+        return (int) Long.remainderUnsigned(mix(principalName.hashCode()), COUNT);
+    }
+
+    public static BitSet all() {
+        final BitSet partitions = new BitSet(COUNT);
+        partitions.set(0, COUNT);
+
+        return partitions;
+    }
+
+    private static long mix(long value) {
+        // SplitMix64 finalizer
+        value = (value ^ (value >>> 30)) * 0xbf58476d1ce4e5b9L;
+        value = (value ^ (value >>> 27)) * 0x94d049bb133111ebL;
+        return value ^ (value >>> 31);
+    }
+}
@@ -0,0 +1,545 @@
+package com.gw2auth.example.app.service.store;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.oauth2.client.OAuth2AuthorizedClient;
+import org.springframework.security.oauth2.client.registration.ClientRegistration;
+import org.springframework.security.oauth2.client.registration.ClientRegistrationRepository;
+import org.springframework.security.oauth2.core.OAuth2AccessToken;
+import org.springframework.security.oauth2.core.OAuth2RefreshToken;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+import java.util.zip.CRC32;
+
+/**
+ * Persists authorized clients and their enrollment in an append-only log.
+ * <p>
+ * Every change is appended as a single checksummed record; the current state is kept in memory and rebuilt by
+ * replaying the log in one streaming pass on startup. A torn record at the end of the log (e.g. after a crash)
+ * is discarded. The log is periodically compacted into a snapshot of the live entries once it holds more
+ * superseded records than live ones; saves only wait for the final swap, not for the snapshot to be written.
+ * <p>
+ * A written record survives a crash of the process right away, but only survives a crash of the OS (or a power loss) once
+ * it has been forced to the disk. With a {@code syncInterval} of zero every record is forced before the change is applied;
+ * otherwise the log is forced once per interval, and an OS crash may lose the changes of up to the last interval, such as a
+ * rotated refresh token, leaving the session with an already spent one.
+ */
+public class FileAuthorizedClientStore implements AuthorizedClientStore, DisposableBean {
+
+    private static final Logger LOG = LoggerFactory.getLogger(FileAuthorizedClientStore.class);
+    private static final byte OP_SAVE = 1;
+    private static final byte OP_REMOVE = 2;
+    private static final byte OP_ENROLL = 3;
+    private static final byte OP_UNENROLL = 4;
+    private static final long NULL_TIMESTAMP = Long.MIN_VALUE;
+    private static final long MIN_COMPACTION_RECORDS = 1024L;
+
+    private final ClientRegistrationRepository clientRegistrationRepository;
+    private final Path path;
+    private final ConcurrentMap<Key, StoredClient> clients;
+    private final ReentrantLock writeLock;
+    private final ScheduledExecutorService compactionExecutor;
+    private final ScheduledExecutorService syncExecutor;
+    private final boolean syncEveryAppend;
+    private final AtomicBoolean unsynced;
+    private volatile FileChannel channel;
+    private long records;
+
+    public FileAuthorizedClientStore(ClientRegistrationRepository clientRegistrationRepository, Path path, Duration compactionInterval, Duration syncInterval) throws IOException {
+        if (syncInterval.isNegative()) {
+            throw new IllegalArgumentException("syncInterval must not be negative");
+        }
+
+        this.clientRegistrationRepository = clientRegistrationRepository;
+        this.path = path;
+        this.clients = new ConcurrentHashMap<>();
+        this.writeLock = new ReentrantLock();
+        this.syncEveryAppend = syncInterval.isZero();
+        this.unsynced = new AtomicBoolean(false);
+
+        final Path parent = path.toAbsolutePath().getParent();
+        if (parent != null) {
+            Files.createDirectories(parent);
+        }
+
+        this.channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        replay();
+
+        this.compactionExecutor = Executors.newSingleThreadScheduledExecutor(new CustomizableThreadFactory("authorized-client-store-compaction-"));
+        this.compactionExecutor.scheduleWithFixedDelay(this::compactSafe, compactionInterval.toMillis(), compactionInterval.toMillis(), TimeUnit.MILLISECONDS);
+
+        if (this.syncEveryAppend) {
+            this.syncExecutor = null;
+        } else {
+            // separate from the compaction, which would otherwise delay the sync for as long as it takes
+            this.syncExecutor = Executors.newSingleThreadScheduledExecutor(new CustomizableThreadFactory("authorized-client-store-sync-"));
+            this.syncExecutor.scheduleWithFixedDelay(this::syncSafe, syncInterval.toMillis(), syncInterval.toMillis(), TimeUnit.MILLISECONDS);
+        }
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T extends OAuth2AuthorizedClient> T loadAuthorizedClient(String clientRegistrationId, String principalName) {
+        final StoredClient storedClient = this.clients.get(new Key(clientRegistrationId, principalName));
+        return storedClient == null ? null : (T) storedClient.client;
+    }
+
+    @Override
+    public void saveAuthorizedClient(OAuth2AuthorizedClient authorizedClient, Authentication principal) {
+        final Key key = new Key(authorizedClient.getClientRegistration().getRegistrationId(), principal.getName());
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream(2048);
+
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeByte(OP_SAVE);
+            writeKey(out, key);
+            writeClient(out, authorizedClient);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+
+        this.writeLock.lock();
+        try {
+            append(bytes.toByteArray());
+
+            final StoredClient previous = this.clients.get(key);
+            this.clients.put(key, new StoredClient(authorizedClient, previous != null && previous.backgroundRefreshEnabled));
+        } finally {
+            this.writeLock.unlock();
+        }
+    }
+
+    @Override
+    public void removeAuthorizedClient(String clientRegistrationId, String principalName) {
+        final Key key = new Key(clientRegistrationId, principalName);
+
+        this.writeLock.lock();
+        try {
+            if (this.clients.remove(key) != null) {
+                append(keyRecord(OP_REMOVE, key));
+            }
+        } finally {
+            this.writeLock.unlock();
+        }
+    }
+
+    @Override
+    public boolean removeAuthorizedClient(String clientRegistrationId, String principalName, OAuth2RefreshToken refreshToken) {
+        final Key key = new Key(clientRegistrationId, principalName);
+
+        this.writeLock.lock();
+        try {
+            final StoredClient storedClient = this.clients.get(key);
+            if (storedClient == null || !Objects.equals(refreshTokenValue(storedClient.client.getRefreshToken()), refreshTokenValue(refreshToken))) {
+                return false;
+            }
+
+            append(keyRecord(OP_REMOVE, key));
+            this.clients.remove(key);
+            return true;
+        } finally {
+            this.writeLock.unlock();
+        }
+    }
+
+    @Override
+    public boolean isBackgroundRefreshEnabled(String clientRegistrationId, String principalName) {
+        final StoredClient storedClient = this.clients.get(new Key(clientRegistrationId, principalName));
+        return storedClient != null && storedClient.backgroundRefreshEnabled;
+    }
+
+    @Override
+    public void setBackgroundRefreshEnabled(String clientRegistrationId, String principalName, boolean enabled) {
+        final Key key = new Key(clientRegistrationId, principalName);
+
+        this.writeLock.lock();
+        try {
+            final StoredClient storedClient = this.clients.get(key);
+            if (storedClient != null && storedClient.backgroundRefreshEnabled != enabled) {
+                append(keyRecord(enabled ? OP_ENROLL : OP_UNENROLL, key));
+                this.clients.put(key, new StoredClient(storedClient.client, enabled));
+            }
+        } finally {
+            this.writeLock.unlock();
+        }
+    }
+
+    @Override
+    public void forEachBackgroundRefreshEnabled(BitSet partitions, long enrolledSince, Predicate<String> principalNameFilter, Consumer<OAuth2AuthorizedClient> consumer) {
+        for (Map.Entry<Key, StoredClient> entry : this.clients.entrySet()) {
+            final String principalName = entry.getKey().principalName();
+
+            if (entry.getValue().backgroundRefreshEnabled && partitions.get(EnrollmentPartitions.of(principalName)) && principalNameFilter.test(principalName)) {
+                consumer.accept(entry.getValue().client);
+            }
+        }
+    }
+
+    @Override
+    public void destroy() throws Exception {
+        this.compactionExecutor.shutdownNow();
+
+        if (this.syncExecutor != null) {
+            // not interrupted, which would close the channel if it happened during a force
+            this.syncExecutor.shutdown();
+            this.syncExecutor.awaitTermination(10L, TimeUnit.SECONDS);
+        }
+
+        this.writeLock.lock();
+        try {
+            this.channel.force(true);
+            this.channel.close();
+        } finally {
+            this.writeLock.unlock();
+        }
+    }
+
+    private static String refreshTokenValue(OAuth2RefreshToken refreshToken) {
+        return refreshToken == null ? null : refreshToken.getTokenValue();
+    }
+
+    // region log
+    private void replay() throws IOException {
+        final long start = System.nanoTime();
+        final Map<String, ClientRegistration> clientRegistrations = new HashMap<>();
+        final Set<String> unknownClientRegistrationIds = new HashSet<>();
+        long validLength = 0L;
+        long records = 0L;
+
+        this.channel.position(0L);
+        final DataInputStream in = new DataInputStream(new BufferedInputStream(Channels.newInputStream(this.channel), 1 << 16));
+
+        while (true) {
+            final byte[] payload;
+            try {
+                final int length = in.readInt();
+                final int checksum = in.readInt();
+
+                if (length < 1) {
+                    break;
+                }
+
+                payload = in.readNBytes(length);
+                if (payload.length != length || checksum(payload) != checksum) {
+                    break;
+                }
+            } catch (EOFException e) {
+                break;
+            }
+
+            apply(payload, clientRegistrations, unknownClientRegistrationIds);
+            validLength += Integer.BYTES * 2L + payload.length;
+            records++;
+        }
+
+        if (validLength < this.channel.size()) {
+            LOG.warn("discarding {} bytes of incomplete records at the end of {}", this.channel.size() - validLength, this.path);
+            this.channel.truncate(validLength);
+        }
+
+        this.channel.position(validLength);
+        this.records = records;
+
+        final long tookMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        LOG.info("replayed {} records into {} authorized clients from {} in {}ms", records, this.clients.size(), this.path, tookMillis);
+    }
+
+    private void apply(byte[] payload, Map<String, ClientRegistration> clientRegistrations, Set<String> unknownClientRegistrationIds) throws IOException {
+        final DataInputStream in = new DataInputStream(new ByteArrayInputStream(payload));
+        final byte op = in.readByte();
+        final Key key = new Key(readString(in), readString(in));
+
+        switch (op) {
+            case OP_SAVE -> {
+                ClientRegistration clientRegistration = clientRegistrations.get(key.clientRegistrationId());
+                if (clientRegistration == null && !unknownClientRegistrationIds.contains(key.clientRegistrationId())) {
+                    clientRegistration = this.clientRegistrationRepository.findByRegistrationId(key.clientRegistrationId());
+
+                    if (clientRegistration != null) {
+                        clientRegistrations.put(key.clientRegistrationId(), clientRegistration);
+                    } else {
+                        unknownClientRegistrationIds.add(key.clientRegistrationId());
+                    }
+                }
+
+                if (clientRegistration != null) {
+                    final StoredClient previous = this.clients.get(key);
+                    final OAuth2AuthorizedClient client = readClient(in, clientRegistration, key.principalName());
+
+                    this.clients.put(key, new StoredClient(client, previous != null && previous.backgroundRefreshEnabled));
+                }
+            }
+            case OP_REMOVE -> this.clients.remove(key);
+            case OP_ENROLL, OP_UNENROLL -> this.clients.computeIfPresent(key, (k, v) -> new StoredClient(v.client, op == OP_ENROLL));
+            default -> throw new IOException("unknown record type " + op);
+        }
+    }
+
+    private void append(byte[] payload) {
+        final ByteBuffer buffer = ByteBuffer.allocate(Integer.BYTES * 2 + payload.length);
+        buffer.putInt(payload.length);
+        buffer.putInt(checksum(payload));
+        buffer.put(payload);
+        buffer.flip();
+
+        try {
+            while (buffer.hasRemaining()) {
+                this.channel.write(buffer);
+            }
+
+            // a failed force is reported like a failed write
+            if (this.syncEveryAppend) {
+                this.channel.force(false);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+
+        this.records++;
+
+        if (!this.syncEveryAppend) {
+            this.unsynced.set(true);
+        }
+    }
+
+    private void syncSafe() {
+        if (!this.unsynced.getAndSet(false)) {
+            return;
+        }
+
+        try {
+            // without the lock, so that saves are not held up by the force
+            this.channel.force(false);
+        } catch (ClosedChannelException e) {
+            // swapped by a compaction in the meantime, which forced everything written before the swap
+        } catch (Exception e) {
+            this.unsynced.set(true);
+            LOG.warn("failed to sync {}", this.path, e);
+        }
+    }
+
+    private void compactSafe() {
+        try {
+            compact();
+        } catch (Exception e) {
+            LOG.warn("failed to compact {}", this.path, e);
+        }
+    }
+
+    private void compact() throws IOException {
+        final List<Map.Entry<Key, StoredClient>> snapshot;
+        final long snapshotPosition;
+        final long snapshotRecords;
+
+        this.writeLock.lock();
+        try {
+            final long liveRecords = this.clients.size() * 2L;
+            if (this.records < MIN_COMPACTION_RECORDS || this.records <= liveRecords * 2L) {
+                return;
+            }
+
+            // stored clients are immutable, so this is the state of the log up to its current position
+            snapshot = new ArrayList<>(this.clients.entrySet());
+            snapshotPosition = this.channel.position();
+            snapshotRecords = this.records;
+        } finally {
+            this.writeLock.unlock();
+        }
+
+        final long start = System.nanoTime();
+        final Path compactedPath = this.path.resolveSibling(this.path.getFileName() + ".compact");
+        long records = 0L;
+
+        // written without the lock, so that saves are not held up by the rewrite
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(compactedPath), 1 << 16))) {
+            for (Map.Entry<Key, StoredClient> entry : snapshot) {
+                final ByteArrayOutputStream bytes = new ByteArrayOutputStream(2048);
+                try (DataOutputStream recordOut = new DataOutputStream(bytes)) {
+                    recordOut.writeByte(OP_SAVE);
+                    writeKey(recordOut, entry.getKey());
+                    writeClient(recordOut, entry.getValue().client);
+                }
+
+                writeRecord(out, bytes.toByteArray());
+                records++;
+
+                if (entry.getValue().backgroundRefreshEnabled) {
+                    writeRecord(out, keyRecord(OP_ENROLL, entry.getKey()));
+                    records++;
+                }
+            }
+        }
+
+        this.writeLock.lock();
+        try {
+            // the records appended since the snapshot are replayed on top of it
+            final long tailLength = this.channel.position() - snapshotPosition;
+
+            try (FileChannel compactedChannel = FileChannel.open(compactedPath, StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+                for (long transferred = 0L; transferred < tailLength; ) {
+                    transferred += this.channel.transferTo(snapshotPosition + transferred, tailLength - transferred, compactedChannel);
+                }
+
+                compactedChannel.force(true);
+            }
+
+            final long previousRecords = this.records;
+            records += previousRecords - snapshotRecords;
+
+            this.channel.close();
+            try {
+                Files.move(compactedPath, this.path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } finally {
+                // the compacted log, or the previous one if it could not be replaced; appends must keep working either way
+                this.channel = FileChannel.open(this.path, StandardOpenOption.READ, StandardOpenOption.WRITE);
+                this.channel.position(this.channel.size());
+            }
+
+            this.records = records;
+
+            final long tookMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+            LOG.info("compacted {} from {} to {} records in {}ms", this.path, previousRecords, records, tookMillis);
+        } finally {
+            this.writeLock.unlock();
+        }
+    }
+    // endregion
+
+    // region serialization
+    private static void writeRecord(DataOutputStream out, byte[] payload) throws IOException {
+        out.writeInt(payload.length);
+        out.writeInt(checksum(payload));
+        out.write(payload);
+    }
+
+    private static byte[] keyRecord(byte op, Key key) {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream(128);
+
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeByte(op);
+            writeKey(out, key);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+
+        return bytes.toByteArray();
+    }
+
+    private static void writeKey(DataOutputStream out, Key key) throws IOException {
+        writeString(out, key.clientRegistrationId());
+        writeString(out, key.principalName());
+    }
+
+    private static void writeClient(DataOutputStream out, OAuth2AuthorizedClient client) throws IOException {
+        final OAuth2AccessToken accessToken = client.getAccessToken();
+        writeString(out, accessToken.getTokenValue());
+        writeInstant(out, accessToken.getIssuedAt());
+        writeInstant(out, accessToken.getExpiresAt());
+        out.writeInt(accessToken.getScopes().size());
+
+        for (String scope : accessToken.getScopes()) {
+            writeString(out, scope);
+        }
+
+        final OAuth2RefreshToken refreshToken = client.getRefreshToken();
+        out.writeBoolean(refreshToken != null);
+
+        if (refreshToken != null) {
+            writeString(out, refreshToken.getTokenValue());
+            writeInstant(out, refreshToken.getIssuedAt());
+            writeInstant(out, refreshToken.getExpiresAt());
+        }
+    }
+
+    private static OAuth2AuthorizedClient readClient(DataInputStream in, ClientRegistration clientRegistration, String principalName) throws IOException {
+        final String accessTokenValue = readString(in);
+        final Instant accessTokenIssuedAt = readInstant(in);
+        final Instant accessTokenExpiresAt = readInstant(in);
+        final int scopeCount = in.readInt();
+        final Set<String> scopes = new HashSet<>(scopeCount * 2);
+
+        for (int i = 0; i < scopeCount; i++) {
+            scopes.add(readString(in));
+        }
+
+        final OAuth2AccessToken accessToken = new OAuth2AccessToken(OAuth2AccessToken.TokenType.BEARER, accessTokenValue, accessTokenIssuedAt, accessTokenExpiresAt, scopes);
+        OAuth2RefreshToken refreshToken = null;
+
+        if (in.readBoolean()) {
+            refreshToken = new OAuth2RefreshToken(readString(in), readInstant(in), readInstant(in));
+        }
+
+        return new OAuth2AuthorizedClient(clientRegistration, principalName, accessToken, refreshToken);
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        final byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        final int length = in.readInt();
+        final byte[] bytes = in.readNBytes(length);
+
+        if (bytes.length != length) {
+            throw new EOFException();
+        }
+
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static void writeInstant(DataOutputStream out, Instant value) throws IOException {
+        out.writeLong(value == null ? NULL_TIMESTAMP : value.toEpochMilli());
+    }
+
+    private static Instant readInstant(DataInputStream in) throws IOException {
+        final long value = in.readLong();
+        return value == NULL_TIMESTAMP ? null : Instant.ofEpochMilli(value);
+    }
+
+    private static int checksum(byte[] payload) {
+        final CRC32 crc32 = new CRC32();
+        crc32.update(payload);
+        return (int) crc32.getValue();
+    }
+    // endregion
+
+    private record Key(String clientRegistrationId, String principalName) {
+
+    }
+
+    private record StoredClient(OAuth2AuthorizedClient client, boolean backgroundRefreshEnabled) {
+
+    }
+}
@@ -0,0 +1,109 @@
+package com.gw2auth.example.app.service.store;
+
+import org.springframework.security.core.Authentication;
+import org.springframework.security.oauth2.client.InMemoryOAuth2AuthorizedClientService;
+import org.springframework.security.oauth2.client.OAuth2AuthorizedClient;
+import org.springframework.security.oauth2.client.registration.ClientRegistrationRepository;
+import org.springframework.security.oauth2.core.OAuth2RefreshToken;
+
+import java.util.BitSet;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+
+/**
+ * Keeps authorized clients and enrollments on the heap only; nothing survives a restart.
+ */
+public class InMemoryAuthorizedClientStore implements AuthorizedClientStore {
+
+    private final InMemoryOAuth2AuthorizedClientService delegate;
+    private final Set<Key> backgroundRefreshEnabled;
+    // makes the conditional remove atomic with respect to saves and removes
+    private final ReentrantLock writeLock;
+
+    public InMemoryAuthorizedClientStore(ClientRegistrationRepository clientRegistrationRepository) {
+        this.delegate = new InMemoryOAuth2AuthorizedClientService(clientRegistrationRepository);
+        this.backgroundRefreshEnabled = ConcurrentHashMap.newKeySet();
+        this.writeLock = new ReentrantLock();
+    }
+
+    @Override
+    public <T extends OAuth2AuthorizedClient> T loadAuthorizedClient(String clientRegistrationId, String principalName) {
+        return this.delegate.loadAuthorizedClient(clientRegistrationId, principalName);
+    }
+
+    @Override
+    public void saveAuthorizedClient(OAuth2AuthorizedClient authorizedClient, Authentication principal) {
+        this.writeLock.lock();
+        try {
+            this.delegate.saveAuthorizedClient(authorizedClient, principal);
+        } finally {
+            this.writeLock.unlock();
+        }
+    }
+
+    @Override
+    public void removeAuthorizedClient(String clientRegistrationId, String principalName) {
+        this.writeLock.lock();
+        try {
+            this.backgroundRefreshEnabled.remove(new Key(clientRegistrationId, principalName));
+            this.delegate.removeAuthorizedClient(clientRegistrationId, principalName);
+        } finally {
+            this.writeLock.unlock();
+        }
+    }
+
+    @Override
+    public boolean removeAuthorizedClient(String clientRegistrationId, String principalName, OAuth2RefreshToken refreshToken) {
+        this.writeLock.lock();
+        try {
+            final OAuth2AuthorizedClient client = this.delegate.loadAuthorizedClient(clientRegistrationId, principalName);
+            if (client == null || !Objects.equals(refreshTokenValue(client.getRefreshToken()), refreshTokenValue(refreshToken))) {
+                return false;
+            }
+
+            this.backgroundRefreshEnabled.remove(new Key(clientRegistrationId, principalName));
+            this.delegate.removeAuthorizedClient(clientRegistrationId, principalName);
+            return true;
+        } finally {
+            this.writeLock.unlock();
+        }
+    }
+
+    @Override
+    public boolean isBackgroundRefreshEnabled(String clientRegistrationId, String principalName) {
+        return this.backgroundRefreshEnabled.contains(new Key(clientRegistrationId, principalName));
+    }
+
+    @Override
+    public void setBackgroundRefreshEnabled(String clientRegistrationId, String principalName, boolean enabled) {
+        if (enabled) {
+            this.backgroundRefreshEnabled.add(new Key(clientRegistrationId, principalName));
+        } else {
+            this.backgroundRefreshEnabled.remove(new Key(clientRegistrationId, principalName));
+        }
+    }
+
+    @Override
+    public void forEachBackgroundRefreshEnabled(BitSet partitions, long enrolledSince, Predicate<String> principalNameFilter, Consumer<OAuth2AuthorizedClient> consumer) {
+        for (Key key : this.backgroundRefreshEnabled) {
+            if (partitions.get(EnrollmentPartitions.of(key.principalName())) && principalNameFilter.test(key.principalName())) {
+                final OAuth2AuthorizedClient client = this.delegate.loadAuthorizedClient(key.clientRegistrationId(), key.principalName());
+                if (client != null) {
+                    consumer.accept(client);
+                }
+            }
+        }
+    }
+
+    private static String refreshTokenValue(OAuth2RefreshToken refreshToken) {
+        return refreshToken == null ? null : refreshToken.getTokenValue();
+    }
+
+    private record Key(String clientRegistrationId, String principalName) {
+
+    }
+}
@@ -0,0 +1,149 @@
+package com.gw2auth.example.app.service.store;
+
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.core.JdbcOperations;
+import org.springframework.jdbc.core.SqlParameterValue;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.oauth2.client.JdbcOAuth2AuthorizedClientService;
+import org.springframework.security.oauth2.client.OAuth2AuthorizedClient;
+import org.springframework.security.oauth2.client.registration.ClientRegistrationRepository;
+import org.springframework.security.oauth2.core.OAuth2RefreshToken;
+
+import java.nio.charset.StandardCharsets;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+
+/**
+ * Stores authorized clients in a database shared by all nodes of a cluster.
+ */
+public class JdbcAuthorizedClientStore implements AuthorizedClientStore {
+
+    private final JdbcOperations jdbcOperations;
+    private final JdbcOAuth2AuthorizedClientService delegate;
+
+    public JdbcAuthorizedClientStore(JdbcOperations jdbcOperations, ClientRegistrationRepository clientRegistrationRepository) {
+        this.jdbcOperations = jdbcOperations;
+        this.delegate = new JdbcOAuth2AuthorizedClientService(jdbcOperations, clientRegistrationRepository);
+    }
+
+    @Override
+    public <T extends OAuth2AuthorizedClient> T loadAuthorizedClient(String clientRegistrationId, String principalName) {
+        return this.delegate.loadAuthorizedClient(clientRegistrationId, principalName);
+    }
+
+    @Override
+    public void saveAuthorizedClient(OAuth2AuthorizedClient authorizedClient, Authentication principal) {
+        this.delegate.saveAuthorizedClient(authorizedClient, principal);
+    }
+
+    @Override
+    public void removeAuthorizedClient(String clientRegistrationId, String principalName) {
+        setBackgroundRefreshEnabled(clientRegistrationId, principalName, false);
+        this.delegate.removeAuthorizedClient(clientRegistrationId, principalName);
+    }
+
+    @Override
+    public boolean removeAuthorizedClient(String clientRegistrationId, String principalName, OAuth2RefreshToken refreshToken) {
+        // conditional in SQL, as another node may have refreshed the client since it was loaded
+        final int removed;
+        if (refreshToken == null) {
+            removed = this.jdbcOperations.update(
+                    "DELETE FROM oauth2_authorized_client WHERE client_registration_id = ? AND principal_name = ? AND refresh_token_value IS NULL",
+                    clientRegistrationId,
+                    principalName
+            );
+        } else {
+            // encoded the same way as by JdbcOAuth2AuthorizedClientService
+            removed = this.jdbcOperations.update(
+                    "DELETE FROM oauth2_authorized_client WHERE client_registration_id = ? AND principal_name = ? AND refresh_token_value = ?",
+                    clientRegistrationId,
+                    principalName,
+                    new SqlParameterValue(Types.BLOB, refreshToken.getTokenValue().getBytes(StandardCharsets.UTF_8))
+            );
+        }
+
+        if (removed < 1) {
+            return false;
+        }
+
+        setBackgroundRefreshEnabled(clientRegistrationId, principalName, false);
+        return true;
+    }
+
+    @Override
+    public boolean isBackgroundRefreshEnabled(String clientRegistrationId, String principalName) {
+        final Integer count = this.jdbcOperations.queryForObject(
+                "SELECT COUNT(*) FROM background_refresh_enrollment WHERE client_registration_id = ? AND principal_name = ?",
+                Integer.class,
+                clientRegistrationId,
+                principalName
+        );
+
+        return count != null && count > 0;
+    }
+
+    @Override
+    public void setBackgroundRefreshEnabled(String clientRegistrationId, String principalName, boolean enabled) {
+        if (enabled) {
+            try {
+                this.jdbcOperations.update(
+                        "INSERT INTO background_refresh_enrollment (client_registration_id, principal_name, refresh_partition, enrolled_at) VALUES (?, ?, ?, ?)",
+                        clientRegistrationId,
+                        principalName,
+                        EnrollmentPartitions.of(principalName),
+                        System.currentTimeMillis()
+                );
+            } catch (DuplicateKeyException ignored) {
+                // already enrolled
+            }
+        } else {
+            this.jdbcOperations.update(
+                    "DELETE FROM background_refresh_enrollment WHERE client_registration_id = ? AND principal_name = ?",
+                    clientRegistrationId,
+                    principalName
+            );
+        }
+    }
+
+    @Override
+    public void forEachBackgroundRefreshEnabled(BitSet partitions, long enrolledSince, Predicate<String> principalNameFilter, Consumer<OAuth2AuthorizedClient> consumer) {
+        if (partitions.isEmpty()) {
+            return;
+        }
+
+        final StringBuilder sql = new StringBuilder("SELECT client_registration_id, principal_name FROM background_refresh_enrollment WHERE enrolled_at >= ?");
+        final List<Object> args = new ArrayList<>();
+        args.add(enrolledSince);
+
+        if (partitions.cardinality() < EnrollmentPartitions.COUNT) {
+            sql.append(" AND refresh_partition IN (");
+            partitions.stream().forEach((partition) -> {
+                sql.append(args.size() > 1 ? ", ?" : "?");
+                args.add(partition);
+            });
+            sql.append(')');
+        }
+
+        // collect the keys first so that the cursor isn't held open while every client is loaded
+        final List<String[]> keys = new ArrayList<>();
+
+        this.jdbcOperations.query(sql.toString(), (rs) -> {
+            final String principalName = rs.getString(2);
+
+            if (principalNameFilter.test(principalName)) {
+                keys.add(new String[]{rs.getString(1), principalName});
+            }
+        }, args.toArray());
+
+        for (String[] key : keys) {
+            final OAuth2AuthorizedClient client = this.delegate.loadAuthorizedClient(key[0], key[1]);
+            if (client != null) {
+                consumer.accept(client);
+            }
+        }
+    }
+}
@@ -0,0 +1,352 @@
+package com.gw2auth.example.app.service.token;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import com.gw2auth.example.app.service.AccessTokenInvalidatedEvent;
+import com.nimbusds.jose.JOSEException;
+import com.nimbusds.jose.JOSEObjectType;
+import com.nimbusds.jose.JWSAlgorithm;
+import com.nimbusds.jose.crypto.factories.DefaultJWSVerifierFactory;
+import com.nimbusds.jose.jwk.JWKSet;
+import com.nimbusds.jose.proc.BadJOSEException;
+import com.nimbusds.jose.proc.DefaultJOSEObjectTypeVerifier;
+import com.nimbusds.jose.proc.JOSEObjectTypeVerifier;
+import com.nimbusds.jose.proc.JWSVerificationKeySelector;
+import com.nimbusds.jose.proc.SecurityContext;
+import com.nimbusds.jwt.JWTClaimsSet;
+import com.nimbusds.jwt.SignedJWT;
+import com.nimbusds.jwt.proc.DefaultJWTClaimsVerifier;
+import com.nimbusds.jwt.proc.DefaultJWTProcessor;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.security.oauth2.client.registration.ClientRegistration;
+import org.springframework.security.oauth2.core.OAuth2AuthenticationException;
+import org.springframework.security.oauth2.core.OAuth2Error;
+import org.springframework.web.client.RestOperations;
+
+import java.io.IOException;
+import java.security.Key;
+import java.text.ParseException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Base64;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * Decodes access tokens and verifies their signature against the JWK set of the client registration's issuer.
+ * <p>
+ * JWK sets are kept in memory and refreshed in the background every {@code jwkSetRefreshInterval}.
+ * Verified claims are cached for a short time, so that the token received at login is not verified again for the first authinfo.
+ * <p>
+ * Besides the full claim set, the claims can be streamed into a {@link ClaimsReader} straight from the token payload,
+ * which avoids building the intermediate JSON maps for large claims.
+ */
+public class AccessTokenDecoder implements DisposableBean {
+
+    private static final Logger LOG = LoggerFactory.getLogger(AccessTokenDecoder.class);
+    private static final Set<JWSAlgorithm> ALGORITHMS;
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+    private static final DefaultJWSVerifierFactory JWS_VERIFIER_FACTORY = new DefaultJWSVerifierFactory();
+    // same as the DefaultJWTClaimsVerifier
+    private static final long MAX_CLOCK_SKEW_SECONDS = DefaultJWTClaimsVerifier.DEFAULT_MAX_CLOCK_SKEW_SECONDS;
+
+    static {
+        final Set<JWSAlgorithm> algorithms = new HashSet<>();
+        algorithms.addAll(JWSAlgorithm.Family.RSA);
+        algorithms.addAll(JWSAlgorithm.Family.EC);
+
+        ALGORITHMS = Set.copyOf(algorithms);
+    }
+
+    private final Function<String, JWKSet> jwkSetLoader;
+    private final long jwkSetMinRefreshIntervalNanos;
+    private final ConcurrentMap<String, CachedJwkSet> jwkSets;
+    private final ConcurrentMap<String, RegistrationVerifier> verifiers;
+    private final Cache<String, JWTClaimsSet> claimsCache;
+    private final ScheduledExecutorService refreshExecutor;
+    private final Counter jwkSetRefreshSuccessCounter;
+    private final Counter jwkSetRefreshFailureCounter;
+
+    public AccessTokenDecoder(Function<String, JWKSet> jwkSetLoader, Duration jwkSetRefreshInterval, Duration jwkSetMinRefreshInterval, long claimsCacheSize, Duration claimsCacheTtl, MeterRegistry meterRegistry) {
+        this.jwkSetLoader = jwkSetLoader;
+        this.jwkSetMinRefreshIntervalNanos = jwkSetMinRefreshInterval.toNanos();
+        this.jwkSets = new ConcurrentHashMap<>();
+        this.verifiers = new ConcurrentHashMap<>();
+        this.claimsCache = Caffeine.newBuilder()
+                .maximumSize(claimsCacheSize)
+                .expireAfter(new ExpireWithToken(claimsCacheTtl))
+                .recordStats()
+                .build();
+        this.refreshExecutor = Executors.newSingleThreadScheduledExecutor(new CustomizableThreadFactory("jwk-set-refresh-"));
+        this.jwkSetRefreshSuccessCounter = jwkSetRefreshCounter(meterRegistry, "success");
+        this.jwkSetRefreshFailureCounter = jwkSetRefreshCounter(meterRegistry, "failure");
+
+        CaffeineCacheMetrics.monitor(meterRegistry, this.claimsCache, "jwt-claims");
+
+        final long refreshIntervalMillis = jwkSetRefreshInterval.toMillis();
+        this.refreshExecutor.scheduleWithFixedDelay(this::refreshJwkSets, refreshIntervalMillis, refreshIntervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    public static Function<String, JWKSet> jwkSetLoader(RestOperations restOperations) {
+        return (jwkSetUri) -> {
+            final String json = restOperations.getForObject(jwkSetUri, String.class);
+            try {
+                return JWKSet.parse(json);
+            } catch (ParseException e) {
+                throw new IllegalStateException("invalid JWK set at " + jwkSetUri, e);
+            }
+        };
+    }
+
+    /**
+     * @return the verified claims of the access token
+     * @throws OAuth2AuthenticationException if the token is malformed, its signature is invalid or it has expired
+     */
+    public JWTClaimsSet decode(ClientRegistration clientRegistration, String accessTokenValue) {
+        final JWTClaimsSet cached = this.claimsCache.getIfPresent(accessTokenValue);
+        if (cached != null) {
+            return cached;
+        }
+
+        final JWTClaimsSet claims;
+        try {
+            claims = verifier(clientRegistration).processor().process(accessTokenValue, null);
+        } catch (ParseException e) {
+            throw new OAuth2AuthenticationException(new OAuth2Error("jwt_parse_error"), e);
+        } catch (BadJOSEException | JOSEException e) {
+            throw new OAuth2AuthenticationException(new OAuth2Error("invalid_token", e.getMessage(), null), e);
+        }
+
+        this.claimsCache.put(accessTokenValue, claims);
+        return claims;
+    }
+
+    /**
+     * Verifies the access token and streams its claims into a reader created by {@code readerFactory}.
+     * The registered claims {@code iss}, {@code sub}, {@code exp} and {@code nbf} are validated here, all others are passed to the reader.
+     *
+     * @return the result of the reader
+     * @throws OAuth2AuthenticationException if the token is malformed, its signature is invalid or it has expired
+     */
+    public <T> T decode(ClientRegistration clientRegistration, String accessTokenValue, Supplier<? extends ClaimsReader<T>> readerFactory) {
+        final SignedJWT jwt;
+        try {
+            jwt = SignedJWT.parse(accessTokenValue);
+        } catch (ParseException e) {
+            throw new OAuth2AuthenticationException(new OAuth2Error("jwt_parse_error"), e);
+        }
+
+        final RegistrationVerifier verifier = verifier(clientRegistration);
+
+        // a token that was verified before (usually at login) is not verified again
+        if (this.claimsCache.getIfPresent(accessTokenValue) == null) {
+            verifySignature(verifier, jwt);
+        }
+
+        // the JDK decoder is considerably faster than Base64URL#decode() for large payloads
+        final byte[] payload;
+        try {
+            payload = Base64.getUrlDecoder().decode(jwt.getParsedParts()[1].toString());
+        } catch (IllegalArgumentException e) {
+            throw new OAuth2AuthenticationException(new OAuth2Error("jwt_parse_error"), e);
+        }
+
+        final ClaimsReader<T> reader = readerFactory.get();
+        String issuer = null;
+        String subject = null;
+        long expiresAt = Long.MIN_VALUE;
+        long notBefore = Long.MIN_VALUE;
+
+        try (JsonParser parser = JSON_FACTORY.createParser(payload)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                throw new JsonParseException(parser, "the claims must be a JSON object");
+            }
+
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                final String name = parser.getCurrentName();
+                parser.nextToken();
+
+                switch (name) {
+                    case "iss" -> issuer = parser.getValueAsString();
+                    case "sub" -> subject = parser.getValueAsString();
+                    case "exp" -> expiresAt = parser.getValueAsLong(Long.MIN_VALUE);
+                    case "nbf" -> notBefore = parser.getValueAsLong(Long.MIN_VALUE);
+                    default -> reader.readClaim(name, parser);
+                }
+
+                // no-op for scalars and for values fully consumed by the reader
+                parser.skipChildren();
+            }
+        } catch (IOException e) {
+            throw new OAuth2AuthenticationException(new OAuth2Error("jwt_parse_error"), e);
+        }
+
+        final long now = Instant.now().getEpochSecond();
+
+        if (verifier.issuer() != null && !verifier.issuer().equals(issuer)) {
+            throw invalidToken("JWT iss claim has value " + issuer + ", must be " + verifier.issuer());
+        } else if (subject == null) {
+            throw invalidToken("JWT missing required claims: [sub]");
+        } else if (expiresAt == Long.MIN_VALUE) {
+            throw invalidToken("JWT missing required claims: [exp]");
+        } else if (now - MAX_CLOCK_SKEW_SECONDS > expiresAt) {
+            throw invalidToken("Expired JWT");
+        } else if (notBefore != Long.MIN_VALUE && now + MAX_CLOCK_SKEW_SECONDS < notBefore) {
+            throw invalidToken("JWT before use time");
+        }
+
+        return reader.build(subject);
+    }
+
+    @EventListener
+    public void onAccessTokenInvalidated(AccessTokenInvalidatedEvent event) {
+        this.claimsCache.invalidate(event.accessTokenValue());
+    }
+
+    private void verifySignature(RegistrationVerifier verifier, SignedJWT jwt) {
+        try {
+            verifier.typeVerifier().verify(jwt.getHeader().getType(), null);
+
+            final List<? extends Key> keys = verifier.keySelector().selectJWSKeys(jwt.getHeader(), null);
+            for (Key key : keys) {
+                if (jwt.verify(JWS_VERIFIER_FACTORY.createJWSVerifier(jwt.getHeader(), key))) {
+                    return;
+                }
+            }
+
+            throw invalidToken(keys.isEmpty() ? "Signed JWT rejected: Another algorithm expected, or no matching key(s) found" : "Signed JWT rejected: Invalid signature");
+        } catch (BadJOSEException | JOSEException e) {
+            throw new OAuth2AuthenticationException(new OAuth2Error("invalid_token", e.getMessage(), null), e);
+        }
+    }
+
+    private RegistrationVerifier verifier(ClientRegistration clientRegistration) {
+        return this.verifiers.computeIfAbsent(clientRegistration.getRegistrationId(), (k) -> createVerifier(clientRegistration));
+    }
+
+    private RegistrationVerifier createVerifier(ClientRegistration clientRegistration) {
+        final String jwkSetUri = clientRegistration.getProviderDetails().getJwkSetUri();
+        if (jwkSetUri == null || jwkSetUri.isEmpty()) {
+            throw new IllegalStateException("client registration " + clientRegistration.getRegistrationId() + " has no JWK set URI");
+        }
+
+        final CachedJwkSet jwkSet = this.jwkSets.computeIfAbsent(jwkSetUri, (k) -> new CachedJwkSet(k, this::loadJwkSet, this.jwkSetMinRefreshIntervalNanos));
+        final String issuerUri = clientRegistration.getProviderDetails().getIssuerUri();
+        final JWTClaimsSet exactMatchClaims = issuerUri == null ? new JWTClaimsSet.Builder().build() : new JWTClaimsSet.Builder().issuer(issuerUri).build();
+
+        final JOSEObjectTypeVerifier<SecurityContext> typeVerifier = new DefaultJOSEObjectTypeVerifier<>(JOSEObjectType.JWT, new JOSEObjectType("at+jwt"), null);
+        final JWSVerificationKeySelector<SecurityContext> keySelector = new JWSVerificationKeySelector<>(ALGORITHMS, jwkSet);
+
+        final DefaultJWTProcessor<SecurityContext> processor = new DefaultJWTProcessor<>();
+        processor.setJWSTypeVerifier(typeVerifier);
+        processor.setJWSKeySelector(keySelector);
+        processor.setJWTClaimsSetVerifier(new DefaultJWTClaimsVerifier<>(exactMatchClaims, Set.of("sub", "exp")));
+
+        return new RegistrationVerifier(processor, typeVerifier, keySelector, issuerUri);
+    }
+
+    private static OAuth2AuthenticationException invalidToken(String description) {
+        return new OAuth2AuthenticationException(new OAuth2Error("invalid_token", description, null));
+    }
+
+    private JWKSet loadJwkSet(String jwkSetUri) {
+        try {
+            final JWKSet jwkSet = this.jwkSetLoader.apply(jwkSetUri);
+            this.jwkSetRefreshSuccessCounter.increment();
+            return jwkSet;
+        } catch (RuntimeException e) {
+            this.jwkSetRefreshFailureCounter.increment();
+            throw e;
+        }
+    }
+
+    private void refreshJwkSets() {
+        for (CachedJwkSet jwkSet : this.jwkSets.values()) {
+            try {
+                jwkSet.refresh();
+            } catch (RuntimeException e) {
+                // the previous set stays in use until the next attempt
+                LOG.warn("failed to refresh JWK set", e);
+            }
+        }
+    }
+
+    private static Counter jwkSetRefreshCounter(MeterRegistry meterRegistry, String outcome) {
+        return Counter.builder("jwk.set.refresh")
+                .description("Number of JWK set loads")
+                .tag("outcome", outcome)
+                .register(meterRegistry);
+    }
+
+    @Override
+    public void destroy() {
+        this.refreshExecutor.shutdownNow();
+    }
+
+    /**
+     * Receives the claims of an access token while its payload is parsed.
+     */
+    public interface ClaimsReader<T> {
+
+        /**
+         * Called for every claim except the registered claims validated by the decoder, with the parser positioned at the claim's value.
+         * Values that are not read may be left as they are; they are skipped afterwards.
+         */
+        void readClaim(String name, JsonParser parser) throws IOException;
+
+        /**
+         * Called once all claims were read and validated.
+         */
+        T build(String subject);
+    }
+
+    private record RegistrationVerifier(DefaultJWTProcessor<SecurityContext> processor,
+                                        JOSEObjectTypeVerifier<SecurityContext> typeVerifier,
+                                        JWSVerificationKeySelector<SecurityContext> keySelector,
+                                        String issuer) {
+
+    }
+
+    private record ExpireWithToken(Duration ttl) implements Expiry<String, JWTClaimsSet> {
+
+        @Override
+        public long expireAfterCreate(String key, JWTClaimsSet value, long currentTime) {
+            final long ttlNanos = this.ttl.toNanos();
+            if (value.getExpirationTime() == null) {
+                return ttlNanos;
+            }
+
+            return Math.max(0L, Math.min(ttlNanos, Duration.between(Instant.now(), value.getExpirationTime().toInstant()).toNanos()));
+        }
+
+        @Override
+        public long expireAfterUpdate(String key, JWTClaimsSet value, long currentTime, long currentDuration) {
+            return expireAfterCreate(key, value, currentTime);
+        }
+
+        @Override
+        public long expireAfterRead(String key, JWTClaimsSet value, long currentTime, long currentDuration) {
+            return currentDuration;
+        }
+    }
+}
@@ -0,0 +1,98 @@
+package com.gw2auth.example.app.service.token;
+
+import com.nimbusds.jose.KeySourceException;
+import com.nimbusds.jose.jwk.JWK;
+import com.nimbusds.jose.jwk.JWKSelector;
+import com.nimbusds.jose.jwk.JWKSet;
+import com.nimbusds.jose.jwk.source.JWKSource;
+import com.nimbusds.jose.proc.SecurityContext;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.Function;
+
+/**
+ * The JWK set of one issuer, kept in memory.
+ * <p>
+ * The set is replaced in the background by {@link #refresh()}. A key id that is not part of the current set
+ * (i.e. the issuer rotated its keys since) triggers a refresh on the request thread; concurrent requests wait for the same refresh,
+ * and refreshes for unknown key ids happen at most once per {@code minRefreshInterval}.
+ */
+class CachedJwkSet implements JWKSource<SecurityContext> {
+
+    private final String jwkSetUri;
+    private final Function<String, JWKSet> loader;
+    private final long minRefreshIntervalNanos;
+    private volatile JWKSet jwkSet;
+    private volatile long loadedAtNanos;
+    private CompletableFuture<JWKSet> inFlight;
+
+    CachedJwkSet(String jwkSetUri, Function<String, JWKSet> loader, long minRefreshIntervalNanos) {
+        this.jwkSetUri = jwkSetUri;
+        this.loader = loader;
+        this.minRefreshIntervalNanos = minRefreshIntervalNanos;
+    }
+
+    @Override
+    public List<JWK> get(JWKSelector jwkSelector, SecurityContext context) throws KeySourceException {
+        final JWKSet current = this.jwkSet;
+
+        if (current != null) {
+            final List<JWK> keys = jwkSelector.select(current);
+            if (!keys.isEmpty() || System.nanoTime() - this.loadedAtNanos < this.minRefreshIntervalNanos) {
+                return keys;
+            }
+        }
+
+        try {
+            return jwkSelector.select(refresh());
+        } catch (RuntimeException e) {
+            if (current != null) {
+                return jwkSelector.select(current);
+            }
+
+            throw new KeySourceException("failed to load the JWK set from " + this.jwkSetUri, e);
+        }
+    }
+
+    /**
+     * Loads the JWK set, or waits for the load already in progress.
+     */
+    JWKSet refresh() {
+        final CompletableFuture<JWKSet> future;
+        final boolean owner;
+
+        synchronized (this) {
+            if (this.inFlight == null) {
+                this.inFlight = new CompletableFuture<>();
+                owner = true;
+            } else {
+                owner = false;
+            }
+
+            future = this.inFlight;
+        }
+
+        if (owner) {
+            try {
+                final JWKSet jwkSet = this.loader.apply(this.jwkSetUri);
+                this.jwkSet = jwkSet;
+                this.loadedAtNanos = System.nanoTime();
+                future.complete(jwkSet);
+            } catch (RuntimeException e) {
+                future.completeExceptionally(e);
+            } finally {
+                synchronized (this) {
+                    this.inFlight = null;
+                }
+            }
+        }
+
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            throw e.getCause() instanceof RuntimeException runtimeException ? runtimeException : e;
+        }
+    }
+}
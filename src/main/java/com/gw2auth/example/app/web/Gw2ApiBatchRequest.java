@@ -0,0 +1,14 @@
+package com.gw2auth.example.app.web;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import java.util.List;
+
+/**
+ * @param paths the URL encoded GW2 API paths (including the version and an optional query), e.g. {@code v2/account/wallet}
+ * @param gw2AccountIds the GW2 accounts to request every path for; all accounts of the user if null
+ */
+public record Gw2ApiBatchRequest(@JsonProperty("paths") List<String> paths,
+                                 @JsonProperty("gw2AccountIds") List<String> gw2AccountIds) {
+
+}
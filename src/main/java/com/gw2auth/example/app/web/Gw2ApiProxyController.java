@@ -0,0 +1,188 @@
+package com.gw2auth.example.app.web;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.gw2auth.example.app.configuration.Gw2ApiProxyProperties;
+import com.gw2auth.example.app.service.authinfo.AuthInfo;
+import com.gw2auth.example.app.service.authinfo.AuthInfoService;
+import com.gw2auth.example.app.service.authinfo.EncodedAuthInfo;
+import com.gw2auth.example.app.service.gw2api.Gw2ApiFanOut;
+import com.gw2auth.example.app.service.gw2api.Gw2ApiProxy;
+import com.gw2auth.example.app.service.gw2api.Gw2ApiResponse;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.http.*;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import javax.servlet.http.HttpServletRequest;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+@RestController
+public class Gw2ApiProxyController {
+
+    private static final String PATH_PREFIX = "/api/gw2/";
+    private static final String BEARER_PREFIX = "Bearer ";
+
+    private final Gw2ApiProxy gw2ApiProxy;
+    private final Gw2ApiFanOut gw2ApiFanOut;
+    private final AuthInfoService authInfoService;
+    private final ObjectMapper objectMapper;
+    private final int batchMaxRequests;
+
+    @Autowired
+    public Gw2ApiProxyController(Gw2ApiProxy gw2ApiProxy,
+                                 Gw2ApiFanOut gw2ApiFanOut,
+                                 AuthInfoService authInfoService,
+                                 ObjectMapper objectMapper,
+                                 Gw2ApiProxyProperties properties) {
+
+        this.gw2ApiProxy = gw2ApiProxy;
+        this.gw2ApiFanOut = gw2ApiFanOut;
+        this.authInfoService = authInfoService;
+        this.objectMapper = objectMapper;
+        this.batchMaxRequests = properties.batchMaxRequests();
+    }
+
+    @GetMapping("/api/gw2/{version:v[12]}/**")
+    public ResponseEntity<byte[]> get(@PathVariable("version") String version, HttpServletRequest request) {
+        // the raw (still encoded) path is forwarded as it is
+        final String requestUri = request.getRequestURI();
+        final String path = requestUri.substring(requestUri.indexOf(PATH_PREFIX) + PATH_PREFIX.length());
+
+        if (!isValidPath(path)) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).build();
+        }
+
+        final String authorization = request.getHeader(HttpHeaders.AUTHORIZATION);
+        final String gw2ApiToken = authorization != null && authorization.startsWith(BEARER_PREFIX) ? authorization.substring(BEARER_PREFIX.length()) : null;
+
+        final Gw2ApiResponse response = this.gw2ApiProxy.get(path, request.getQueryString(), gw2ApiToken);
+        final Instant expiresAt = response.expiresAt();
+        final long maxAge = expiresAt == null ? 0L : Duration.between(Instant.now(), expiresAt).toSeconds();
+
+        // the responses may contain account data, so they must never end up in a shared cache
+        return ResponseEntity.status(response.status())
+                .headers(response.headers())
+                .cacheControl(maxAge > 0L ? CacheControl.maxAge(Duration.ofSeconds(maxAge)).cachePrivate() : CacheControl.noStore())
+                .body(response.body());
+    }
+
+    /**
+     * Requests every path for every selected GW2 account of the current user, using the GW2 API tokens of the user's authinfo.
+     * The responses are streamed as newline delimited JSON in the order they complete, one object per line:
+     * {@code {"gw2AccountId": ..., "path": ..., "status": ..., "body": ...}}.
+     */
+    @PostMapping(value = "/api/gw2/batch", consumes = MediaType.APPLICATION_JSON_VALUE, produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public ResponseEntity<StreamingResponseBody> batch(@RequestBody Gw2ApiBatchRequest batchRequest) {
+        if (batchRequest.paths() == null || batchRequest.paths().isEmpty() || !batchRequest.paths().stream().allMatch(Gw2ApiProxyController::isValidBatchPath)) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).build();
+        }
+
+        final EncodedAuthInfo authInfo = this.authInfoService.getCurrentAuthInfo();
+        if (authInfo == null) {
+            return ResponseEntity.status(HttpStatus.UNAUTHORIZED).build();
+        }
+
+        final List<String> gw2AccountIds = new ArrayList<>();
+        final List<Gw2ApiFanOut.Request> requests = new ArrayList<>();
+
+        for (Map.Entry<String, AuthInfo.Gw2ApiToken> entry : authInfo.authInfo().gw2ApiTokens().entrySet()) {
+            final String gw2ApiToken = entry.getValue().token();
+
+            if (gw2ApiToken != null && (batchRequest.gw2AccountIds() == null || batchRequest.gw2AccountIds().contains(entry.getKey()))) {
+                for (String path : batchRequest.paths()) {
+                    final int queryStart = path.indexOf('?');
+
+                    gw2AccountIds.add(entry.getKey());
+                    requests.add(queryStart == -1
+                            ? new Gw2ApiFanOut.Request(path, null, gw2ApiToken)
+                            : new Gw2ApiFanOut.Request(path.substring(0, queryStart), path.substring(queryStart + 1), gw2ApiToken));
+                }
+            }
+        }
+
+        if (requests.size() > this.batchMaxRequests) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).build();
+        }
+
+        final StreamingResponseBody body = (out) -> {
+            final JsonGenerator generator = this.objectMapper.getFactory().createGenerator(out);
+
+            try {
+                this.gw2ApiFanOut.execute(requests, (index, response) -> {
+                    try {
+                        writeBatchResponse(generator, gw2AccountIds.get(index), requests.get(index).path(), response);
+                        generator.writeRaw('\n');
+                        generator.flush();
+                    } catch (IOException e) {
+                        // the client went away, no need to wait for the remaining responses
+                        throw new UncheckedIOException(e);
+                    }
+                });
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+        };
+
+        return ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_NDJSON)
+                .cacheControl(CacheControl.noStore())
+                .body(body);
+    }
+
+    /**
+     * Every batch stream is busy and as many batches are waiting for one already (see WebAsyncConfiguration).
+     */
+    @ExceptionHandler(TaskRejectedException.class)
+    public ResponseEntity<Void> onBatchRejected() {
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).build();
+    }
+
+    private void writeBatchResponse(JsonGenerator generator, String gw2AccountId, String path, Gw2ApiResponse response) throws IOException {
+        generator.writeStartObject();
+        generator.writeStringField("gw2AccountId", gw2AccountId);
+        generator.writeStringField("path", path);
+        generator.writeNumberField("status", response.status());
+        generator.writeFieldName("body");
+
+        // the GW2 API pretty-prints its responses; re-encoding them keeps every result on a single line
+        final MediaType contentType = response.headers().getContentType();
+        JsonNode json = null;
+
+        if (contentType != null && contentType.isCompatibleWith(MediaType.APPLICATION_JSON) && response.body().length > 0) {
+            try {
+                json = this.objectMapper.readTree(response.body());
+            } catch (JsonProcessingException e) {
+                json = null;
+            }
+        }
+
+        if (json != null) {
+            generator.writeTree(json);
+        } else {
+            generator.writeString(new String(response.body(), StandardCharsets.UTF_8));
+        }
+
+        generator.writeEndObject();
+    }
+
+    private static boolean isValidBatchPath(String path) {
+        return path != null && (path.startsWith("v1/") || path.startsWith("v2/")) && isValidPath(path);
+    }
+
+    private static boolean isValidPath(String path) {
+        return !path.contains("..") && !path.contains("//") && !path.contains("\\");
+    }
+}
@@ -0,0 +1,31 @@
+CREATE TABLE IF NOT EXISTS oauth2_authorized_client (
+  client_registration_id varchar(100) NOT NULL,
+  principal_name varchar(200) NOT NULL,
+  access_token_type varchar(100) NOT NULL,
+  access_token_value blob NOT NULL,
+  access_token_issued_at timestamp NOT NULL,
+  access_token_expires_at timestamp NOT NULL,
+  access_token_scopes varchar(1000) DEFAULT NULL,
+  refresh_token_value blob DEFAULT NULL,
+  refresh_token_issued_at timestamp DEFAULT NULL,
+  created_at timestamp DEFAULT CURRENT_TIMESTAMP NOT NULL,
+  PRIMARY KEY (client_registration_id, principal_name)
+);
+
+CREATE TABLE IF NOT EXISTS background_refresh_enrollment (
+  client_registration_id varchar(100) NOT NULL,
+  principal_name varchar(200) NOT NULL,
+  refresh_partition int NOT NULL,
+  enrolled_at bigint NOT NULL,
+  PRIMARY KEY (client_registration_id, principal_name)
+);
+
+CREATE INDEX IF NOT EXISTS background_refresh_enrollment_partition_idx ON background_refresh_enrollment (refresh_partition);
+CREATE INDEX IF NOT EXISTS background_refresh_enrollment_enrolled_at_idx ON background_refresh_enrollment (enrolled_at);
+
+CREATE TABLE IF NOT EXISTS cluster_node (
+  node_id varchar(100) NOT NULL,
+  heartbeat_at bigint NOT NULL,
+  membership_view bigint NOT NULL,
+  PRIMARY KEY (node_id)
+);